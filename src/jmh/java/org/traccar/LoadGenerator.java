@@ -0,0 +1,467 @@
+package org.traccar;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.ReferenceCountUtil;
+import org.traccar.helper.DataConverter;
+import org.traccar.helper.FrameCapture;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator that simulates many devices replaying a captured session against a tracker server.
+ * <p>
+ * The session file contains one frame per line, either as plain hex or as lines copied from the server log (only
+ * frames received by the server are used). Binary capture files with {@code .bin} extension are also supported, in that
+ * case frames received on the first captured channel of the protocol are used, or on the one selected with the
+ * {@code channel} option. The first {@code login} frames are sent once after connecting, remaining
+ * frames are sent in a loop. If {@code identifier} is set, its ASCII and BCD representations in the frames are replaced
+ * with a unique identifier for each simulated device.
+ * <p>
+ * By default the server is started in the same JVM with an in-memory H2 database. Latency is measured from socket
+ * write to the moment the stored row is found by polling the positions table, so the resolution is limited by
+ * {@code pollInterval} and each replayed frame should produce exactly one position. To test an external server,
+ * set {@code embedded=false} with {@code host}, {@code port} and optionally {@code database} JDBC URL, latency is not
+ * measured without it. Options with {@code server.} prefix are passed to the embedded server configuration, for
+ * example {@code server.database.batchSize=100}.
+ * <p>
+ * Example: {@code protocol=teltonika session=teltonika.log login=1 identifier=123456789012345 devices=20000
+ * period=10 jitter=0.2 duration=600}
+ * <p>
+ * Options are passed as a single space separated list, with {@code gradle loadTest -PloadArgs="..."} or
+ * {@code mvn -P jmh test-compile exec:exec@load -DloadArgs="..."}.
+ * <p>
+ * A single client address is limited by the number of ephemeral ports, so tens of thousands of TCP devices may require
+ * a wider {@code ip_local_port_range} or several generator instances.
+ */
+public final class LoadGenerator {
+
+    private static final long MAX_LATENCY = TimeUnit.SECONDS.toMillis(60);
+
+    private final Map<String, String> options;
+
+    private final String protocol;
+    private final boolean datagram;
+    private final int deviceCount;
+    private final long period;
+    private final double jitter;
+    private final long duration;
+    private final int loginFrames;
+    private final String identifier;
+    private final List<byte[]> frames;
+
+    private InetSocketAddress address;
+    private EventLoopGroup group;
+
+    private final Map<String, Device> devices = new ConcurrentHashMap<>();
+
+    private final AtomicInteger connected = new AtomicInteger();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong stored = new AtomicLong();
+    private final Histogram intervalLatency = new Histogram();
+    private final Histogram totalLatency = new Histogram();
+
+    private volatile boolean running = true;
+    private volatile boolean polling;
+
+    private static final class Histogram {
+
+        private final long[] buckets = new long[(int) MAX_LATENCY + 1];
+        private long count;
+        private long max;
+
+        private synchronized void record(long latency) {
+            buckets[(int) Math.min(latency, MAX_LATENCY)] += 1;
+            count += 1;
+            max = Math.max(max, latency);
+        }
+
+        private synchronized long percentile(double percentile) {
+            long threshold = (long) Math.ceil(count * percentile);
+            long cumulative = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulative += buckets[i];
+                if (cumulative >= threshold && cumulative > 0) {
+                    return i;
+                }
+            }
+            return 0;
+        }
+
+        private synchronized String format() {
+            return String.format("latency p50 %d ms, p95 %d ms, p99 %d ms, max %d ms",
+                    percentile(0.5), percentile(0.95), percentile(0.99), max);
+        }
+
+        private synchronized void reset() {
+            Arrays.fill(buckets, 0);
+            count = 0;
+            max = 0;
+        }
+
+    }
+
+    private final class Device {
+
+        private final String uniqueId;
+        private final List<byte[]> frames;
+        private final Queue<Long> pending = new ConcurrentLinkedQueue<>();
+        private Channel channel;
+        private int index;
+
+        private Device(String uniqueId, List<byte[]> frames) {
+            this.uniqueId = uniqueId;
+            this.frames = frames;
+        }
+
+        private void connect() {
+            Bootstrap bootstrap = new Bootstrap().group(group).handler(new ChannelInitializer<Channel>() {
+                @Override
+                protected void initChannel(Channel channel) {
+                    channel.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+                        @Override
+                        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                            ReferenceCountUtil.release(msg);
+                        }
+
+                        @Override
+                        public void channelInactive(ChannelHandlerContext ctx) {
+                            connected.decrementAndGet();
+                            if (running) {
+                                group.schedule(Device.this::connect, period, TimeUnit.MILLISECONDS);
+                            }
+                        }
+
+                        @Override
+                        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+                            ctx.close();
+                        }
+                    });
+                }
+            });
+            ChannelFuture future;
+            if (datagram) {
+                future = bootstrap.channel(NioDatagramChannel.class).bind(0);
+            } else {
+                future = bootstrap.channel(NioSocketChannel.class)
+                        .option(ChannelOption.TCP_NODELAY, true)
+                        .connect(address);
+            }
+            future.addListener(result -> {
+                if (result.isSuccess()) {
+                    channel = future.channel();
+                    connected.incrementAndGet();
+                    index = 0;
+                    while (index < loginFrames && index < frames.size()) {
+                        write(frames.get(index++), false);
+                    }
+                    schedule(channel, this::send);
+                } else if (running) {
+                    group.schedule(this::connect, period, TimeUnit.MILLISECONDS);
+                }
+            });
+        }
+
+        private void send() {
+            if (index >= frames.size()) {
+                index = Math.min(loginFrames, frames.size() - 1);
+            }
+            write(frames.get(index++), true);
+            schedule(channel, this::send);
+        }
+
+        private void write(byte[] frame, boolean location) {
+            if (location) {
+                if (polling) {
+                    pending.add(System.nanoTime());
+                }
+                sent.incrementAndGet();
+            }
+            if (datagram) {
+                channel.writeAndFlush(new DatagramPacket(Unpooled.wrappedBuffer(frame), address));
+            } else {
+                channel.writeAndFlush(Unpooled.wrappedBuffer(frame));
+            }
+        }
+
+        private void schedule(Channel channel, Runnable task) {
+            if (running && channel.isActive()) {
+                long delay = (long) (period * (1 - jitter + 2 * jitter * ThreadLocalRandom.current().nextDouble()));
+                channel.eventLoop().schedule(task, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+    }
+
+    private LoadGenerator(Map<String, String> options) throws IOException {
+        this.options = options;
+        protocol = getOption("protocol", null);
+        if (protocol == null || !options.containsKey("session")) {
+            throw new IllegalArgumentException("Options protocol and session are required");
+        }
+        datagram = getOption("transport", "tcp").equals("udp");
+        deviceCount = Integer.parseInt(getOption("devices", "100"));
+        period = (long) (Double.parseDouble(getOption("period", "10")) * 1000);
+        jitter = Double.parseDouble(getOption("jitter", "0.1"));
+        duration = (long) (Double.parseDouble(getOption("duration", "60")) * 1000);
+        loginFrames = Integer.parseInt(getOption("login", "0"));
+        identifier = getOption("identifier", null);
+        Path session = Paths.get(getOption("session", null));
+        if (session.toString().endsWith(".bin")) {
+            frames = readCapture(session, protocol, getOption("channel", null));
+        } else {
+            frames = readFrames(session);
+        }
+        if (frames.size() <= loginFrames) {
+            throw new IllegalArgumentException("Session has no location frames");
+        }
+    }
+
+    private String getOption(String key, String defaultValue) {
+        return options.getOrDefault(key, defaultValue);
+    }
+
+    private static List<byte[]> readFrames(Path file) throws IOException {
+        List<byte[]> result = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int hexIndex = line.indexOf("HEX: ");
+            if (hexIndex >= 0) {
+                if (line.substring(0, hexIndex).contains(" > ")) {
+                    continue; // server response
+                }
+                line = line.substring(hexIndex + 5).trim();
+            }
+            result.add(DataConverter.parseHex(line));
+        }
+        return result;
+    }
+
+    private static List<byte[]> readCapture(Path file, String protocol, String channel) throws IOException {
+        List<byte[]> result = new ArrayList<>();
+        String[] selected = new String[] {channel};
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(file))) {
+            FrameCapture.read(input, frame -> {
+                if (!frame.getDownstream() && frame.getProtocol().equals(protocol)) {
+                    if (selected[0] == null) {
+                        selected[0] = frame.getChannel();
+                    }
+                    if (frame.getChannel().equals(selected[0])) {
+                        result.add(frame.getData());
+                    }
+                }
+            });
+        }
+        return result;
+    }
+
+    private static void replace(byte[] data, byte[] target, byte[] replacement) {
+        for (int i = 0; i + target.length <= data.length; i++) {
+            boolean match = true;
+            for (int j = 0; j < target.length && match; j++) {
+                match = data[i + j] == target[j];
+            }
+            if (match) {
+                System.arraycopy(replacement, 0, data, i, replacement.length);
+                i += target.length - 1;
+            }
+        }
+    }
+
+    private static byte[] encodeBcd(String value) {
+        return DataConverter.parseHex(value.length() % 2 == 0 ? value : "0" + value);
+    }
+
+    private Device createDevice(int deviceIndex) {
+        if (identifier == null) {
+            return new Device(String.valueOf(deviceIndex), frames);
+        }
+        // padded to the original length, so identifiers with leading zeros keep the frame layout
+        String uniqueId = String.format(
+                Locale.US, "%0" + identifier.length() + "d", Long.parseLong(identifier) + deviceIndex);
+        if (uniqueId.length() > identifier.length()) {
+            uniqueId = uniqueId.substring(uniqueId.length() - identifier.length());
+        }
+        List<byte[]> deviceFrames = new ArrayList<>(frames.size());
+        for (byte[] frame : frames) {
+            byte[] deviceFrame = frame.clone();
+            replace(deviceFrame,
+                    identifier.getBytes(StandardCharsets.US_ASCII), uniqueId.getBytes(StandardCharsets.US_ASCII));
+            replace(deviceFrame, encodeBcd(identifier), encodeBcd(uniqueId));
+            deviceFrames.add(deviceFrame);
+        }
+        return new Device(uniqueId, deviceFrames);
+    }
+
+    private String startEmbedded() throws IOException {
+        String url = "jdbc:h2:mem:load;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE";
+        Properties properties = new Properties();
+        properties.setProperty("config.default", "./setup/default.xml");
+        properties.setProperty("web.enable", "false");
+        properties.setProperty("logger.console", "true");
+        properties.setProperty("logger.level", getOption("loggerLevel", "warning"));
+        properties.setProperty("database.driver", "org.h2.Driver");
+        properties.setProperty("database.url", url);
+        properties.setProperty("database.user", "sa");
+        properties.setProperty("database.password", "");
+        properties.setProperty("database.registerUnknown", "true");
+        for (Map.Entry<String, String> entry : options.entrySet()) {
+            if (entry.getKey().startsWith("server.")) {
+                properties.setProperty(entry.getKey().substring(7), entry.getValue());
+            }
+        }
+        Path configFile = Files.createTempFile("traccar-load", ".xml");
+        configFile.toFile().deleteOnExit();
+        try (OutputStream outputStream = Files.newOutputStream(configFile)) {
+            properties.storeToXML(outputStream, null);
+        }
+        Main.run(configFile.toString());
+        address = new InetSocketAddress("localhost", Context.getConfig().getInteger(protocol + ".port"));
+        return url;
+    }
+
+    private void poll(String url, String user, String password) {
+        long pollInterval = Long.parseLong(getOption("pollInterval", "50"));
+        String sql = "SELECT p.id, d.uniqueid FROM tc_positions p INNER JOIN tc_devices d ON p.deviceid = d.id "
+                + "WHERE p.id > ? ORDER BY p.id";
+        long lastId = 0;
+        try (Connection connection = DriverManager.getConnection(url, user, password);
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            while (true) {
+                statement.setLong(1, lastId);
+                long now = System.nanoTime();
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        lastId = resultSet.getLong(1);
+                        stored.incrementAndGet();
+                        Device device = devices.get(resultSet.getString(2));
+                        Long time = device != null ? device.pending.poll() : null;
+                        if (time != null) {
+                            long latency = TimeUnit.NANOSECONDS.toMillis(now - time);
+                            intervalLatency.record(latency);
+                            totalLatency.record(latency);
+                        }
+                    }
+                }
+                Thread.sleep(pollInterval);
+            }
+        } catch (SQLException error) {
+            System.err.println("Database polling failed: " + error.getMessage());
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        } finally {
+            polling = false;
+            devices.values().forEach(device -> device.pending.clear());
+        }
+    }
+
+    private void report(long startTime) {
+        System.out.println(String.format("%4ds: connected %d, sent %d, stored %d, %s",
+                TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startTime),
+                connected.get(), sent.get(), stored.get(), intervalLatency.format()));
+        intervalLatency.reset();
+    }
+
+    private void run() throws Exception {
+
+        String databaseUrl;
+        if (Boolean.parseBoolean(getOption("embedded", "true"))) {
+            databaseUrl = startEmbedded();
+        } else {
+            address = new InetSocketAddress(getOption("host", "localhost"), Integer.parseInt(getOption("port", "0")));
+            databaseUrl = getOption("database", null);
+        }
+
+        if (databaseUrl != null) {
+            polling = true;
+            Thread poller = new Thread(() -> poll(
+                    databaseUrl, getOption("databaseUser", "sa"), getOption("databasePassword", "")), "load-poller");
+            poller.setDaemon(true);
+            poller.start();
+        }
+
+        group = new NioEventLoopGroup(Integer.parseInt(
+                getOption("threads", String.valueOf(Runtime.getRuntime().availableProcessors()))));
+
+        long rampUp = (long) (Double.parseDouble(getOption("rampUp", String.valueOf(period / 1000.0))) * 1000);
+        for (int i = 0; i < deviceCount; i++) {
+            Device device = createDevice(i);
+            devices.put(device.uniqueId, device);
+            group.schedule(device::connect, rampUp * i / deviceCount, TimeUnit.MILLISECONDS);
+        }
+
+        long startTime = System.nanoTime();
+        long reportInterval = (long) (Double.parseDouble(getOption("reportInterval", "10")) * 1000);
+        long endTime = startTime + TimeUnit.MILLISECONDS.toNanos(duration);
+        while (System.nanoTime() < endTime) {
+            Thread.sleep(Math.min(reportInterval, TimeUnit.NANOSECONDS.toMillis(endTime - System.nanoTime()) + 1));
+            report(startTime);
+        }
+
+        running = false;
+        long drainEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (polling && System.nanoTime() < drainEnd
+                && devices.values().stream().anyMatch(device -> !device.pending.isEmpty())) {
+            Thread.sleep(100);
+        }
+
+        report(startTime);
+        System.out.println("Total: sent " + sent.get() + ", stored " + stored.get() + ", " + totalLatency.format());
+
+        group.shutdownGracefully().sync();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : String.join(" ", args).trim().split("\\s+")) {
+            int separator = arg.indexOf('=');
+            if (separator > 0) {
+                options.put(arg.substring(0, separator), arg.substring(separator + 1));
+            }
+        }
+        new LoadGenerator(options).run();
+        System.exit(0);
+    }
+
+}
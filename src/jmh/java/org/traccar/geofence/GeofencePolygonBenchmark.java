@@ -0,0 +1,56 @@
+package org.traccar.geofence;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.ParseException;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point lookup in a detailed polygon, similar to a country border, with points both inside and around the polygon.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeofencePolygonBenchmark {
+
+    @Param({"100", "20000"})
+    private int vertices;
+
+    private GeofencePolygon polygon;
+    private final Random random = new Random(1);
+
+    @Setup
+    public void setup() throws ParseException {
+        StringBuilder wkt = new StringBuilder("POLYGON ((");
+        for (int i = 0; i < vertices; i++) {
+            double angle = 2 * Math.PI * i / vertices;
+            double radius = 1 + random.nextDouble();
+            wkt.append(String.format(Locale.US, "%.6f %.6f, ",
+                    50 + radius * Math.sin(angle), 10 + radius * Math.cos(angle)));
+        }
+        wkt.setLength(wkt.length() - 2);
+        wkt.append("))");
+        polygon = new GeofencePolygon(wkt.toString());
+    }
+
+    @Benchmark
+    public boolean containsPoint() {
+        return polygon.containsPoint(47 + random.nextDouble() * 6, 7 + random.nextDouble() * 6);
+    }
+
+}
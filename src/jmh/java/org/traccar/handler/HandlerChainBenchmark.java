@@ -0,0 +1,211 @@
+package org.traccar.handler;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.traccar.BaseTest;
+import org.traccar.config.Config;
+import org.traccar.config.Keys;
+import org.traccar.database.AttributesManager;
+import org.traccar.database.IdentityManager;
+import org.traccar.model.Attribute;
+import org.traccar.model.Device;
+import org.traccar.model.Position;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the position processing handlers from {@link DistanceHandler} to {@link ComputedAttributesHandler},
+ * as they are ordered in the pipeline. Handlers that depend on external services or the database are not included.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HandlerChainBenchmark extends BaseTest {
+
+    private static final class MemoryIdentityManager implements IdentityManager {
+
+        private final Device device = new Device();
+        private Position lastPosition;
+
+        private MemoryIdentityManager() {
+            device.setId(1);
+            device.setName("test");
+            device.setUniqueId("123456789012345");
+        }
+
+        @Override
+        public long addUnknownDevice(String uniqueId) {
+            return device.getId();
+        }
+
+        @Override
+        public Device getById(long id) {
+            return device;
+        }
+
+        @Override
+        public Device getByUniqueId(String uniqueId) {
+            return device;
+        }
+
+        @Override
+        public Device getByUniqueId(String uniqueId, boolean refresh) {
+            return device;
+        }
+
+        @Override
+        public String getDevicePassword(long id, String protocol, String defaultPassword) {
+            return defaultPassword;
+        }
+
+        @Override
+        public Position getLastPosition(long deviceId) {
+            return lastPosition;
+        }
+
+        @Override
+        public boolean isLatestPosition(Position position) {
+            return true;
+        }
+
+        @Override
+        public boolean lookupAttributeBoolean(
+                long deviceId, String attributeName, boolean defaultValue, boolean lookupServer, boolean lookupConfig) {
+            return defaultValue;
+        }
+
+        @Override
+        public String lookupAttributeString(
+                long deviceId, String attributeName, String defaultValue, boolean lookupServer, boolean lookupConfig) {
+            return defaultValue;
+        }
+
+        @Override
+        public int lookupAttributeInteger(
+                long deviceId, String attributeName, int defaultValue, boolean lookupServer, boolean lookupConfig) {
+            return defaultValue;
+        }
+
+        @Override
+        public long lookupAttributeLong(
+                long deviceId, String attributeName, long defaultValue, boolean lookupServer, boolean lookupConfig) {
+            return defaultValue;
+        }
+
+        @Override
+        public double lookupAttributeDouble(
+                long deviceId, String attributeName, double defaultValue, boolean lookupServer, boolean lookupConfig) {
+            return defaultValue;
+        }
+
+    }
+
+    private static final class MemoryAttributesManager extends AttributesManager {
+
+        private final Map<Long, Attribute> attributes = new HashMap<>();
+
+        private MemoryAttributesManager() {
+            super(null);
+        }
+
+        private void add(long id, String name, String expression, String type) {
+            Attribute attribute = new Attribute();
+            attribute.setId(id);
+            attribute.setAttribute(name);
+            attribute.setExpression(expression);
+            attribute.setType(type);
+            attributes.put(id, attribute);
+        }
+
+        @Override
+        public Attribute getById(long itemId) {
+            return attributes.get(itemId);
+        }
+
+        @Override
+        public Set<Long> getAllDeviceItems(long deviceId) {
+            return Collections.unmodifiableSet(attributes.keySet());
+        }
+
+    }
+
+    private MemoryIdentityManager identityManager;
+    private EmbeddedChannel channel;
+    private long time;
+    private double latitude;
+
+    @Setup
+    public void setup() {
+
+        Config config = new Config();
+        config.setString(Keys.FILTER_INVALID, "true");
+        config.setString(Keys.FILTER_ZERO, "true");
+        config.setString(Keys.FILTER_DUPLICATE, "true");
+
+        identityManager = new MemoryIdentityManager();
+
+        MemoryAttributesManager attributesManager = new MemoryAttributesManager();
+        attributesManager.add(1, "voltage", "adc1 * 0.01", "number");
+        attributesManager.add(2, "moving", "speed > 5 && ignition", "boolean");
+
+        channel = new EmbeddedChannel(
+                new DistanceHandler(config, identityManager),
+                new FilterHandler(config),
+                new MotionHandler(0.01),
+                new CopyAttributesHandler(identityManager),
+                new EngineHoursHandler(identityManager),
+                new ComputedAttributesHandler(config, identityManager, attributesManager));
+
+        time = System.currentTimeMillis();
+        latitude = 10.0;
+
+    }
+
+    @TearDown
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public Object process() {
+
+        time += 1000;
+        latitude += 0.0001;
+
+        Position position = new Position("benchmark");
+        position.setDeviceId(1);
+        position.setTime(new Date(time));
+        position.setValid(true);
+        position.setLatitude(latitude);
+        position.setLongitude(20.0);
+        position.setSpeed(30.0);
+        position.set(Position.KEY_IGNITION, true);
+        position.set(Position.PREFIX_ADC + 1, 1250);
+
+        channel.writeInbound(position);
+        Position result = channel.readInbound();
+        if (result != null) {
+            identityManager.lastPosition = result;
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,100 @@
+package org.traccar.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.FullHttpRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.traccar.ProtocolTest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding throughput of the most common protocols. Messages are taken from the decoder unit tests. Login messages are
+ * decoded during setup, so measured calls only include location messages.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProtocolDecoderBenchmark extends ProtocolTest {
+
+    private Gt06ProtocolDecoder gt06Decoder;
+    private ByteBuf gt06Message;
+
+    private TeltonikaProtocolDecoder teltonikaDecoder;
+    private ByteBuf teltonikaMessage;
+
+    private Gl200TextProtocolDecoder gl200Decoder;
+    private ByteBuf gl200Message;
+
+    private H02ProtocolDecoder h02Decoder;
+    private ByteBuf h02Message;
+
+    private OsmAndProtocolDecoder osmAndDecoder;
+    private FullHttpRequest osmAndMessage;
+
+    @Setup
+    public void setup() throws Exception {
+
+        gt06Decoder = new Gt06ProtocolDecoder(null);
+        gt06Decoder.decode(null, null, binary(
+                "78780D01086471700328358100093F040D0A"));
+        gt06Message = binary(
+                "787821121303120b2524c70138e363085b549003d43301940057d200cd52c000006aa1ca0d0a");
+
+        teltonikaDecoder = new TeltonikaProtocolDecoder(null, false);
+        teltonikaDecoder.decode(null, null, binary(
+                "000F313233343536373839303132333435"));
+        teltonikaMessage = binary(
+                "000000000000004c08010000016818d500580009c28d9f1cb3757a00be00c60f0053000f06f0011503c80001011d00fc0007423799180053cdf80dce426f430f88190bb8560bb802f100005aa110002887e000010000ee8d");
+
+        gl200Decoder = new Gl200TextProtocolDecoder(null);
+        gl200Message = buffer(
+                "+RESP:GTFRI,423031,355154083021002,Bolt4G,0,0,0,0,1,1.0,0.2,0,245.3,-85.630193,42.975280,20190729185934,310,410,500b,B0E320F,31,-1,100,20190729185934,0010$");
+
+        h02Decoder = new H02ProtocolDecoder(null);
+        h02Message = buffer(
+                "*HQ,865205035331981,V1,132926,A,1935.3933,N,07920.4134,E,  3.34,342,280519,FFFFFFFF#");
+
+        osmAndDecoder = new OsmAndProtocolDecoder(null);
+        osmAndMessage = request(
+                "/?id=902064&lat=42.06288&lon=-88.23412&timestamp=1442068686579&hdop=6.0&altitude=224.0&speed=0.0");
+
+    }
+
+    @Benchmark
+    public Object gt06() throws Exception {
+        return gt06Decoder.decode(null, null, gt06Message.duplicate());
+    }
+
+    @Benchmark
+    public Object teltonika() throws Exception {
+        return teltonikaDecoder.decode(null, null, teltonikaMessage.duplicate());
+    }
+
+    @Benchmark
+    public Object gl200Text() throws Exception {
+        return gl200Decoder.decode(null, null, gl200Message.duplicate());
+    }
+
+    @Benchmark
+    public Object h02() throws Exception {
+        return h02Decoder.decode(null, null, h02Message.duplicate());
+    }
+
+    @Benchmark
+    public Object osmAnd() throws Exception {
+        return osmAndDecoder.decode(null, null, osmAndMessage);
+    }
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 - 2018 Anton Tananaev (anton@traccar.org)
+ * Copyright 2015 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -33,6 +33,13 @@ public abstract class BaseDataHandler extends ChannelInboundHandlerAdapter {
         }
     }
 
+    /**
+     * Processes position outside of the pipeline, for example when the channel has been closed in the meantime.
+     */
+    public final Position processPosition(Position position) {
+        return handlePosition(position);
+    }
+
     protected abstract Position handlePosition(Position position);
 
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2012 - 2019 Anton Tananaev (anton@traccar.org)
+ * Copyright 2012 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -22,9 +22,11 @@ import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOutboundHandler;
 import io.netty.channel.ChannelPipeline;
 import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.concurrent.EventExecutorGroup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.config.Keys;
+import org.traccar.database.MetricsManager;
 import org.traccar.handler.DefaultDataHandler;
 import org.traccar.handler.TimeHandler;
 import org.traccar.handler.events.AlertEventHandler;
@@ -44,11 +46,13 @@ import org.traccar.handler.FilterHandler;
 import org.traccar.handler.GeocoderHandler;
 import org.traccar.handler.GeolocationHandler;
 import org.traccar.handler.HemisphereHandler;
+import org.traccar.handler.MetricsHandler;
 import org.traccar.handler.MotionHandler;
 import org.traccar.handler.NetworkMessageHandler;
 import org.traccar.handler.OpenChannelHandler;
 import org.traccar.handler.RemoteAddressHandler;
 import org.traccar.handler.StandardLoggingHandler;
+import org.traccar.helper.FrameCapture;
 
 import java.util.Map;
 
@@ -58,12 +62,21 @@ public abstract class BasePipelineFactory extends ChannelInitializer<Channel> {
 
     private final TrackerServer server;
     private final String protocol;
+    private final EventExecutorGroup processingGroup;
+    private final MetricsManager metricsManager;
+    private final FrameCapture frameCapture;
+    private final int frameSampling;
     private boolean eventsEnabled;
     private int timeout;
 
     public BasePipelineFactory(TrackerServer server, String protocol) {
         this.server = server;
         this.protocol = protocol;
+        processingGroup = EventLoopGroupFactory.getProcessingGroup();
+        metricsManager = Context.getMetricsManager();
+        frameCapture = Main.getInjector() != null ? Main.getInjector().getInstance(FrameCapture.class) : null;
+        frameSampling = Context.getConfig().getInteger(Keys.PROTOCOL_LOGGER_FRAME_SAMPLING.withPrefix(protocol),
+                Context.getConfig().getInteger(Keys.LOGGER_FRAME_SAMPLING, 1));
         eventsEnabled = Context.getConfig().getBoolean(Keys.EVENT_ENABLE);
         timeout = Context.getConfig().getInteger(Keys.PROTOCOL_TIMEOUT.withPrefix(protocol));
         if (timeout == 0) {
@@ -77,11 +90,27 @@ public abstract class BasePipelineFactory extends ChannelInitializer<Channel> {
     private final void addHandlers(ChannelPipeline pipeline, Class<? extends ChannelHandler>... handlerClasses) {
         for (Class<? extends ChannelHandler> handlerClass : handlerClasses) {
             if (handlerClass != null) {
-                pipeline.addLast(Main.getInjector().getInstance(handlerClass));
+                addProcessingHandler(pipeline, Main.getInjector().getInstance(handlerClass));
             }
         }
     }
 
+    private void addProcessingHandler(ChannelPipeline pipeline, ChannelHandler handler) {
+        if (metricsManager != null) {
+            addExecutorHandler(pipeline, new MetricsHandler(
+                    metricsManager, protocol, handler.getClass().getSimpleName(), handler instanceof MainEventHandler));
+        }
+        addExecutorHandler(pipeline, handler);
+    }
+
+    private void addExecutorHandler(ChannelPipeline pipeline, ChannelHandler handler) {
+        if (processingGroup != null) {
+            pipeline.addLast(processingGroup, handler);
+        } else {
+            pipeline.addLast(handler);
+        }
+    }
+
     public static <T extends ChannelHandler> T getHandler(ChannelPipeline pipeline, Class<T> clazz) {
         for (Map.Entry<String, ChannelHandler> handlerEntry : pipeline) {
             ChannelHandler handler = handlerEntry.getValue();
@@ -106,7 +135,7 @@ public abstract class BasePipelineFactory extends ChannelInitializer<Channel> {
         }
         pipeline.addLast(new OpenChannelHandler(server));
         pipeline.addLast(new NetworkMessageHandler());
-        pipeline.addLast(new StandardLoggingHandler(protocol));
+        pipeline.addLast(new StandardLoggingHandler(protocol, frameSampling, frameCapture));
 
         addProtocolHandlers(handler -> {
             if (!(handler instanceof BaseProtocolDecoder || handler instanceof BaseProtocolEncoder)) {
@@ -154,7 +183,7 @@ public abstract class BasePipelineFactory extends ChannelInitializer<Channel> {
                     DriverEventHandler.class);
         }
 
-        pipeline.addLast(new MainEventHandler());
+        addProcessingHandler(pipeline, new MainEventHandler());
     }
 
     private void addDynamicHandlers(ChannelPipeline pipeline) {
@@ -162,7 +191,8 @@ public abstract class BasePipelineFactory extends ChannelInitializer<Channel> {
         if (handlers != null) {
             for (String handler : handlers.split(",")) {
                 try {
-                    pipeline.addLast((ChannelHandler) Class.forName(handler).getDeclaredConstructor().newInstance());
+                    addProcessingHandler(
+                            pipeline, (ChannelHandler) Class.forName(handler).getDeclaredConstructor().newInstance());
                 } catch (ReflectiveOperationException error) {
                     LOGGER.warn("Dynamic handler error", error);
                 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2012 - 2018 Anton Tananaev (anton@traccar.org)
+ * Copyright 2012 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -21,8 +21,10 @@ import io.netty.handler.codec.http.HttpRequestDecoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.config.Config;
+import org.traccar.config.Keys;
 import org.traccar.database.ConnectionManager;
 import org.traccar.database.IdentityManager;
+import org.traccar.database.MetricsManager;
 import org.traccar.database.StatisticsManager;
 import org.traccar.helper.UnitsConverter;
 import org.traccar.model.Device;
@@ -42,15 +44,64 @@ public abstract class BaseProtocolDecoder extends ExtendedObjectDecoder {
 
     private static final String PROTOCOL_UNKNOWN = "unknown";
 
-    private final Config config = Context.getConfig();
     private final IdentityManager identityManager = Context.getIdentityManager();
     private final ConnectionManager connectionManager = Context.getConnectionManager();
     private final StatisticsManager statisticsManager;
     private final Protocol protocol;
+    private final MetricsManager.Histogram decodeHistogram;
+    private final MetricsManager.Counter errorCounter;
+
+    private final String server;
+    private final String speedUnits;
+    private final int timeZoneOffset;
+    private final boolean ignoreSessionCache;
+    private final boolean registerUnknown;
+    private final boolean storeDisabled;
+    private final boolean saveEmpty;
+
+    private Channel lastChannel;
+    private boolean lastChannelHttp;
 
     public BaseProtocolDecoder(Protocol protocol) {
         this.protocol = protocol;
+        Config config = Context.getConfig();
+        server = config.getString(Keys.PROTOCOL_SERVER.withPrefix(getProtocolName()));
+        speedUnits = config.getString(Keys.PROTOCOL_SPEED.withPrefix(getProtocolName()));
+        timeZoneOffset = config.getInteger(Keys.PROTOCOL_TIMEZONE.withPrefix(getProtocolName()));
+        ignoreSessionCache = config.getBoolean(Keys.PROTOCOL_IGNORE_SESSION_CACHE.withPrefix(getProtocolName()))
+                || config.getBoolean(Keys.DECODER_IGNORE_SESSION_CACHE);
+        registerUnknown = config.getBoolean(Keys.DATABASE_REGISTER_UNKNOWN);
+        storeDisabled = config.getBoolean(Keys.DATABASE_STORE_DISABLED);
+        saveEmpty = config.getBoolean(Keys.DATABASE_SAVE_EMPTY);
         statisticsManager = Main.getInjector() != null ? Main.getInjector().getInstance(StatisticsManager.class) : null;
+        MetricsManager metricsManager = Context.getMetricsManager();
+        if (metricsManager != null) {
+            decodeHistogram = metricsManager.histogram(
+                    "traccar_decoder_duration_seconds", "Protocol message decoding latency",
+                    "protocol", getProtocolName());
+            errorCounter = metricsManager.counter(
+                    "traccar_decoder_errors_total", "Protocol message decoding errors",
+                    "protocol", getProtocolName());
+        } else {
+            decodeHistogram = null;
+            errorCounter = null;
+        }
+    }
+
+    @Override
+    protected Object handleDecode(Channel channel, SocketAddress remoteAddress, Object msg) throws Exception {
+        if (decodeHistogram == null) {
+            return super.handleDecode(channel, remoteAddress, msg);
+        }
+        long startTime = System.nanoTime();
+        try {
+            return super.handleDecode(channel, remoteAddress, msg);
+        } catch (Exception | Error error) {
+            errorCounter.increment();
+            throw error;
+        } finally {
+            decodeHistogram.observe(System.nanoTime() - startTime);
+        }
     }
 
     public String getProtocolName() {
@@ -58,16 +109,16 @@ public abstract class BaseProtocolDecoder extends ExtendedObjectDecoder {
     }
 
     public String getServer(Channel channel, char delimiter) {
-        String server = config.getString(getProtocolName() + ".server");
-        if (server == null && channel != null) {
+        String result = server;
+        if (result == null && channel != null) {
             InetSocketAddress address = (InetSocketAddress) channel.localAddress();
-            server = address.getAddress().getHostAddress() + ":" + address.getPort();
+            result = address.getAddress().getHostAddress() + ":" + address.getPort();
         }
-        return server != null ? server.replace(':', delimiter) : null;
+        return result != null ? result.replace(':', delimiter) : null;
     }
 
     protected double convertSpeed(double value, String defaultUnits) {
-        switch (config.getString(getProtocolName() + ".speed", defaultUnits)) {
+        switch (speedUnits != null ? speedUnits : defaultUnits) {
             case "kmh":
                 return UnitsConverter.knotsFromKph(value);
             case "mps":
@@ -89,12 +140,9 @@ public abstract class BaseProtocolDecoder extends ExtendedObjectDecoder {
         String timeZoneName = identityManager.lookupAttributeString(deviceId, "decoder.timezone", null, false, true);
         if (timeZoneName != null) {
             result = TimeZone.getTimeZone(timeZoneName);
-        } else {
-            int timeZoneOffset = config.getInteger(getProtocolName() + ".timezone", 0);
-            if (timeZoneOffset != 0) {
-                result.setRawOffset(timeZoneOffset * 1000);
-                LOGGER.warn("Config parameter " + getProtocolName() + ".timezone is deprecated");
-            }
+        } else if (timeZoneOffset != 0) {
+            result.setRawOffset(timeZoneOffset * 1000);
+            LOGGER.warn("Config parameter " + getProtocolName() + ".timezone is deprecated");
         }
         return result;
     }
@@ -104,12 +152,13 @@ public abstract class BaseProtocolDecoder extends ExtendedObjectDecoder {
 
     private long findDeviceId(SocketAddress remoteAddress, String... uniqueIds) {
         if (uniqueIds.length > 0) {
+            boolean unknownLimited = connectionManager != null && connectionManager.isUnknownLimited(remoteAddress);
             long deviceId = 0;
             Device device = null;
             try {
                 for (String uniqueId : uniqueIds) {
                     if (uniqueId != null) {
-                        device = identityManager.getByUniqueId(uniqueId);
+                        device = identityManager.getByUniqueId(uniqueId, !unknownLimited);
                         if (device != null) {
                             deviceId = device.getId();
                             break;
@@ -119,14 +168,20 @@ public abstract class BaseProtocolDecoder extends ExtendedObjectDecoder {
             } catch (Exception e) {
                 LOGGER.warn("Find device error", e);
             }
-            if (deviceId == 0 && config.getBoolean("database.registerUnknown")) {
+            if (deviceId == 0 && unknownLimited) {
+                return 0;
+            }
+            if (deviceId == 0 && registerUnknown) {
                 return identityManager.addUnknownDevice(uniqueIds[0]);
             }
-            if (device != null && !device.getDisabled() || config.getBoolean("database.storeDisabled")) {
+            if (device != null && !device.getDisabled() || storeDisabled) {
                 return deviceId;
             }
             StringBuilder message = new StringBuilder();
             if (deviceId == 0) {
+                if (connectionManager != null) {
+                    connectionManager.registerUnknownDevice(remoteAddress);
+                }
                 message.append("Unknown device -");
             } else {
                 message.append("Disabled device -");
@@ -142,15 +197,24 @@ public abstract class BaseProtocolDecoder extends ExtendedObjectDecoder {
         return 0;
     }
 
+    private boolean isHttpChannel(Channel channel) {
+        if (channel == null) {
+            return false;
+        }
+        if (channel != lastChannel) {
+            lastChannelHttp = BasePipelineFactory.getHandler(channel.pipeline(), HttpRequestDecoder.class) != null;
+            lastChannel = channel;
+        }
+        return lastChannelHttp;
+    }
+
     public DeviceSession getDeviceSession(Channel channel, SocketAddress remoteAddress, String... uniqueIds) {
         return getDeviceSession(channel, remoteAddress, false, uniqueIds);
     }
 
     public DeviceSession getDeviceSession(
             Channel channel, SocketAddress remoteAddress, boolean ignoreCache, String... uniqueIds) {
-        if (channel != null && BasePipelineFactory.getHandler(channel.pipeline(), HttpRequestDecoder.class) != null
-                || ignoreCache || config.getBoolean(getProtocolName() + ".ignoreSessionCache")
-                || config.getBoolean("decoder.ignoreSessionCache")) {
+        if (ignoreCache || ignoreSessionCache || isHttpChannel(channel)) {
             long deviceId = findDeviceId(remoteAddress, uniqueIds);
             if (deviceId != 0) {
                 if (connectionManager != null) {
@@ -248,7 +312,7 @@ public abstract class BaseProtocolDecoder extends ExtendedObjectDecoder {
     @Override
     protected Object handleEmptyMessage(Channel channel, SocketAddress remoteAddress, Object msg) {
         DeviceSession deviceSession = getDeviceSession(channel, remoteAddress);
-        if (config.getBoolean("database.saveEmpty") && deviceSession != null) {
+        if (saveEmpty && deviceSession != null) {
             Position position = new Position(getProtocolName());
             position.setDeviceId(deviceSession.getDeviceId());
             getLastLocation(position, null);
@@ -23,6 +23,7 @@ import org.eclipse.jetty.util.URIUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.config.Config;
+import org.traccar.config.Keys;
 import org.traccar.database.AttributesManager;
 import org.traccar.database.BaseObjectManager;
 import org.traccar.database.CalendarManager;
@@ -38,6 +39,7 @@ import org.traccar.database.LdapProvider;
 import org.traccar.database.MailManager;
 import org.traccar.database.MaintenancesManager;
 import org.traccar.database.MediaManager;
+import org.traccar.database.MetricsManager;
 import org.traccar.database.NotificationManager;
 import org.traccar.database.PermissionsManager;
 import org.traccar.database.UsersManager;
@@ -95,6 +97,12 @@ public final class Context {
         return identityManager;
     }
 
+    private static MetricsManager metricsManager;
+
+    public static MetricsManager getMetricsManager() {
+        return metricsManager;
+    }
+
     private static DataManager dataManager;
 
     public static DataManager getDataManager() {
@@ -288,8 +296,14 @@ public final class Context {
 
         client = ClientBuilder.newClient().register(new ObjectMapperContextResolver());
 
+        if (config.getBoolean(Keys.METRICS_ENABLE)) {
+            metricsManager = new MetricsManager();
+            metricsManager.gauge("traccar_processing_queue_size", "Messages waiting for processing threads",
+                    EventLoopGroupFactory::getProcessingQueueSize);
+        }
+
         if (config.hasKey("database.url")) {
-            dataManager = new DataManager(config);
+            dataManager = new DataManager(config, metricsManager);
         }
 
         if (config.getBoolean("ldap.enable")) {
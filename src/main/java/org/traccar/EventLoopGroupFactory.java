@@ -1,5 +1,5 @@
 /*
- * Copyright 2012 - 2018 Anton Tananaev (anton@traccar.org)
+ * Copyright 2012 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,22 +16,108 @@
 package org.traccar;
 
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.traccar.config.Config;
+import org.traccar.config.Keys;
 
 public final class EventLoopGroupFactory {
 
-    private static EventLoopGroup bossGroup = new NioEventLoopGroup();
-    private static EventLoopGroup workerGroup = new NioEventLoopGroup();
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventLoopGroupFactory.class);
+
+    private static boolean nativeTransport;
+    private static EventLoopGroup bossGroup;
+    private static EventLoopGroup workerGroup;
+    private static volatile EventExecutorGroup processingGroup;
+    private static boolean processingGroupInitialized;
 
     private EventLoopGroupFactory() {
     }
 
+    private static synchronized void initGroups() {
+        if (workerGroup == null) {
+            Config config = Context.getConfig();
+            int bossThreads = config.getInteger(Keys.SERVER_BOSS_THREADS);
+            int workerThreads = config.getInteger(Keys.SERVER_WORKER_THREADS);
+            if (config.getBoolean(Keys.SERVER_NATIVE_TRANSPORT)) {
+                if (Epoll.isAvailable()) {
+                    nativeTransport = true;
+                } else {
+                    LOGGER.warn("Native transport is not available, using NIO", Epoll.unavailabilityCause());
+                }
+            }
+            if (nativeTransport) {
+                bossGroup = new EpollEventLoopGroup(bossThreads);
+                workerGroup = new EpollEventLoopGroup(workerThreads);
+            } else {
+                bossGroup = new NioEventLoopGroup(bossThreads);
+                workerGroup = new NioEventLoopGroup(workerThreads);
+            }
+        }
+    }
+
+    public static boolean isNativeTransport() {
+        initGroups();
+        return nativeTransport;
+    }
+
     public static EventLoopGroup getBossGroup() {
+        initGroups();
         return bossGroup;
     }
 
     public static EventLoopGroup getWorkerGroup() {
+        initGroups();
         return workerGroup;
     }
 
+    public static Class<? extends ServerChannel> getServerChannelClass() {
+        return isNativeTransport() ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    public static Class<? extends DatagramChannel> getDatagramChannelClass() {
+        return isNativeTransport() ? EpollDatagramChannel.class : NioDatagramChannel.class;
+    }
+
+    /**
+     * Executor group for handlers following protocol decoders. Returns null if processing runs on network threads.
+     */
+    public static synchronized EventExecutorGroup getProcessingGroup() {
+        if (!processingGroupInitialized) {
+            int threads = Context.getConfig().getInteger(Keys.PROCESSING_THREADS);
+            if (threads > 0) {
+                processingGroup = new DefaultEventExecutorGroup(threads, new DefaultThreadFactory("processing"));
+            }
+            processingGroupInitialized = true;
+        }
+        return processingGroup;
+    }
+
+    public static int getProcessingQueueSize() {
+        int size = 0;
+        EventExecutorGroup group = processingGroup;
+        if (group != null) {
+            for (EventExecutor executor : group) {
+                if (executor instanceof SingleThreadEventExecutor) {
+                    size += ((SingleThreadEventExecutor) executor).pendingTasks();
+                }
+            }
+        }
+        return size;
+    }
+
 }
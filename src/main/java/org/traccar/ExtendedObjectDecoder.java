@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 - 2018 Anton Tananaev (anton@traccar.org)
+ * Copyright 2015 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -21,6 +21,7 @@ import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.util.ReferenceCountUtil;
+import org.traccar.config.Keys;
 import org.traccar.helper.DataConverter;
 import org.traccar.model.Position;
 
@@ -30,8 +31,10 @@ import java.util.Collection;
 
 public abstract class ExtendedObjectDecoder extends ChannelInboundHandlerAdapter {
 
+    private final boolean saveOriginal = Context.getConfig().getBoolean(Keys.DATABASE_SAVE_ORIGINAL);
+
     private void saveOriginal(Object decodedMessage, Object originalMessage) {
-        if (Context.getConfig().getBoolean("database.saveOriginal") && decodedMessage instanceof Position) {
+        if (saveOriginal && decodedMessage instanceof Position) {
             Position position = (Position) decodedMessage;
             if (originalMessage instanceof ByteBuf) {
                 ByteBuf buf = (ByteBuf) originalMessage;
@@ -48,7 +51,7 @@ public abstract class ExtendedObjectDecoder extends ChannelInboundHandlerAdapter
         NetworkMessage networkMessage = (NetworkMessage) msg;
         Object originalMessage = networkMessage.getMessage();
         try {
-            Object decodedMessage = decode(ctx.channel(), networkMessage.getRemoteAddress(), originalMessage);
+            Object decodedMessage = handleDecode(ctx.channel(), networkMessage.getRemoteAddress(), originalMessage);
             onMessageEvent(ctx.channel(), networkMessage.getRemoteAddress(), originalMessage, decodedMessage);
             if (decodedMessage == null) {
                 decodedMessage = handleEmptyMessage(ctx.channel(), networkMessage.getRemoteAddress(), originalMessage);
@@ -73,6 +76,10 @@ public abstract class ExtendedObjectDecoder extends ChannelInboundHandlerAdapter
             Channel channel, SocketAddress remoteAddress, Object originalMessage, Object decodedMessage) {
     }
 
+    protected Object handleDecode(Channel channel, SocketAddress remoteAddress, Object msg) throws Exception {
+        return decode(channel, remoteAddress, msg);
+    }
+
     protected Object handleEmptyMessage(Channel channel, SocketAddress remoteAddress, Object msg) {
         return null;
     }
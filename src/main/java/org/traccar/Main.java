@@ -1,5 +1,5 @@
 /*
- * Copyright 2012 - 2019 Anton Tananaev (anton@traccar.org)
+ * Copyright 2012 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,6 +19,9 @@ import com.google.inject.Guice;
 import com.google.inject.Injector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.traccar.config.Keys;
+import org.traccar.database.RollupManager;
+import org.traccar.database.StatisticsManager;
 
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
@@ -129,6 +132,34 @@ public final class Main {
                 }
             }, 0, CLEAN_PERIOD);
 
+            final StatisticsManager statisticsManager = injector.getInstance(StatisticsManager.class);
+            new Timer().scheduleAtFixedRate(new TimerTask() {
+                @Override
+                public void run() {
+                    statisticsManager.checkSplit();
+                }
+            }, StatisticsManager.SPLIT_CHECK_PERIOD, StatisticsManager.SPLIT_CHECK_PERIOD);
+
+            final RollupManager rollupManager = injector.getInstance(RollupManager.class);
+            if (rollupManager != null) {
+                new Timer().scheduleAtFixedRate(new TimerTask() {
+                    @Override
+                    public void run() {
+                        rollupManager.update();
+                    }
+                }, 0, RollupManager.UPDATE_PERIOD);
+            }
+
+            long permissionsCheckPeriod = Context.getConfig().getLong(Keys.DATABASE_PERMISSIONS_CHECK_PERIOD, 3600);
+            if (permissionsCheckPeriod > 0) {
+                new Timer().scheduleAtFixedRate(new TimerTask() {
+                    @Override
+                    public void run() {
+                        Context.getPermissionsManager().checkDeviceAndGroupPermissions();
+                    }
+                }, permissionsCheckPeriod * 1000, permissionsCheckPeriod * 1000);
+            }
+
             Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
                 @Override
                 public void uncaughtException(Thread t, Throwable e) {
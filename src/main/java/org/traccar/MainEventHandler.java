@@ -1,5 +1,5 @@
 /*
- * Copyright 2012 - 2019 Anton Tananaev (anton@traccar.org)
+ * Copyright 2012 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -23,14 +23,19 @@ import io.netty.handler.codec.http.HttpRequestDecoder;
 import io.netty.handler.timeout.IdleStateEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.traccar.config.Keys;
 import org.traccar.database.StatisticsManager;
 import org.traccar.helper.DateUtil;
 import org.traccar.model.Position;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.sql.SQLException;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 
 public class MainEventHandler extends ChannelInboundHandlerAdapter {
@@ -41,6 +46,8 @@ public class MainEventHandler extends ChannelInboundHandlerAdapter {
 
     private final Set<String> connectionlessProtocols = new HashSet<>();
     private final Set<String> logAttributes = new LinkedHashSet<>();
+    private final int logSampling;
+    private final Map<Long, Long> logCounts = new HashMap<>();
 
     public MainEventHandler() {
         String connectionlessProtocolList = Context.getConfig().getString("status.ignoreOffline");
@@ -49,72 +56,96 @@ public class MainEventHandler extends ChannelInboundHandlerAdapter {
         }
         logAttributes.addAll(Arrays.asList(
                 Context.getConfig().getString("logger.attributes", DEFAULT_LOGGER_ATTRIBUTES).split("[, ]")));
+        logSampling = Context.getConfig().getInteger(Keys.LOGGER_POSITION_SAMPLING, 1);
     }
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) {
         if (msg instanceof Position) {
+            handlePosition(ctx.channel(), (Position) msg);
+        }
+    }
 
-            Position position = (Position) msg;
-            try {
-                Context.getDeviceManager().updateLatestPosition(position);
-            } catch (SQLException error) {
-                LOGGER.warn("Failed to update device", error);
-            }
+    public void handlePosition(Channel channel, Position position) {
+        try {
+            Context.getDeviceManager().updateLatestPosition(position);
+        } catch (SQLException error) {
+            LOGGER.warn("Failed to update device", error);
+        }
 
-            String uniqueId = Context.getIdentityManager().getById(position.getDeviceId()).getUniqueId();
-
-            StringBuilder builder = new StringBuilder();
-            builder.append(formatChannel(ctx.channel())).append(" ");
-            builder.append("id: ").append(uniqueId);
-            for (String attribute : logAttributes) {
-                switch (attribute) {
-                    case "time":
-                        builder.append(", time: ").append(DateUtil.formatDate(position.getFixTime(), false));
-                        break;
-                    case "position":
-                        builder.append(", lat: ").append(String.format("%.5f", position.getLatitude()));
-                        builder.append(", lon: ").append(String.format("%.5f", position.getLongitude()));
-                        break;
-                    case "speed":
-                        if (position.getSpeed() > 0) {
-                            builder.append(", speed: ").append(String.format("%.1f", position.getSpeed()));
-                        }
-                        break;
-                    case "course":
-                        builder.append(", course: ").append(String.format("%.1f", position.getCourse()));
-                        break;
-                    case "accuracy":
-                        if (position.getAccuracy() > 0) {
-                            builder.append(", accuracy: ").append(String.format("%.1f", position.getAccuracy()));
-                        }
-                        break;
-                    case "outdated":
-                        if (position.getOutdated()) {
-                            builder.append(", outdated");
-                        }
-                        break;
-                    case "invalid":
-                        if (!position.getValid()) {
-                            builder.append(", invalid");
-                        }
-                        break;
-                    default:
-                        Object value = position.getAttributes().get(attribute);
-                        if (value != null) {
-                            builder.append(", ").append(attribute).append(": ").append(value);
-                        }
-                        break;
-                }
-            }
-            LOGGER.info(builder.toString());
+        if (LOGGER.isInfoEnabled() && isSampled(position.getDeviceId())) {
+            logPosition(channel, position);
+        }
+
+        Main.getInjector().getInstance(StatisticsManager.class).registerMessageStored(position.getDeviceId());
+    }
+
+    private boolean isSampled(long deviceId) {
+        int sampling = Context.getIdentityManager().lookupAttributeInteger(
+                deviceId, "logger.positionSampling", logSampling, false, false);
+        if (sampling <= 0) {
+            return false;
+        }
+        long count = logCounts.getOrDefault(deviceId, 0L);
+        logCounts.put(deviceId, count + 1);
+        return count % sampling == 0;
+    }
 
-            Main.getInjector().getInstance(StatisticsManager.class).registerMessageStored(position.getDeviceId());
+    private static String formatNumber(double value, int scale) {
+        return BigDecimal.valueOf(value).setScale(scale, RoundingMode.HALF_UP).toPlainString();
+    }
+
+    private void logPosition(Channel channel, Position position) {
+        String uniqueId = Context.getIdentityManager().getById(position.getDeviceId()).getUniqueId();
+
+        StringBuilder builder = new StringBuilder();
+        builder.append(formatChannel(channel)).append(" ");
+        builder.append("id: ").append(uniqueId);
+        for (String attribute : logAttributes) {
+            switch (attribute) {
+                case "time":
+                    builder.append(", time: ").append(DateUtil.formatDate(position.getFixTime(), false));
+                    break;
+                case "position":
+                    builder.append(", lat: ").append(formatNumber(position.getLatitude(), 5));
+                    builder.append(", lon: ").append(formatNumber(position.getLongitude(), 5));
+                    break;
+                case "speed":
+                    if (position.getSpeed() > 0) {
+                        builder.append(", speed: ").append(formatNumber(position.getSpeed(), 1));
+                    }
+                    break;
+                case "course":
+                    builder.append(", course: ").append(formatNumber(position.getCourse(), 1));
+                    break;
+                case "accuracy":
+                    if (position.getAccuracy() > 0) {
+                        builder.append(", accuracy: ").append(formatNumber(position.getAccuracy(), 1));
+                    }
+                    break;
+                case "outdated":
+                    if (position.getOutdated()) {
+                        builder.append(", outdated");
+                    }
+                    break;
+                case "invalid":
+                    if (!position.getValid()) {
+                        builder.append(", invalid");
+                    }
+                    break;
+                default:
+                    Object value = position.getAttributes().get(attribute);
+                    if (value != null) {
+                        builder.append(", ").append(attribute).append(": ").append(value);
+                    }
+                    break;
+            }
         }
+        LOGGER.info(builder.toString());
     }
 
     private static String formatChannel(Channel channel) {
-        return String.format("[%s]", channel.id().asShortText());
+        return "[" + channel.id().asShortText() + "]";
     }
 
     @Override
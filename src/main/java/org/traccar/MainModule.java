@@ -1,5 +1,5 @@
 /*
- * Copyright 2018 - 2019 Anton Tananaev (anton@traccar.org)
+ * Copyright 2018 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -28,6 +28,8 @@ import org.traccar.database.DeviceManager;
 import org.traccar.database.GeofenceManager;
 import org.traccar.database.IdentityManager;
 import org.traccar.database.MaintenancesManager;
+import org.traccar.database.MetricsManager;
+import org.traccar.database.RollupManager;
 import org.traccar.database.StatisticsManager;
 import org.traccar.geocoder.AddressFormat;
 import org.traccar.geocoder.BanGeocoder;
@@ -68,7 +70,9 @@ import org.traccar.handler.events.GeofenceEventHandler;
 import org.traccar.handler.events.IgnitionEventHandler;
 import org.traccar.handler.events.MaintenanceEventHandler;
 import org.traccar.handler.events.MotionEventHandler;
+import org.traccar.handler.events.MotionSegmentDetector;
 import org.traccar.handler.events.OverspeedEventHandler;
+import org.traccar.helper.FrameCapture;
 import org.traccar.reports.model.TripsConfig;
 
 import javax.annotation.Nullable;
@@ -106,6 +110,12 @@ public class MainModule extends AbstractModule {
         return Context.getTripsConfig();
     }
 
+    @Nullable
+    @Provides
+    public static MetricsManager provideMetricsManager() {
+        return Context.getMetricsManager();
+    }
+
     @Provides
     public static DeviceManager provideDeviceManager() {
         return Context.getDeviceManager();
@@ -137,6 +147,28 @@ public class MainModule extends AbstractModule {
         return new StatisticsManager(config, dataManager, client);
     }
 
+    @Singleton
+    @Nullable
+    @Provides
+    public static FrameCapture provideFrameCapture(Config config) {
+        if (config.hasKey(Keys.LOGGER_CAPTURE_PATH)) {
+            return new FrameCapture(config);
+        }
+        return null;
+    }
+
+    @Singleton
+    @Provides
+    public static RollupManager provideRollupManager(
+            Config config, @Nullable DataManager dataManager, @Nullable DeviceManager deviceManager,
+            IdentityManager identityManager, TripsConfig tripsConfig) {
+        if (dataManager != null && deviceManager != null && config.getBoolean(Keys.REPORT_ROLLUP_ENABLE)) {
+            return new RollupManager(config, dataManager, deviceManager,
+                    new MotionSegmentDetector(identityManager, deviceManager, tripsConfig));
+        }
+        return null;
+    }
+
     @Singleton
     @Provides
     public static Geocoder provideGeocoder(Config config) {
@@ -209,9 +241,9 @@ public class MainModule extends AbstractModule {
 
     @Singleton
     @Provides
-    public static FilterHandler provideFilterHandler(Config config) {
+    public static FilterHandler provideFilterHandler(Config config, @Nullable MetricsManager metricsManager) {
         if (config.getBoolean(Keys.FILTER_ENABLE)) {
-            return new FilterHandler(config);
+            return new FilterHandler(config, metricsManager);
         }
         return null;
     }
@@ -247,9 +279,10 @@ public class MainModule extends AbstractModule {
     @Singleton
     @Provides
     public static GeolocationHandler provideGeolocationHandler(
-            Config config, @Nullable GeolocationProvider geolocationProvider, StatisticsManager statisticsManager) {
+            Config config, @Nullable GeolocationProvider geolocationProvider, StatisticsManager statisticsManager,
+            @Nullable MetricsManager metricsManager) {
         if (geolocationProvider != null) {
-            return new GeolocationHandler(config, geolocationProvider, statisticsManager);
+            return new GeolocationHandler(config, geolocationProvider, statisticsManager, metricsManager);
         }
         return null;
     }
@@ -258,9 +291,9 @@ public class MainModule extends AbstractModule {
     @Provides
     public static GeocoderHandler provideGeocoderHandler(
             Config config, @Nullable Geocoder geocoder, IdentityManager identityManager,
-            StatisticsManager statisticsManager) {
+            StatisticsManager statisticsManager, @Nullable MetricsManager metricsManager) {
         if (geocoder != null) {
-            return new GeocoderHandler(config, geocoder, identityManager, statisticsManager);
+            return new GeocoderHandler(config, geocoder, identityManager, statisticsManager, metricsManager);
         }
         return null;
     }
@@ -310,9 +343,11 @@ public class MainModule extends AbstractModule {
 
     @Singleton
     @Provides
-    public static DefaultDataHandler provideDefaultDataHandler(@Nullable DataManager dataManager) {
+    public static DefaultDataHandler provideDefaultDataHandler(
+            Config config, @Nullable DataManager dataManager, @Nullable RollupManager rollupManager,
+            @Nullable MetricsManager metricsManager) {
         if (dataManager != null) {
-            return new DefaultDataHandler(dataManager);
+            return new DefaultDataHandler(config, dataManager, rollupManager, metricsManager);
         }
         return null;
     }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2012 - 2018 Anton Tananaev (anton@traccar.org)
+ * Copyright 2012 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -44,32 +44,37 @@ public class ServerManager {
         List<String> names = new LinkedList<>();
         String packageName = "org.traccar.protocol";
         String packagePath = packageName.replace('.', '/');
-        URL packageUrl = getClass().getClassLoader().getResource(packagePath);
+        Enumeration<URL> packageUrls = getClass().getClassLoader().getResources(packagePath);
 
-        if (packageUrl.getProtocol().equals("jar")) {
-            String jarFileName = URLDecoder.decode(packageUrl.getFile(), StandardCharsets.UTF_8.name());
-            try (JarFile jf = new JarFile(jarFileName.substring(5, jarFileName.indexOf("!")))) {
-                Enumeration<JarEntry> jarEntries = jf.entries();
-                while (jarEntries.hasMoreElements()) {
-                    String entryName = jarEntries.nextElement().getName();
-                    if (entryName.startsWith(packagePath) && entryName.length() > packagePath.length() + 5) {
-                        names.add(entryName.substring(packagePath.length() + 1, entryName.lastIndexOf('.')));
+        while (packageUrls.hasMoreElements()) {
+            URL packageUrl = packageUrls.nextElement();
+            if (packageUrl.getProtocol().equals("jar")) {
+                String jarFileName = URLDecoder.decode(packageUrl.getFile(), StandardCharsets.UTF_8.name());
+                try (JarFile jf = new JarFile(jarFileName.substring(5, jarFileName.indexOf("!")))) {
+                    Enumeration<JarEntry> jarEntries = jf.entries();
+                    while (jarEntries.hasMoreElements()) {
+                        String entryName = jarEntries.nextElement().getName();
+                        if (entryName.startsWith(packagePath) && entryName.length() > packagePath.length() + 5) {
+                            names.add(entryName.substring(packagePath.length() + 1, entryName.lastIndexOf('.')));
+                        }
                     }
                 }
-            }
-        } else {
-            File folder = new File(new URI(packageUrl.toString()));
-            File[] files = folder.listFiles();
-            if (files != null) {
-                for (File actual: files) {
-                    String entryName = actual.getName();
-                    names.add(entryName.substring(0, entryName.lastIndexOf('.')));
+            } else {
+                File folder = new File(new URI(packageUrl.toString()));
+                File[] files = folder.listFiles();
+                if (files != null) {
+                    for (File actual: files) {
+                        String entryName = actual.getName();
+                        if (actual.isFile() && entryName.endsWith(".class")) {
+                            names.add(entryName.substring(0, entryName.lastIndexOf('.')));
+                        }
+                    }
                 }
             }
         }
 
         for (String name : names) {
-            Class protocolClass = Class.forName(packageName + '.' + name);
+            Class protocolClass = Class.forName(packageName + '.' + name, false, getClass().getClassLoader());
             if (BaseProtocol.class.isAssignableFrom(protocolClass)
                     && Context.getConfig().hasKey(BaseProtocol.nameFromClass(protocolClass) + ".port")) {
                 BaseProtocol protocol = (BaseProtocol) protocolClass.newInstance();
@@ -1,5 +1,5 @@
 /*
- * Copyright 2012 - 2018 Anton Tananaev (anton@traccar.org)
+ * Copyright 2012 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,17 +19,18 @@ import io.netty.bootstrap.AbstractBootstrap;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.channel.socket.nio.NioDatagramChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.util.concurrent.GlobalEventExecutor;
+import org.traccar.config.Keys;
 
 import java.net.InetSocketAddress;
 
 public abstract class TrackerServer {
 
     private final boolean datagram;
+    private final int datagramChannels;
     private final AbstractBootstrap bootstrap;
 
     public boolean isDatagram() {
@@ -51,16 +52,29 @@ public abstract class TrackerServer {
 
         if (datagram) {
 
-            this.bootstrap = new Bootstrap()
+            Bootstrap datagramBootstrap = new Bootstrap()
                     .group(EventLoopGroupFactory.getWorkerGroup())
-                    .channel(NioDatagramChannel.class)
+                    .channel(EventLoopGroupFactory.getDatagramChannelClass())
                     .handler(pipelineFactory);
 
+            if (EventLoopGroupFactory.isNativeTransport()) {
+                datagramChannels = Math.max(Context.getConfig().getInteger(Keys.SERVER_DATAGRAM_CHANNELS), 1);
+            } else {
+                datagramChannels = 1;
+            }
+            if (datagramChannels > 1) {
+                datagramBootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+            }
+
+            this.bootstrap = datagramBootstrap;
+
         } else {
 
+            datagramChannels = 0;
+
             this.bootstrap = new ServerBootstrap()
                     .group(EventLoopGroupFactory.getBossGroup(), EventLoopGroupFactory.getWorkerGroup())
-                    .channel(NioServerSocketChannel.class)
+                    .channel(EventLoopGroupFactory.getServerChannelClass())
                     .childHandler(pipelineFactory);
 
         }
@@ -102,9 +116,12 @@ public abstract class TrackerServer {
             endpoint = new InetSocketAddress(address, port);
         }
 
-        Channel channel = bootstrap.bind(endpoint).sync().channel();
-        if (channel != null) {
-            getChannelGroup().add(channel);
+        int channelCount = datagram ? datagramChannels : 1;
+        for (int i = 0; i < channelCount; i++) {
+            Channel channel = bootstrap.bind(endpoint).sync().channel();
+            if (channel != null) {
+                getChannelGroup().add(channel);
+            }
         }
     }
 
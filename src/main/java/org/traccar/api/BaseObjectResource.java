@@ -1,5 +1,5 @@
 /*
- * Copyright 2017 - 2018 Anton Tananaev (anton@traccar.org)
+ * Copyright 2017 - 2020 Anton Tananaev (anton@traccar.org)
  * Copyright 2017 - 2018 Andrey Kunitsyn (andrey@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -38,6 +38,7 @@ import org.traccar.model.Command;
 import org.traccar.model.Device;
 import org.traccar.model.Group;
 import org.traccar.model.GroupedModel;
+import org.traccar.model.Permission;
 import org.traccar.model.ScheduledModel;
 import org.traccar.model.User;
 
@@ -98,12 +99,22 @@ public abstract class BaseObjectResource<T extends BaseModel> extends BaseResour
         if (manager instanceof SimpleObjectManager) {
             ((SimpleObjectManager<T>) manager).refreshUserItems();
         } else if (baseClass.equals(Group.class) || baseClass.equals(Device.class)) {
-            Context.getPermissionsManager().refreshDeviceAndGroupPermissions();
+            refreshPermissions(entity);
+            Context.getPermissionsManager().refreshPermissions(
+                    new Permission(User.class, getUserId(), baseClass, entity.getId()), true);
             Context.getPermissionsManager().refreshAllExtendedPermissions();
         }
         return Response.ok(entity).build();
     }
 
+    private void refreshPermissions(T entity) {
+        if (entity instanceof Group) {
+            Context.getPermissionsManager().updateGroupPermissions((Group) entity);
+        } else {
+            Context.getPermissionsManager().updateDevicePermissions((Device) entity);
+        }
+    }
+
     @Path("{id}")
     @PUT
     public Response update(T entity) throws SQLException {
@@ -128,7 +139,7 @@ public abstract class BaseObjectResource<T extends BaseModel> extends BaseResour
         LogAction.edit(getUserId(), entity);
 
         if (baseClass.equals(Group.class) || baseClass.equals(Device.class)) {
-            Context.getPermissionsManager().refreshDeviceAndGroupPermissions();
+            refreshPermissions(entity);
             Context.getPermissionsManager().refreshAllExtendedPermissions();
         }
         return Response.ok(entity).build();
@@ -159,8 +170,12 @@ public abstract class BaseObjectResource<T extends BaseModel> extends BaseResour
             if (baseClass.equals(Group.class)) {
                 Context.getGroupsManager().updateGroupCache(true);
                 Context.getDeviceManager().updateDeviceCache(true);
+                Context.getPermissionsManager().removeGroupPermissions(id);
+            } else if (baseClass.equals(Device.class)) {
+                Context.getPermissionsManager().removeDevicePermissions(id);
+            } else {
+                Context.getPermissionsManager().removeUserPermissions(id);
             }
-            Context.getPermissionsManager().refreshDeviceAndGroupPermissions();
             if (baseClass.equals(User.class)) {
                 Context.getPermissionsManager().refreshAllUsersPermissions();
             } else {
@@ -1,5 +1,5 @@
 /*
- * Copyright 2017 Anton Tananaev (anton@traccar.org)
+ * Copyright 2017 - 2020 Anton Tananaev (anton@traccar.org)
  * Copyright 2017 Andrey Kunitsyn (andrey@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -64,7 +64,7 @@ public class PermissionsResource  extends BaseResource {
                 permission.getPropertyClass(), permission.getPropertyId(), true);
         LogAction.link(getUserId(), permission.getOwnerClass(), permission.getOwnerId(),
                 permission.getPropertyClass(), permission.getPropertyId());
-        Context.getPermissionsManager().refreshPermissions(permission);
+        Context.getPermissionsManager().refreshPermissions(permission, true);
         return Response.noContent().build();
     }
 
@@ -77,7 +77,7 @@ public class PermissionsResource  extends BaseResource {
                 permission.getPropertyClass(), permission.getPropertyId(), false);
         LogAction.unlink(getUserId(), permission.getOwnerClass(), permission.getOwnerId(),
                 permission.getPropertyClass(), permission.getPropertyId());
-        Context.getPermissionsManager().refreshPermissions(permission);
+        Context.getPermissionsManager().refreshPermissions(permission, false);
         return Response.noContent().build();
     }
 
@@ -17,6 +17,7 @@ package org.traccar.api.resource;
 
 import org.traccar.Context;
 import org.traccar.api.BaseResource;
+import org.traccar.database.QueryIterator;
 import org.traccar.helper.DateUtil;
 import org.traccar.model.Position;
 import org.traccar.web.CsvBuilder;
@@ -27,13 +28,20 @@ import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 @Path("positions")
@@ -74,11 +82,25 @@ public class PositionResource extends BaseResource {
             @QueryParam("deviceId") long deviceId, @QueryParam("from") String from, @QueryParam("to") String to)
             throws SQLException {
         Context.getPermissionsManager().checkDevice(getUserId(), deviceId);
-        CsvBuilder csv = new CsvBuilder();
-        csv.addHeaderLine(new Position());
-        csv.addArray(Context.getDataManager().getPositions(
-                deviceId, DateUtil.parseDate(from), DateUtil.parseDate(to)));
-        return Response.ok(csv.build()).header(HttpHeaders.CONTENT_DISPOSITION, CONTENT_DISPOSITION_VALUE_CSV).build();
+        Date fromDate = DateUtil.parseDate(from);
+        Date toDate = DateUtil.parseDate(to);
+        StreamingOutput stream = output -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            CsvBuilder csv = new CsvBuilder();
+            csv.addHeaderLine(new Position());
+            try (QueryIterator<Position> positions =
+                         Context.getDataManager().getPositionsIterator(deviceId, fromDate, toDate)) {
+                while (positions.hasNext()) {
+                    csv.addLine(positions.next());
+                    csv.flush(writer);
+                }
+            } catch (SQLException | IllegalStateException error) {
+                throw new WebApplicationException(error);
+            }
+            writer.write(csv.build());
+            writer.flush();
+        };
+        return Response.ok(stream).header(HttpHeaders.CONTENT_DISPOSITION, CONTENT_DISPOSITION_VALUE_CSV).build();
     }
 
     @GET
@@ -87,10 +109,25 @@ public class PositionResource extends BaseResource {
             @QueryParam("deviceId") long deviceId, @QueryParam("from") String from, @QueryParam("to") String to)
             throws SQLException {
         Context.getPermissionsManager().checkDevice(getUserId(), deviceId);
-        GpxBuilder gpx = new GpxBuilder(Context.getIdentityManager().getById(deviceId).getName());
-        gpx.addPositions(Context.getDataManager().getPositions(
-                deviceId, DateUtil.parseDate(from), DateUtil.parseDate(to)));
-        return Response.ok(gpx.build()).header(HttpHeaders.CONTENT_DISPOSITION, CONTENT_DISPOSITION_VALUE_GPX).build();
+        String name = Context.getIdentityManager().getById(deviceId).getName();
+        Date fromDate = DateUtil.parseDate(from);
+        Date toDate = DateUtil.parseDate(to);
+        StreamingOutput stream = output -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            GpxBuilder gpx = new GpxBuilder(name);
+            try (QueryIterator<Position> positions =
+                         Context.getDataManager().getPositionsIterator(deviceId, fromDate, toDate)) {
+                while (positions.hasNext()) {
+                    gpx.addPosition(positions.next());
+                    gpx.flush(writer);
+                }
+            } catch (SQLException | IllegalStateException error) {
+                throw new WebApplicationException(error);
+            }
+            writer.write(gpx.build());
+            writer.flush();
+        };
+        return Response.ok(stream).header(HttpHeaders.CONTENT_DISPOSITION, CONTENT_DISPOSITION_VALUE_GPX).build();
     }
 
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2019 Anton Tananaev (anton@traccar.org)
+ * Copyright 2019 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -32,6 +32,59 @@ public final class Keys {
     public static final ConfigKey SERVER_TIMEOUT = new ConfigKey(
             "server.timeout", Integer.class);
 
+    /**
+     * Server address reported to devices that request it, in "host:port" format. If not set, local address of the
+     * connection is used.
+     */
+    public static final ConfigSuffix PROTOCOL_SERVER = new ConfigSuffix(
+            ".server", String.class);
+
+    /**
+     * Speed units used by the protocol, if they are not fixed by the protocol specification. Supported values are "kn",
+     * "kmh", "mps" and "mph".
+     */
+    public static final ConfigSuffix PROTOCOL_SPEED = new ConfigSuffix(
+            ".speed", String.class);
+
+    /**
+     * Deprecated protocol time zone offset in seconds. Use "decoder.timezone" device attribute instead.
+     */
+    public static final ConfigSuffix PROTOCOL_TIMEZONE = new ConfigSuffix(
+            ".timezone", Integer.class);
+
+    /**
+     * Look up the device for every message of the protocol instead of caching it for the connection or remote address.
+     */
+    public static final ConfigSuffix PROTOCOL_IGNORE_SESSION_CACHE = new ConfigSuffix(
+            ".ignoreSessionCache", Boolean.class);
+
+    /**
+     * Use native epoll transport on Linux instead of Java NIO. If native transport is not available on the current
+     * system, server falls back to NIO.
+     */
+    public static final ConfigKey SERVER_NATIVE_TRANSPORT = new ConfigKey(
+            "server.nativeTransport", Boolean.class);
+
+    /**
+     * Number of threads accepting incoming TCP connections. By default Netty uses twice the number of CPU cores.
+     */
+    public static final ConfigKey SERVER_BOSS_THREADS = new ConfigKey(
+            "server.bossThreads", Integer.class);
+
+    /**
+     * Number of network threads handling socket I/O for all protocols. By default Netty uses twice the number of CPU
+     * cores.
+     */
+    public static final ConfigKey SERVER_WORKER_THREADS = new ConfigKey(
+            "server.workerThreads", Integer.class);
+
+    /**
+     * Number of UDP sockets bound to each datagram port. Values above one require native transport. Sockets share the
+     * port using SO_REUSEPORT, so several network threads can read datagrams for the same protocol.
+     */
+    public static final ConfigKey SERVER_DATAGRAM_CHANNELS = new ConfigKey(
+            "server.datagramChannels", Integer.class);
+
     /**
      * Address for uploading aggregated anonymous usage statistics. Uploaded information is the same you can see on the
      * statistics screen in the web app. It does not include any sensitive (e.g. locations).
@@ -39,6 +92,152 @@ public final class Keys {
     public static final ConfigKey SERVER_STATISTICS = new ConfigKey(
             "server.statistics", Boolean.class);
 
+    /**
+     * Enable collection of operational metrics, like processing latency of each pipeline handler, decoding errors,
+     * database write latency and queue sizes. Metrics are available in Prometheus text format on the "/api/metrics"
+     * endpoint for administrators.
+     */
+    public static final ConfigKey METRICS_ENABLE = new ConfigKey(
+            "metrics.enable", Boolean.class);
+
+    /**
+     * Log only every N-th raw frame of the protocol in hex format. Value 0 disables frame logging for the protocol,
+     * default value 1 logs all frames. Identified devices can override it with the "logger.frameSampling" attribute.
+     */
+    public static final ConfigSuffix PROTOCOL_LOGGER_FRAME_SAMPLING = new ConfigSuffix(
+            ".logger.frameSampling", Integer.class);
+
+    /**
+     * Server wide raw frame logging sampling. See protocol frame sampling for more information.
+     */
+    public static final ConfigKey LOGGER_FRAME_SAMPLING = new ConfigKey(
+            "logger.frameSampling", Integer.class);
+
+    /**
+     * Log only every N-th decoded position of each connection. Value 0 disables position logging, default value 1 logs
+     * all positions. Devices can override it with the "logger.positionSampling" attribute.
+     */
+    public static final ConfigKey LOGGER_POSITION_SAMPLING = new ConfigKey(
+            "logger.positionSampling", Integer.class);
+
+    /**
+     * Write log records from a background thread, so network and processing threads never wait for the file or the
+     * console. If the queue is full, oldest records are dropped and number of dropped records is logged later.
+     */
+    public static final ConfigKey LOGGER_ASYNC = new ConfigKey(
+            "logger.async", Boolean.class);
+
+    /**
+     * Size of the asynchronous logging queue. Default value is 8192 records.
+     */
+    public static final ConfigKey LOGGER_ASYNC_QUEUE_SIZE = new ConfigKey(
+            "logger.asyncQueueSize", Integer.class);
+
+    /**
+     * Directory for binary capture of raw frames. If set, all received and sent frames are written to hourly files in
+     * the directory. Capture files are much more compact than hex logs and can be replayed with the load generator.
+     */
+    public static final ConfigKey LOGGER_CAPTURE_PATH = new ConfigKey(
+            "logger.capturePath", String.class);
+
+    /**
+     * Maximum size of a single capture file in megabytes. When the limit is reached, a new file is started before the
+     * end of the hour. Default value is 1024.
+     */
+    public static final ConfigKey LOGGER_CAPTURE_FILE_SIZE = new ConfigKey(
+            "logger.captureFileSize", Integer.class);
+
+    /**
+     * Maximum number of records inserted in a single JDBC batch. If the value is set, positions and events are stored
+     * asynchronously by dedicated writer threads instead of the network threads. Database driver has to return
+     * generated keys for batch inserts, otherwise records are inserted one by one.
+     */
+    public static final ConfigKey DATABASE_BATCH_SIZE = new ConfigKey(
+            "database.batchSize", Integer.class);
+
+    /**
+     * Maximum time in milliseconds a record waits in the queue before the batch is flushed. Default value is 100.
+     */
+    public static final ConfigKey DATABASE_BATCH_PERIOD = new ConfigKey(
+            "database.batchPeriod", Long.class);
+
+    /**
+     * Capacity of the asynchronous write queue. Network threads never wait for the database. When the queue is three
+     * quarters full, connections that send positions stop reading until the queue drains to half. Records that still
+     * don't fit into a full queue are not stored and are counted as dropped. Default value is 10000.
+     */
+    public static final ConfigKey DATABASE_BATCH_QUEUE_SIZE = new ConfigKey(
+            "database.batchQueueSize", Integer.class);
+
+    /**
+     * Period in milliseconds for writing device status and latest position changes. If the value is set, only the
+     * newest values for each device are kept in memory and written in batches once per period, instead of updating the
+     * device row for every message. Cached values are always updated immediately.
+     */
+    public static final ConfigKey DATABASE_DEVICE_UPDATE_PERIOD = new ConfigKey(
+            "database.deviceUpdatePeriod", Long.class);
+
+    /**
+     * Period in seconds for reloading device and group permissions from the database. Permission changes made through
+     * the API are applied incrementally, so the reload only catches changes made directly in the database. Default
+     * value is 3600. Zero disables the periodic reload.
+     */
+    public static final ConfigKey DATABASE_PERMISSIONS_CHECK_PERIOD = new ConfigKey(
+            "database.permissionsCheckPeriod", Long.class);
+
+    /**
+     * Number of rows fetched from the database at once when reading position history for reports and exports.
+     * Default value is 1000. Zero uses driver default. MySQL streams rows only with the special value -2147483648 or
+     * with useCursorFetch=true in the connection URL.
+     */
+    public static final ConfigKey DATABASE_FETCH_SIZE = new ConfigKey(
+            "database.fetchSize", Integer.class);
+
+    /**
+     * Time in seconds an unknown device identifier is remembered after a failed lookup. During this period messages
+     * with the identifier do not trigger device cache reload. Default value is 60. Zero disables the cache.
+     */
+    public static final ConfigKey DATABASE_UNKNOWN_TIMEOUT = new ConfigKey(
+            "database.unknownTimeout", Long.class);
+
+    /**
+     * Automatically register unknown devices in the database.
+     */
+    public static final ConfigKey DATABASE_REGISTER_UNKNOWN = new ConfigKey(
+            "database.registerUnknown", Boolean.class);
+
+    /**
+     * Store positions of disabled devices.
+     */
+    public static final ConfigKey DATABASE_STORE_DISABLED = new ConfigKey(
+            "database.storeDisabled", Boolean.class);
+
+    /**
+     * Store empty messages as positions with the last known location.
+     */
+    public static final ConfigKey DATABASE_SAVE_EMPTY = new ConfigKey(
+            "database.saveEmpty", Boolean.class);
+
+    /**
+     * Store original message in hex format in the position attributes.
+     */
+    public static final ConfigKey DATABASE_SAVE_ORIGINAL = new ConfigKey(
+            "database.saveOriginal", Boolean.class);
+
+    /**
+     * Maximum number of messages from unknown devices accepted from a single remote address per minute. After the
+     * limit is reached, messages from the address are dropped without device lookup until the end of the minute.
+     * Disabled by default. Note that many devices can share an address behind carrier NAT.
+     */
+    public static final ConfigKey DECODER_UNKNOWN_LIMIT = new ConfigKey(
+            "decoder.unknownLimit", Integer.class);
+
+    /**
+     * Server wide flag to look up the device for every message. See protocol session cache flag for more information.
+     */
+    public static final ConfigKey DECODER_IGNORE_SESSION_CACHE = new ConfigKey(
+            "decoder.ignoreSessionCache", Boolean.class);
+
     /**
      * Enable events subsystem. Flag to enable all events handlers.
      */
@@ -217,6 +416,14 @@ public final class Keys {
     public static final ConfigKey COORDINATES_MAX_ERROR = new ConfigKey(
             "coordinates.maxError", Integer.class);
 
+    /**
+     * Number of threads used for position processing. If the value is set, handlers that follow protocol decoders,
+     * including database access and events, are executed on a separate executor group instead of network threads. All
+     * messages from one connection are processed by the same thread, so message order is preserved.
+     */
+    public static final ConfigKey PROCESSING_THREADS = new ConfigKey(
+            "processing.threads", Integer.class);
+
     /**
      * Enable to save device IP addresses information. Disabled by default.
      */
@@ -364,6 +571,79 @@ public final class Keys {
     public static final ConfigKey LOCATION_LONGITUDE_HEMISPHERE = new ConfigKey(
             "location.longitudeHemisphere", Boolean.class);
 
+    /**
+     * Maximum number of devices which positions are fetched with a single query for multi-device reports. Default
+     * value is 100.
+     */
+    public static final ConfigKey REPORT_DEVICES_PER_QUERY = new ConfigKey(
+            "report.devicesPerQuery", Integer.class);
+
+    /**
+     * Enable daily rollups for summary, trips and stops reports. Rollups are calculated for completed days and store
+     * trips and stops detected on that day, so reports read raw positions only around the edges of the requested
+     * period. Days are split in UTC.
+     */
+    public static final ConfigKey REPORT_ROLLUP_ENABLE = new ConfigKey(
+            "report.rollup.enable", Boolean.class);
+
+    /**
+     * Number of completed days checked for missing rollups on each update. Missing days are calculated from position
+     * history, so the value can be increased to backfill older data. Default value is 7.
+     */
+    public static final ConfigKey REPORT_ROLLUP_BACKFILL_DAYS = new ConfigKey(
+            "report.rollup.backfillDays", Integer.class);
+
+    /**
+     * Number of threads shared by all notificators for notification delivery. Default value is 10.
+     */
+    public static final ConfigKey NOTIFICATOR_THREADS = new ConfigKey(
+            "notificator.threads", Integer.class);
+
+    /**
+     * Maximum number of notifications delivered concurrently by a notificator, for example
+     * 'notificator.mail.concurrency'. Default value is 4.
+     */
+    public static final ConfigSuffix NOTIFICATOR_CONCURRENCY = new ConfigSuffix(
+            ".concurrency", Integer.class);
+
+    /**
+     * Period in seconds for combining notifications into digests, for example 'notificator.mail.digestPeriod'. All
+     * events for a user within the period are sent as a single message. Digests are supported by mail and Telegram
+     * notificators, other notificators send events separately. By default digests are disabled.
+     */
+    public static final ConfigSuffix NOTIFICATOR_DIGEST_PERIOD = new ConfigSuffix(
+            ".digestPeriod", Long.class);
+
+    /**
+     * Maximum number of notifications waiting for delivery per notificator. Event processing never waits for the
+     * queue. When it is full, new notifications wait for another attempt after the retry delay, same as retries.
+     * Default value is 1000.
+     */
+    public static final ConfigKey NOTIFICATOR_QUEUE_SIZE = new ConfigKey(
+            "notificator.queueSize", Integer.class);
+
+    /**
+     * Maximum number of notifications kept in memory while waiting for another attempt, shared by all notificators.
+     * Notifications over the limit are moved to the database if retries are enabled and the event is stored. Other
+     * notifications over the limit are dropped and counted in the metrics. Default value is 10000.
+     */
+    public static final ConfigKey NOTIFICATOR_PENDING_LIMIT = new ConfigKey(
+            "notificator.pendingLimit", Integer.class);
+
+    /**
+     * Number of delivery retries for failed notifications. Pending retries are stored in the database, so they
+     * survive server restart. Zero disables retries. Default value is 5.
+     */
+    public static final ConfigKey NOTIFICATOR_RETRY_ATTEMPTS = new ConfigKey(
+            "notificator.retry.attempts", Integer.class);
+
+    /**
+     * Delay before the first retry of a failed notification in seconds. The delay is doubled for each following
+     * attempt. Default value is 60 seconds.
+     */
+    public static final ConfigKey NOTIFICATOR_RETRY_DELAY = new ConfigKey(
+            "notificator.retry.delay", Long.class);
+
     private Keys() {
     }
 
@@ -1,5 +1,5 @@
 /*
- * Copyright 2017 Anton Tananaev (anton@traccar.org)
+ * Copyright 2017 - 2020 Anton Tananaev (anton@traccar.org)
  * Copyright 2017 Andrey Kunitsyn (andrey@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -20,10 +20,31 @@ import org.traccar.model.Attribute;
 
 public class AttributesManager extends ExtendedObjectManager<Attribute> {
 
+    private volatile long version;
+
     public AttributesManager(DataManager dataManager) {
         super(dataManager, Attribute.class);
     }
 
+    /**
+     * Returns a counter that changes every time cached attributes are modified or reloaded.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public void refreshItems() {
+        super.refreshItems();
+        version++;
+    }
+
+    @Override
+    protected void removeCachedItem(long itemId) {
+        super.removeCachedItem(itemId);
+        version++;
+    }
+
     @Override
     public void updateCachedItem(Attribute attribute) {
         Attribute cachedAttribute = getById(attribute.getId());
@@ -31,6 +52,7 @@ public class AttributesManager extends ExtendedObjectManager<Attribute> {
         cachedAttribute.setAttribute(attribute.getAttribute());
         cachedAttribute.setExpression(attribute.getExpression());
         cachedAttribute.setType(attribute.getType());
+        version++;
     }
 
 }
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.database;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.traccar.model.BaseModel;
+
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind stage that collects objects from all callers and inserts them using JDBC batches on a dedicated
+ * thread. A batch is flushed when it reaches the size limit or when the oldest entry has waited for the batch period.
+ * Callers are never blocked. When the queue is three quarters full, callers are asked to pause and are resumed once it
+ * drains to half. Objects that don't fit into a full queue are not stored, they are counted and reported as failed.
+ */
+public class BatchWriter<T extends BaseModel> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchWriter.class);
+
+    private static final long STOP_TIMEOUT = 30000;
+
+    public interface WriteCallback {
+        void onSuccess();
+        void onFailure(Throwable e);
+    }
+
+    private static final class Entry<T> {
+
+        private final T object;
+        private final WriteCallback callback;
+
+        private Entry(T object, WriteCallback callback) {
+            this.object = object;
+            this.callback = callback;
+        }
+
+    }
+
+    private final DataManager dataManager;
+    private final int batchSize;
+    private final long batchPeriod;
+    private final BlockingQueue<Entry<T>> queue;
+    private final int pauseSize;
+    private final int resumeSize;
+    private final Queue<Runnable> pausedCallers = new ConcurrentLinkedQueue<>();
+    private final LongAdder dropped = new LongAdder();
+    private final Thread thread;
+
+    private volatile boolean running = true;
+    private volatile boolean batchSupported = true;
+
+    public BatchWriter(DataManager dataManager, String name, int batchSize, long batchPeriod, int queueSize) {
+        this.dataManager = dataManager;
+        this.batchSize = batchSize;
+        this.batchPeriod = batchPeriod;
+        queue = new ArrayBlockingQueue<>(queueSize);
+        pauseSize = queueSize * 3 / 4;
+        resumeSize = queueSize / 2;
+        thread = new Thread(this::run, "batch-writer-" + name);
+        thread.setDaemon(true);
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stop));
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Queues object without blocking. Returns false if the queue is filling up and the caller should stop producing
+     * new objects until the resume action passed to {@link #whenAvailable} is called.
+     */
+    public boolean write(T object, WriteCallback callback) {
+        Entry<T> entry = new Entry<>(object, callback);
+        if (running) {
+            if (!queue.offer(entry)) {
+                dropped.increment();
+                callback.onFailure(new SQLException("Batch queue is full"));
+                return false;
+            }
+            return queue.size() < pauseSize;
+        }
+        List<Entry<T>> batch = new ArrayList<>(1);
+        batch.add(entry);
+        flush(batch);
+        return true;
+    }
+
+    public void whenAvailable(Runnable resume) {
+        pausedCallers.add(resume);
+    }
+
+    private void resumeCallers() {
+        if (queue.size() <= resumeSize) {
+            Runnable resume = pausedCallers.poll();
+            while (resume != null) {
+                resume.run();
+                resume = pausedCallers.poll();
+            }
+        }
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            thread.join(STOP_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Entry<T>> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                resumeCallers();
+                Entry<T> entry = queue.poll(batchPeriod, TimeUnit.MILLISECONDS);
+                if (entry != null) {
+                    batch.add(entry);
+                    long deadline = System.currentTimeMillis() + batchPeriod;
+                    while (batch.size() < batchSize) {
+                        if (queue.drainTo(batch, batchSize - batch.size()) == 0) {
+                            long remaining = deadline - System.currentTimeMillis();
+                            entry = remaining > 0 ? queue.poll(remaining, TimeUnit.MILLISECONDS) : null;
+                            if (entry == null) {
+                                break;
+                            }
+                            batch.add(entry);
+                        }
+                    }
+                    flush(batch);
+                }
+            } catch (InterruptedException e) {
+                LOGGER.warn("Batch writer interrupted", e);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Batch writer error", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Entry<T>> batch) {
+        if (batchSupported) {
+            List<T> objects = new ArrayList<>(batch.size());
+            for (Entry<T> entry : batch) {
+                objects.add(entry.object);
+            }
+            try {
+                dataManager.addObjects(objects);
+                for (Entry<T> entry : batch) {
+                    entry.callback.onSuccess();
+                }
+                return;
+            } catch (SQLFeatureNotSupportedException error) {
+                LOGGER.warn("Database driver does not return batch keys, falling back to single inserts");
+                batchSupported = false;
+            } catch (SQLException error) {
+                for (Entry<T> entry : batch) {
+                    entry.callback.onFailure(error);
+                }
+                return;
+            }
+        }
+        for (Entry<T> entry : batch) {
+            try {
+                dataManager.addObject(entry.object);
+                entry.callback.onSuccess();
+            } catch (SQLException error) {
+                entry.callback.onFailure(error);
+            }
+        }
+    }
+
+}
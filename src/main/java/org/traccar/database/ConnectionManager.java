@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 - 2018 Anton Tananaev (anton@traccar.org)
+ * Copyright 2015 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,6 +16,7 @@
 package org.traccar.database;
 
 import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
 import io.netty.util.Timeout;
 import io.netty.util.TimerTask;
 import org.slf4j.Logger;
@@ -24,6 +25,7 @@ import org.traccar.Context;
 import org.traccar.GlobalTimer;
 import org.traccar.Main;
 import org.traccar.Protocol;
+import org.traccar.config.Keys;
 import org.traccar.handler.events.MotionEventHandler;
 import org.traccar.handler.events.OverspeedEventHandler;
 import org.traccar.model.Device;
@@ -31,6 +33,8 @@ import org.traccar.model.DeviceState;
 import org.traccar.model.Event;
 import org.traccar.model.Position;
 
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.sql.SQLException;
 import java.util.Date;
@@ -40,37 +44,96 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ConnectionManager {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionManager.class);
 
     private static final long DEFAULT_TIMEOUT = 600;
+    private static final long UNKNOWN_PERIOD = 60000;
+
+    private static final AttributeKey<Set<Long>> DEVICE_IDS = AttributeKey.valueOf("deviceIds");
 
     private final long deviceTimeout;
     private final boolean enableStatusEvents;
     private final boolean updateDeviceState;
+    private final int unknownLimit;
 
     private final Map<Long, ActiveDevice> activeDevices = new ConcurrentHashMap<>();
     private final Map<Long, Set<UpdateListener>> listeners = new ConcurrentHashMap<>();
     private final Map<Long, Timeout> timeouts = new ConcurrentHashMap<>();
 
+    private final Map<InetAddress, AtomicInteger> unknownCounters = new ConcurrentHashMap<>();
+    private final AtomicLong unknownPeriodStart = new AtomicLong();
+
     public ConnectionManager() {
         deviceTimeout = Context.getConfig().getLong("status.timeout", DEFAULT_TIMEOUT) * 1000;
         enableStatusEvents = Context.getConfig().getBoolean("event.enable");
         updateDeviceState = Context.getConfig().getBoolean("status.updateDeviceState");
+        unknownLimit = Context.getConfig().getInteger(Keys.DECODER_UNKNOWN_LIMIT);
+    }
+
+    private static Set<Long> getChannelDevices(Channel channel) {
+        Set<Long> deviceIds = channel.attr(DEVICE_IDS).get();
+        if (deviceIds == null) {
+            Set<Long> newDeviceIds = ConcurrentHashMap.newKeySet();
+            deviceIds = channel.attr(DEVICE_IDS).setIfAbsent(newDeviceIds);
+            if (deviceIds == null) {
+                deviceIds = newDeviceIds;
+            }
+        }
+        return deviceIds;
     }
 
     public void addActiveDevice(long deviceId, Protocol protocol, Channel channel, SocketAddress remoteAddress) {
-        activeDevices.put(deviceId, new ActiveDevice(deviceId, protocol, channel, remoteAddress));
+        ActiveDevice activeDevice = new ActiveDevice(deviceId, protocol, channel, remoteAddress);
+        ActiveDevice oldDevice = activeDevices.put(deviceId, activeDevice);
+        if (oldDevice != null && oldDevice.getChannel() != channel && oldDevice.getChannel() != null) {
+            getChannelDevices(oldDevice.getChannel()).remove(deviceId);
+        }
+        if (channel != null) {
+            getChannelDevices(channel).add(deviceId);
+        }
     }
 
     public void removeActiveDevice(Channel channel) {
-        for (ActiveDevice activeDevice : activeDevices.values()) {
-            if (activeDevice.getChannel() == channel) {
-                updateDevice(activeDevice.getDeviceId(), Device.STATUS_OFFLINE, null);
-                activeDevices.remove(activeDevice.getDeviceId());
-                break;
+        Set<Long> deviceIds = channel.attr(DEVICE_IDS).getAndSet(null);
+        if (deviceIds != null) {
+            for (long deviceId : deviceIds) {
+                ActiveDevice activeDevice = activeDevices.get(deviceId);
+                if (activeDevice != null && activeDevice.getChannel() == channel) {
+                    updateDevice(deviceId, Device.STATUS_OFFLINE, null);
+                    activeDevices.remove(deviceId, activeDevice);
+                }
+            }
+        }
+    }
+
+    private void checkUnknownPeriod() {
+        long currentTime = System.currentTimeMillis();
+        long periodStart = unknownPeriodStart.get();
+        if (currentTime - periodStart >= UNKNOWN_PERIOD && unknownPeriodStart.compareAndSet(periodStart, currentTime)) {
+            unknownCounters.clear();
+        }
+    }
+
+    public boolean isUnknownLimited(SocketAddress remoteAddress) {
+        if (unknownLimit > 0 && remoteAddress instanceof InetSocketAddress) {
+            checkUnknownPeriod();
+            AtomicInteger counter = unknownCounters.get(((InetSocketAddress) remoteAddress).getAddress());
+            return counter != null && counter.get() >= unknownLimit;
+        }
+        return false;
+    }
+
+    public void registerUnknownDevice(SocketAddress remoteAddress) {
+        if (unknownLimit > 0 && remoteAddress instanceof InetSocketAddress) {
+            InetAddress address = ((InetSocketAddress) remoteAddress).getAddress();
+            AtomicInteger counter = unknownCounters.computeIfAbsent(address, key -> new AtomicInteger());
+            if (counter.incrementAndGet() == unknownLimit) {
+                LOGGER.warn("Unknown device limit reached - " + address.getHostAddress());
             }
         }
     }
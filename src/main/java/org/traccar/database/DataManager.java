@@ -1,5 +1,5 @@
 /*
- * Copyright 2012 - 2017 Anton Tananaev (anton@traccar.org)
+ * Copyright 2012 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -24,7 +24,9 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.naming.InitialContext;
 import javax.sql.DataSource;
@@ -40,6 +42,7 @@ import liquibase.resource.ResourceAccessor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.config.Config;
+import org.traccar.config.Keys;
 import org.traccar.Context;
 import org.traccar.helper.DateUtil;
 import org.traccar.model.Attribute;
@@ -56,12 +59,14 @@ import org.traccar.model.BaseModel;
 import org.traccar.model.Calendar;
 import org.traccar.model.Command;
 import org.traccar.model.Position;
+import org.traccar.model.Rollup;
 import org.traccar.model.Server;
 import org.traccar.model.Statistics;
 import org.traccar.model.User;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 
 public class DataManager {
 
@@ -81,8 +86,16 @@ public class DataManager {
 
     private boolean forceLdap;
 
+    private final MetricsManager metricsManager;
+    private final Map<Class<?>, MetricsManager.Histogram> writeHistograms = new ConcurrentHashMap<>();
+
     public DataManager(Config config) throws Exception {
+        this(config, null);
+    }
+
+    public DataManager(Config config, MetricsManager metricsManager) throws Exception {
         this.config = config;
+        this.metricsManager = metricsManager;
 
         forceLdap = config.getBoolean("ldap.force");
 
@@ -136,8 +149,30 @@ public class DataManager {
 
             generateQueries = config.getBoolean("database.generateQueries");
 
-            dataSource = new HikariDataSource(hikariConfig);
+            HikariDataSource hikariDataSource = new HikariDataSource(hikariConfig);
+            dataSource = hikariDataSource;
+
+            if (metricsManager != null) {
+                HikariPoolMXBean pool = hikariDataSource.getHikariPoolMXBean();
+                String help = "Database connection pool connections";
+                metricsManager.gauge("traccar_database_connections", help, pool::getActiveConnections,
+                        "state", "active");
+                metricsManager.gauge("traccar_database_connections", help, pool::getIdleConnections,
+                        "state", "idle");
+                metricsManager.gauge("traccar_database_connections", help, pool::getThreadsAwaitingConnection,
+                        "state", "pending");
+                metricsManager.gauge("traccar_database_connections_max", "Database connection pool size limit",
+                        hikariDataSource::getMaximumPoolSize);
+            }
+
+        }
+    }
 
+    private void observeWrite(Class<?> clazz, long startTime) {
+        if (metricsManager != null) {
+            writeHistograms.computeIfAbsent(clazz, key -> metricsManager.histogram(
+                    "traccar_database_write_duration_seconds", "Database insert latency",
+                    "table", getObjectsTableName(key))).observe(System.nanoTime() - startTime);
         }
     }
 
@@ -339,6 +374,16 @@ public class DataManager {
                 .executeUpdate();
     }
 
+    public void updateDeviceStatuses(Collection<Device> devices) throws SQLException {
+        if (!devices.isEmpty()) {
+            QueryBuilder queryBuilder = QueryBuilder.create(dataSource, getQuery(ACTION_UPDATE, Device.class, true));
+            for (Device device : devices) {
+                queryBuilder.setObject(device).addBatch();
+            }
+            queryBuilder.executeBatch();
+        }
+    }
+
     public Collection<Position> getPositions(long deviceId, Date from, Date to) throws SQLException {
         return QueryBuilder.create(dataSource, getQuery("database.selectPositions"))
                 .setLong("deviceId", deviceId)
@@ -347,6 +392,103 @@ public class DataManager {
                 .executeQuery(Position.class);
     }
 
+    /**
+     * Streaming version of {@link #getPositions} for large periods. Returned iterator has to be closed.
+     */
+    public QueryIterator<Position> getPositionsIterator(long deviceId, Date from, Date to) throws SQLException {
+        return QueryBuilder.create(dataSource, getQuery("database.selectPositions"))
+                .setLong("deviceId", deviceId)
+                .setDate("from", from)
+                .setDate("to", to)
+                .executeQueryIterator(Position.class, config.getInteger(Keys.DATABASE_FETCH_SIZE, 1000));
+    }
+
+    /**
+     * Replaces list parameter with numbered parameters, e.g. ":ids" becomes ":ids0, :ids1, :ids2".
+     */
+    private static String expandListParameter(String query, String name, int size) {
+        if (query == null) {
+            return null;
+        }
+        StringBuilder parameters = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                parameters.append(", ");
+            }
+            parameters.append(':').append(name).append(i);
+        }
+        return query.replace(":" + name, parameters.toString());
+    }
+
+    private static QueryBuilder setListParameter(
+            QueryBuilder builder, String name, Collection<Long> values) throws SQLException {
+        int index = 0;
+        for (long value : values) {
+            builder.setLong(name + index++, value);
+        }
+        return builder;
+    }
+
+    /**
+     * Returns positions of several devices ordered by device and fix time. Returned iterator has to be closed.
+     */
+    public QueryIterator<Position> getPositionsIterator(
+            Collection<Long> deviceIds, Date from, Date to) throws SQLException {
+        String query = expandListParameter(
+                getQuery("database.selectDevicesPositions"), "deviceIds", deviceIds.size());
+        return setListParameter(QueryBuilder.create(dataSource, query), "deviceIds", deviceIds)
+                .setDate("from", from)
+                .setDate("to", to)
+                .executeQueryIterator(Position.class, config.getInteger(Keys.DATABASE_FETCH_SIZE, 1000));
+    }
+
+    public Collection<Position> getPositionsById(Collection<Long> positionIds) throws SQLException {
+        String query = expandListParameter(getQuery("database.selectPositionsById"), "ids", positionIds.size());
+        return setListParameter(QueryBuilder.create(dataSource, query), "ids", positionIds)
+                .executeQuery(Position.class);
+    }
+
+    /**
+     * Returns rollups ordered by device and day. Trip and stop segments are loaded only if requested.
+     */
+    public Collection<Rollup> getRollups(
+            Collection<Long> deviceIds, Date from, Date to, boolean segments) throws SQLException {
+        String query = expandListParameter(
+                getQuery(segments ? "database.selectRollupSegments" : "database.selectRollups"),
+                "deviceIds", deviceIds.size());
+        return setListParameter(QueryBuilder.create(dataSource, query), "deviceIds", deviceIds)
+                .setDate("from", from)
+                .setDate("to", to)
+                .executeQuery(Rollup.class);
+    }
+
+    public Set<Long> getRollupDevices(Date dayStart) throws SQLException {
+        Set<Long> result = new HashSet<>();
+        for (Rollup rollup : getRollupCounts(dayStart)) {
+            result.add(rollup.getDeviceId());
+        }
+        return result;
+    }
+
+    /**
+     * Returns device ids and position counts of the rollups for the given day.
+     */
+    public Collection<Rollup> getRollupCounts(Date dayStart) throws SQLException {
+        return QueryBuilder.create(dataSource, getQuery("database.selectRollupDevices"))
+                .setDate("dayStart", dayStart)
+                .executeQuery(Rollup.class);
+    }
+
+    /**
+     * Returns device ids and position counts from stored positions, in the same form as {@link #getRollupCounts}.
+     */
+    public Collection<Rollup> getPositionCounts(Date from, Date to) throws SQLException {
+        return QueryBuilder.create(dataSource, getQuery("database.selectPositionCounts"))
+                .setDate("from", from)
+                .setDate("to", to)
+                .executeQuery(Rollup.class);
+    }
+
     public void updateLatestPosition(Position position) throws SQLException {
         QueryBuilder.create(dataSource, getQuery("database.updateLatestPosition"))
                 .setDate("now", new Date())
@@ -354,6 +496,17 @@ public class DataManager {
                 .executeUpdate();
     }
 
+    public void updateLatestPositions(Collection<Position> positions) throws SQLException {
+        if (!positions.isEmpty()) {
+            Date now = new Date();
+            QueryBuilder queryBuilder = QueryBuilder.create(dataSource, getQuery("database.updateLatestPosition"));
+            for (Position position : positions) {
+                queryBuilder.setDate("now", now).setObject(position).addBatch();
+            }
+            queryBuilder.executeBatch();
+        }
+    }
+
     public Collection<Position> getLatestPositions() throws SQLException {
         return QueryBuilder.create(dataSource, getQuery("database.selectLatestPositions"))
                 .executeQuery(Position.class);
@@ -370,6 +523,11 @@ public class DataManager {
             QueryBuilder.create(dataSource, getQuery("database.deleteEvents"))
                     .setDate("serverTime", timeLimit)
                     .executeUpdate();
+            if (config.getBoolean(Keys.REPORT_ROLLUP_ENABLE)) {
+                QueryBuilder.create(dataSource, getQuery("database.deleteRollups"))
+                        .setDate("dayStart", timeLimit)
+                        .executeUpdate();
+            }
         }
     }
 
@@ -453,9 +611,30 @@ public class DataManager {
     }
 
     public void addObject(BaseModel entity) throws SQLException {
+        long startTime = System.nanoTime();
         entity.setId(QueryBuilder.create(dataSource, getQuery(ACTION_INSERT, entity.getClass()), true)
                 .setObject(entity)
                 .executeUpdate());
+        observeWrite(entity.getClass(), startTime);
+    }
+
+    public void addObjects(Collection<? extends BaseModel> entities) throws SQLException {
+        if (!entities.isEmpty()) {
+            long startTime = System.nanoTime();
+            Class<?> clazz = entities.iterator().next().getClass();
+            QueryBuilder queryBuilder = QueryBuilder.create(dataSource, getQuery(ACTION_INSERT, clazz), true);
+            for (BaseModel entity : entities) {
+                queryBuilder.setObject(entity).addBatch();
+            }
+            long[] ids = queryBuilder.executeBatch();
+            int index = 0;
+            for (BaseModel entity : entities) {
+                if (index < ids.length) {
+                    entity.setId(ids[index++]);
+                }
+            }
+            observeWrite(clazz, startTime);
+        }
     }
 
     public void updateObject(BaseModel entity) throws SQLException {
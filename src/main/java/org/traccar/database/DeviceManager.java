@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 - 2019 Anton Tananaev (anton@traccar.org)
+ * Copyright 2016 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -28,6 +28,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.config.Config;
+import org.traccar.config.Keys;
 import org.traccar.Context;
 import org.traccar.model.Command;
 import org.traccar.model.Device;
@@ -43,13 +44,22 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
 
     public static final long DEFAULT_REFRESH_DELAY = 300;
 
+    private static final long DEFAULT_UNKNOWN_TIMEOUT = 60;
+    private static final int UNKNOWN_CACHE_LIMIT = 10000;
+
     private final Config config;
     private final long dataRefreshDelay;
+    private final long unknownTimeout;
+    private final boolean ignoreUnknown;
+    private final DeviceUpdateWriter deviceUpdateWriter;
     private boolean lookupGroupsAttribute;
 
     private Map<String, Device> devicesByUniqueId;
     private Map<String, Device> devicesByPhone;
     private AtomicLong devicesLastUpdate = new AtomicLong();
+    private final Object devicesUpdateLock = new Object();
+
+    private final Map<String, Long> unknownDevices = new ConcurrentHashMap<>();
 
     private final Map<Long, Position> positions = new ConcurrentHashMap<>();
 
@@ -65,7 +75,19 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
             devicesByUniqueId = new ConcurrentHashMap<>();
         }
         dataRefreshDelay = config.getLong("database.refreshDelay", DEFAULT_REFRESH_DELAY) * 1000;
+        unknownTimeout = config.getLong(Keys.DATABASE_UNKNOWN_TIMEOUT, DEFAULT_UNKNOWN_TIMEOUT) * 1000;
+        ignoreUnknown = config.getBoolean("database.ignoreUnknown");
         lookupGroupsAttribute = config.getBoolean("deviceManager.lookupGroupsAttribute");
+        long deviceUpdatePeriod = config.getLong(Keys.DATABASE_DEVICE_UPDATE_PERIOD);
+        if (dataManager != null && deviceUpdatePeriod > 0) {
+            deviceUpdateWriter = new DeviceUpdateWriter(dataManager, deviceUpdatePeriod);
+            if (Context.getMetricsManager() != null) {
+                Context.getMetricsManager().gauge("traccar_database_queue_size", "Records waiting for batch insert",
+                        deviceUpdateWriter::getPendingCount, "writer", "devices");
+            }
+        } else {
+            deviceUpdateWriter = null;
+        }
         refreshLastPositions();
     }
 
@@ -87,7 +109,7 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
             LOGGER.info("Automatically registered device " + uniqueId);
 
             if (defaultGroupId != 0) {
-                Context.getPermissionsManager().refreshDeviceAndGroupPermissions();
+                Context.getPermissionsManager().updateDevicePermissions(device);
                 Context.getPermissionsManager().refreshAllExtendedPermissions();
             }
 
@@ -100,19 +122,59 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
 
     public void updateDeviceCache(boolean force) throws SQLException {
         long lastUpdate = devicesLastUpdate.get();
-        if ((force || System.currentTimeMillis() - lastUpdate > dataRefreshDelay)
-                && devicesLastUpdate.compareAndSet(lastUpdate, System.currentTimeMillis())) {
-            refreshItems();
+        if (force || System.currentTimeMillis() - lastUpdate > dataRefreshDelay) {
+            synchronized (devicesUpdateLock) {
+                // concurrent callers share the reload that was running while they waited
+                if (devicesLastUpdate.compareAndSet(lastUpdate, System.currentTimeMillis())) {
+                    refreshItems();
+                }
+            }
         }
     }
 
+    private boolean isUnknown(String uniqueId) {
+        Long expiration = unknownDevices.get(uniqueId);
+        if (expiration != null) {
+            if (System.currentTimeMillis() < expiration) {
+                return true;
+            }
+            unknownDevices.remove(uniqueId, expiration);
+        }
+        return false;
+    }
+
+    private void putUnknown(String uniqueId) {
+        long currentTime = System.currentTimeMillis();
+        if (unknownDevices.size() >= UNKNOWN_CACHE_LIMIT) {
+            unknownDevices.values().removeIf(expiration -> expiration <= currentTime);
+            if (unknownDevices.size() >= UNKNOWN_CACHE_LIMIT) {
+                unknownDevices.clear();
+            }
+        }
+        unknownDevices.put(uniqueId, currentTime + unknownTimeout);
+    }
+
     @Override
     public Device getByUniqueId(String uniqueId) throws SQLException {
-        boolean forceUpdate = !devicesByUniqueId.containsKey(uniqueId) && !config.getBoolean("database.ignoreUnknown");
-
-        updateDeviceCache(forceUpdate);
+        return getByUniqueId(uniqueId, true);
+    }
 
-        return devicesByUniqueId.get(uniqueId);
+    @Override
+    public Device getByUniqueId(String uniqueId, boolean refresh) throws SQLException {
+        Device device = devicesByUniqueId.get(uniqueId);
+        if (device == null && refresh && !ignoreUnknown && !isUnknown(uniqueId)) {
+            updateDeviceCache(true);
+            device = devicesByUniqueId.get(uniqueId);
+            if (device == null && unknownTimeout > 0) {
+                putUnknown(uniqueId);
+            }
+        } else {
+            updateDeviceCache(false);
+            if (device == null) {
+                device = devicesByUniqueId.get(uniqueId);
+            }
+        }
+        return device;
     }
 
     @Override
@@ -265,7 +327,11 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
     }
 
     public void updateDeviceStatus(Device device) throws SQLException {
-        getDataManager().updateDeviceStatus(device);
+        if (deviceUpdateWriter != null) {
+            deviceUpdateWriter.updateStatus(device);
+        } else {
+            getDataManager().updateDeviceStatus(device);
+        }
         Device cachedDevice = getById(device.getId());
         if (cachedDevice != null) {
             cachedDevice.setStatus(device.getStatus());
@@ -293,7 +359,11 @@ public class DeviceManager extends BaseObjectManager<Device> implements Identity
 
         if (isLatestPosition(position)) {
 
-            getDataManager().updateLatestPosition(position);
+            if (deviceUpdateWriter != null) {
+                deviceUpdateWriter.updateLatestPosition(position);
+            } else {
+                getDataManager().updateLatestPosition(position);
+            }
 
             Device device = getById(position.getDeviceId());
             if (device != null) {
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.database;
+
+import org.traccar.model.Position;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Splits positions ordered by device into separate sequences for each device. Iteration stops at the end of the
+ * current device, {@link #nextDevice} skips its remaining positions and moves to the next one.
+ */
+public final class DevicePositions implements Iterator<Position> {
+
+    private final Iterator<Position> iterator;
+    private Position next;
+    private long deviceId;
+
+    public DevicePositions(Iterator<Position> iterator) {
+        this.iterator = iterator;
+        next = iterator.hasNext() ? iterator.next() : null;
+    }
+
+    public boolean nextDevice() {
+        while (hasNext()) {
+            next();
+        }
+        if (next != null) {
+            deviceId = next.getDeviceId();
+            return true;
+        }
+        return false;
+    }
+
+    public long getDeviceId() {
+        return deviceId;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null && next.getDeviceId() == deviceId;
+    }
+
+    @Override
+    public Position next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Position position = next;
+        next = iterator.hasNext() ? iterator.next() : null;
+        return position;
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.database;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.traccar.model.Device;
+import org.traccar.model.Position;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalescing writer for device status and latest position updates. Only the newest value for each device is kept and
+ * pending devices are written in JDBC batches once per period, so frequent updates from the same device result in a
+ * single row update. Cached devices and positions are updated by the callers, so readers see new values immediately.
+ */
+public class DeviceUpdateWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeviceUpdateWriter.class);
+
+    private static final long STOP_TIMEOUT = 30000;
+
+    interface BatchUpdate<T> {
+        void update(Collection<T> items) throws SQLException;
+    }
+
+    private final BatchUpdate<Device> statusUpdate;
+    private final BatchUpdate<Position> positionUpdate;
+    private final long period;
+    private final Map<Long, Device> statuses = new ConcurrentHashMap<>();
+    private final Map<Long, Position> positions = new ConcurrentHashMap<>();
+    private final CountDownLatch stopLatch = new CountDownLatch(1);
+    private final Thread thread;
+
+    public DeviceUpdateWriter(DataManager dataManager, long period) {
+        this(dataManager::updateDeviceStatuses, dataManager::updateLatestPositions, period);
+    }
+
+    DeviceUpdateWriter(BatchUpdate<Device> statusUpdate, BatchUpdate<Position> positionUpdate, long period) {
+        this.statusUpdate = statusUpdate;
+        this.positionUpdate = positionUpdate;
+        this.period = period;
+        thread = new Thread(this::run, "device-update-writer");
+        thread.setDaemon(true);
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stop));
+    }
+
+    public int getPendingCount() {
+        return statuses.size() + positions.size();
+    }
+
+    public void updateStatus(Device device) {
+        statuses.put(device.getId(), device);
+    }
+
+    public void updateLatestPosition(Position position) {
+        positions.merge(position.getDeviceId(), position, DeviceUpdateWriter::newerPosition);
+    }
+
+    private static Position newerPosition(Position oldPosition, Position newPosition) {
+        return newPosition.getFixTime().before(oldPosition.getFixTime()) ? oldPosition : newPosition;
+    }
+
+    public void stop() {
+        stopLatch.countDown();
+        try {
+            thread.join(STOP_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        boolean running = true;
+        while (running) {
+            try {
+                running = !stopLatch.await(period, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                LOGGER.warn("Device update writer interrupted", e);
+            }
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                LOGGER.warn("Device update writer error", e);
+            }
+        }
+    }
+
+    public void flush() {
+
+        // entries are removed before values are read, so concurrent updates are kept for the next flush
+        List<Device> devices = new ArrayList<>(statuses.size());
+        for (Long deviceId : statuses.keySet()) {
+            Device device = statuses.remove(deviceId);
+            if (device != null) {
+                devices.add(device);
+            }
+        }
+        try {
+            statusUpdate.update(devices);
+        } catch (SQLException error) {
+            LOGGER.warn("Update device status error", error);
+            // failed entries are retried with the next flush unless a newer update has arrived meanwhile
+            for (Device device : devices) {
+                statuses.putIfAbsent(device.getId(), device);
+            }
+        }
+
+        List<Position> latestPositions = new ArrayList<>(positions.size());
+        for (Long deviceId : positions.keySet()) {
+            Position position = positions.remove(deviceId);
+            if (position != null) {
+                latestPositions.add(position);
+            }
+        }
+        try {
+            positionUpdate.update(latestPositions);
+        } catch (SQLException error) {
+            LOGGER.warn("Update latest position error", error);
+            for (Position position : latestPositions) {
+                positions.merge(position.getDeviceId(), position,
+                        (pendingPosition, failedPosition) -> newerPosition(failedPosition, pendingPosition));
+            }
+        }
+
+    }
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 - 2017 Anton Tananaev (anton@traccar.org)
+ * Copyright 2016 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,18 +17,62 @@ package org.traccar.database;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import org.traccar.Context;
+import org.traccar.geofence.GeofenceIndex;
 import org.traccar.model.Device;
 import org.traccar.model.Geofence;
 import org.traccar.model.Position;
 
 public class GeofenceManager extends ExtendedObjectManager<Geofence> {
 
+    private volatile GeofenceIndex geofenceIndex;
+
     public GeofenceManager(DataManager dataManager) {
         super(dataManager, Geofence.class);
     }
 
+    private GeofenceIndex getGeofenceIndex() {
+        // items are loaded from the base class constructor, before field initializers run
+        GeofenceIndex index = geofenceIndex;
+        if (index == null) {
+            synchronized (this) {
+                if (geofenceIndex == null) {
+                    geofenceIndex = new GeofenceIndex();
+                }
+                index = geofenceIndex;
+            }
+        }
+        return index;
+    }
+
+    private void updateIndex(Geofence geofence) {
+        if (geofence.getGeometry() != null) {
+            getGeofenceIndex().put(geofence.getId(), geofence.getGeometry());
+        } else {
+            getGeofenceIndex().remove(geofence.getId());
+        }
+    }
+
+    @Override
+    protected void addNewItem(Geofence geofence) {
+        super.addNewItem(geofence);
+        updateIndex(geofence);
+    }
+
+    @Override
+    protected void updateCachedItem(Geofence geofence) {
+        super.updateCachedItem(geofence);
+        updateIndex(geofence);
+    }
+
+    @Override
+    protected void removeCachedItem(long geofenceId) {
+        super.removeCachedItem(geofenceId);
+        getGeofenceIndex().remove(geofenceId);
+    }
+
     @Override
     public final void refreshExtendedPermissions() {
         super.refreshExtendedPermissions();
@@ -37,11 +81,16 @@ public class GeofenceManager extends ExtendedObjectManager<Geofence> {
 
     public List<Long> getCurrentDeviceGeofences(Position position) {
         List<Long> result = new ArrayList<>();
-        for (long geofenceId : getAllDeviceItems(position.getDeviceId())) {
-            Geofence geofence = getById(geofenceId);
-            if (geofence != null && geofence.getGeometry()
-                    .containsPoint(position.getLatitude(), position.getLongitude())) {
-                result.add(geofenceId);
+        Set<Long> deviceGeofenceIds = getAllDeviceItems(position.getDeviceId());
+        Set<Long> candidateIds = getGeofenceIndex().getCandidates(position.getLatitude(), position.getLongitude());
+        boolean fewerCandidates = candidateIds.size() < deviceGeofenceIds.size();
+        for (long geofenceId : fewerCandidates ? candidateIds : deviceGeofenceIds) {
+            if ((fewerCandidates ? deviceGeofenceIds : candidateIds).contains(geofenceId)) {
+                Geofence geofence = getById(geofenceId);
+                if (geofence != null && geofence.getGeometry()
+                        .containsPoint(position.getLatitude(), position.getLongitude())) {
+                    result.add(geofenceId);
+                }
             }
         }
         return result;
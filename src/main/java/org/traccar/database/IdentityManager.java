@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 - 2019 Anton Tananaev (anton@traccar.org)
+ * Copyright 2015 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -26,6 +26,8 @@ public interface IdentityManager {
 
     Device getByUniqueId(String uniqueId) throws Exception;
 
+    Device getByUniqueId(String uniqueId, boolean refresh) throws Exception;
+
     String getDevicePassword(long id, String protocol, String defaultPassword);
 
     Position getLastPosition(long deviceId);
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.database;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Registry of operational metrics exported in Prometheus text format. Metrics are identified by name and label
+ * pairs. Lookups are relatively expensive, so callers should keep references to counters and histograms instead of
+ * looking them up for every update.
+ */
+public class MetricsManager {
+
+    private static final double[] LATENCY_BUCKETS = {
+            0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    public static final class Counter {
+
+        private final LongAdder value = new LongAdder();
+
+        private Counter() {
+        }
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long delta) {
+            value.add(delta);
+        }
+
+    }
+
+    public static final class Histogram {
+
+        private final LongAdder[] buckets = new LongAdder[LATENCY_BUCKETS.length];
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+
+        private Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void observe(long nanos) {
+            double seconds = nanos / NANOS_PER_SECOND;
+            for (int i = 0; i < buckets.length; i++) {
+                if (seconds <= LATENCY_BUCKETS[i]) {
+                    buckets[i].increment();
+                    break;
+                }
+            }
+            count.increment();
+            sum.add(seconds);
+        }
+
+    }
+
+    private static final class Gauge {
+
+        private final Supplier<? extends Number> supplier;
+
+        private Gauge(Supplier<? extends Number> supplier) {
+            this.supplier = supplier;
+        }
+
+    }
+
+    private static final class Family {
+
+        private final String type;
+        private final String help;
+        private final Map<String, Object> children = new ConcurrentSkipListMap<>();
+
+        private Family(String type, String help) {
+            this.type = type;
+            this.help = help;
+        }
+
+    }
+
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    private static String formatLabels(String... labels) {
+        if (labels.length == 0) {
+            return "";
+        }
+        StringBuilder result = new StringBuilder("{");
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            if (i > 0) {
+                result.append(',');
+            }
+            result.append(labels[i]).append("=\"");
+            String value = labels[i + 1] != null ? labels[i + 1] : "";
+            result.append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"));
+            result.append('"');
+        }
+        return result.append('}').toString();
+    }
+
+    private Map<String, Object> getChildren(String name, String type, String help) {
+        Family family = families.computeIfAbsent(name, key -> new Family(type, help));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as " + family.type);
+        }
+        return family.children;
+    }
+
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) getChildren(name, "counter", help)
+                .computeIfAbsent(formatLabels(labels), key -> new Counter());
+    }
+
+    public Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) getChildren(name, "histogram", help)
+                .computeIfAbsent(formatLabels(labels), key -> new Histogram());
+    }
+
+    /**
+     * Registers a value that is read when metrics are exported. Registering the same name and labels again replaces
+     * the previous supplier.
+     */
+    public void gauge(String name, String help, Supplier<? extends Number> supplier, String... labels) {
+        getChildren(name, "gauge", help).put(formatLabels(labels), new Gauge(supplier));
+    }
+
+    private static String appendLabel(String labels, String name, String value) {
+        String label = name + "=\"" + value + "\"";
+        if (labels.isEmpty()) {
+            return "{" + label + "}";
+        }
+        return labels.substring(0, labels.length() - 1) + "," + label + "}";
+    }
+
+    private static void writeValue(Writer writer, String name, String labels, double value) throws IOException {
+        writer.write(name);
+        writer.write(labels);
+        writer.write(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            writer.write(Long.toString((long) value));
+        } else {
+            writer.write(Double.toString(value));
+        }
+        writer.write('\n');
+    }
+
+    public void write(Writer writer) throws IOException {
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            writer.write("# HELP " + name + " " + family.help + "\n");
+            writer.write("# TYPE " + name + " " + family.type + "\n");
+            for (Map.Entry<String, Object> child : family.children.entrySet()) {
+                String labels = child.getKey();
+                Object metric = child.getValue();
+                if (metric instanceof Counter) {
+                    writeValue(writer, name, labels, ((Counter) metric).value.sum());
+                } else if (metric instanceof Histogram) {
+                    Histogram histogram = (Histogram) metric;
+                    long cumulative = 0;
+                    for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+                        cumulative += histogram.buckets[i].sum();
+                        writeValue(writer, name + "_bucket",
+                                appendLabel(labels, "le", Double.toString(LATENCY_BUCKETS[i])), cumulative);
+                    }
+                    long count = histogram.count.sum();
+                    writeValue(writer, name + "_bucket", appendLabel(labels, "le", "+Inf"), count);
+                    writeValue(writer, name + "_sum", labels, histogram.sum.sum());
+                    writeValue(writer, name + "_count", labels, count);
+                } else if (metric instanceof Gauge) {
+                    Number value = ((Gauge) metric).supplier.get();
+                    if (value != null) {
+                        writeValue(writer, name, labels, value.doubleValue());
+                    }
+                }
+            }
+        }
+    }
+
+}
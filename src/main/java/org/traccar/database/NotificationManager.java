@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 - 2018 Anton Tananaev (anton@traccar.org)
+ * Copyright 2016 - 2020 Anton Tananaev (anton@traccar.org)
  * Copyright 2016 - 2018 Andrey Kunitsyn (andrey@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -19,16 +19,23 @@ package org.traccar.database;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.sql.SQLException;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.Context;
+import org.traccar.config.Keys;
+import org.traccar.geocoder.Geocoder;
 import org.traccar.model.Calendar;
+import org.traccar.model.Device;
 import org.traccar.model.Event;
 import org.traccar.model.Notification;
 import org.traccar.model.Position;
@@ -39,75 +46,228 @@ public class NotificationManager extends ExtendedObjectManager<Notification> {
     private static final Logger LOGGER = LoggerFactory.getLogger(NotificationManager.class);
 
     private boolean geocodeOnRequest;
+    private final BatchWriter<Event> eventWriter;
+
+    private volatile Map<Long, DeviceRecipients> recipients;
+
+    private static final class Recipient {
+
+        private final long userId;
+        private final List<Notification> notifications = new ArrayList<>();
+
+        private Recipient(long userId) {
+            this.userId = userId;
+        }
+
+    }
+
+    private static final class DeviceRecipients {
+
+        private final boolean disabled;
+        private final Map<String, List<Recipient>> types = new HashMap<>();
+
+        private DeviceRecipients(boolean disabled) {
+            this.disabled = disabled;
+        }
+
+    }
 
     public NotificationManager(DataManager dataManager) {
         super(dataManager, Notification.class);
         geocodeOnRequest = Context.getConfig().getBoolean("geocoder.onRequest");
+        invalidateRecipients();
+        int batchSize = Context.getConfig().getInteger(Keys.DATABASE_BATCH_SIZE);
+        if (batchSize > 0 && dataManager != null) {
+            eventWriter = new BatchWriter<>(
+                    dataManager, "events", batchSize,
+                    Context.getConfig().getLong(Keys.DATABASE_BATCH_PERIOD, 100),
+                    Context.getConfig().getInteger(Keys.DATABASE_BATCH_QUEUE_SIZE, 10000));
+            if (Context.getMetricsManager() != null) {
+                Context.getMetricsManager().gauge("traccar_database_queue_size", "Records waiting for batch insert",
+                        eventWriter::getQueueSize, "writer", "events");
+                Context.getMetricsManager().gauge(
+                        "traccar_database_dropped_records", "Records dropped because queue was full",
+                        eventWriter::getDroppedCount, "writer", "events");
+            }
+        } else {
+            eventWriter = null;
+        }
     }
 
-    private Set<Long> getEffectiveNotifications(long userId, long deviceId, Date time) {
-        Set<Long> result = new HashSet<>();
+    /**
+     * Drops precomputed notification recipients. Should be called when notifications or related permissions change.
+     */
+    public void invalidateRecipients() {
+        recipients = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    protected void addNewItem(Notification item) {
+        super.addNewItem(item);
+        invalidateRecipients();
+    }
+
+    @Override
+    protected void updateCachedItem(Notification item) {
+        super.updateCachedItem(item);
+        invalidateRecipients();
+    }
+
+    @Override
+    protected void removeCachedItem(long itemId) {
+        super.removeCachedItem(itemId);
+        invalidateRecipients();
+    }
+
+    @Override
+    public void refreshUserItems() {
+        super.refreshUserItems();
+        invalidateRecipients();
+    }
+
+    @Override
+    public void refreshExtendedPermissions() {
+        super.refreshExtendedPermissions();
+        invalidateRecipients();
+    }
+
+    private DeviceRecipients calculateRecipients(long deviceId, boolean disabled) {
+        DeviceRecipients result = new DeviceRecipients(disabled);
         Set<Long> deviceNotifications = getAllDeviceItems(deviceId);
-        for (long itemId : getUserItems(userId)) {
-            if (getById(itemId).getAlways() || deviceNotifications.contains(itemId)) {
-                long calendarId = getById(itemId).getCalendarId();
-                Calendar calendar = calendarId != 0 ? Context.getCalendarManager().getById(calendarId) : null;
-                if (calendar == null || calendar.checkMoment(time)) {
-                    result.add(itemId);
+        for (long userId : Context.getPermissionsManager().getDeviceUsers(deviceId)) {
+            Map<String, Recipient> userRecipients = new HashMap<>();
+            for (long itemId : getUserItems(userId)) {
+                Notification notification = getById(itemId);
+                if (notification != null && (notification.getAlways() || deviceNotifications.contains(itemId))) {
+                    Recipient recipient = userRecipients.get(notification.getType());
+                    if (recipient == null) {
+                        recipient = new Recipient(userId);
+                        userRecipients.put(notification.getType(), recipient);
+                        result.types.computeIfAbsent(
+                                notification.getType(), key -> new ArrayList<>()).add(recipient);
+                    }
+                    recipient.notifications.add(notification);
                 }
             }
         }
         return result;
     }
 
-    public void updateEvent(Event event, Position position) {
-        try {
-            getDataManager().addObject(event);
-        } catch (SQLException error) {
-            LOGGER.warn("Event save error", error);
+    private List<Recipient> getRecipients(long deviceId, String type) {
+        Device device = Context.getIdentityManager().getById(deviceId);
+        boolean disabled = device == null || device.getDisabled();
+        Map<Long, DeviceRecipients> current = recipients;
+        DeviceRecipients deviceRecipients = current.get(deviceId);
+        if (deviceRecipients == null || deviceRecipients.disabled != disabled) {
+            deviceRecipients = calculateRecipients(deviceId, disabled);
+            current.put(deviceId, deviceRecipients);
         }
+        return deviceRecipients.types.getOrDefault(type, Collections.emptyList());
+    }
 
-        if (position != null && geocodeOnRequest && Context.getGeocoder() != null && position.getAddress() == null) {
-            position.setAddress(Context.getGeocoder()
-                    .getAddress(position.getLatitude(), position.getLongitude(), null));
+    private static boolean checkNotification(Notification notification, Event event) {
+        long calendarId = notification.getCalendarId();
+        Calendar calendar = calendarId != 0 ? Context.getCalendarManager().getById(calendarId) : null;
+        if (calendar != null && !calendar.checkMoment(event.getServerTime())) {
+            return false;
+        }
+        if (event.getType().equals(Event.TYPE_ALARM)) {
+            String alarms = notification.getString("alarms");
+            return alarms != null && alarms.contains(event.getString(Position.KEY_ALARM));
         }
+        return true;
+    }
 
-        long deviceId = event.getDeviceId();
-        Set<Long> users = Context.getPermissionsManager().getDeviceUsers(deviceId);
-        Set<Long> usersToForward = null;
-        if (Context.getEventForwarder() != null) {
-            usersToForward = new HashSet<>();
+    private static boolean checkEventPermission(long userId, Event event) {
+        return (event.getGeofenceId() == 0
+                || Context.getGeofenceManager().checkItemPermission(userId, event.getGeofenceId()))
+                && (event.getMaintenanceId() == 0
+                || Context.getMaintenancesManager().checkItemPermission(userId, event.getMaintenanceId()));
+    }
+
+    /**
+     * Stores the event and sends notifications for it. With batching enabled the event is queued for the batch writer
+     * and notifications are sent from the writer callback, so the event id is known before delivery.
+     */
+    public void updateEvent(final Event event, final Position position) {
+        if (eventWriter != null) {
+            eventWriter.write(event, new BatchWriter.WriteCallback() {
+                @Override
+                public void onSuccess() {
+                    geocodeEvent(event, position);
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    LOGGER.warn("Event save error", e);
+                    geocodeEvent(event, position);
+                }
+            });
+        } else {
+            try {
+                getDataManager().addObject(event);
+            } catch (SQLException error) {
+                LOGGER.warn("Event save error", error);
+            }
+            geocodeEvent(event, position);
         }
-        for (long userId : users) {
-            if ((event.getGeofenceId() == 0
-                    || Context.getGeofenceManager().checkItemPermission(userId, event.getGeofenceId()))
-                    && (event.getMaintenanceId() == 0
-                    || Context.getMaintenancesManager().checkItemPermission(userId, event.getMaintenanceId()))) {
-                if (usersToForward != null) {
-                    usersToForward.add(userId);
+    }
+
+    private void geocodeEvent(final Event event, final Position position) {
+        if (position != null && geocodeOnRequest && Context.getGeocoder() != null && position.getAddress() == null) {
+            Context.getGeocoder().getAddress(position.getLatitude(), position.getLongitude(),
+                    new Geocoder.ReverseGeocoderCallback() {
+                @Override
+                public void onSuccess(String address) {
+                    // position is shared with other handlers, so the address is only set on a copy
+                    Position geocodedPosition = new Position(position);
+                    geocodedPosition.setAddress(address);
+                    notifyEvent(event, geocodedPosition);
                 }
-                final Set<String> notificators = new HashSet<>();
-                for (long notificationId : getEffectiveNotifications(userId, deviceId, event.getServerTime())) {
-                    Notification notification = getById(notificationId);
-                    if (getById(notificationId).getType().equals(event.getType())) {
-                        boolean filter = false;
-                        if (event.getType().equals(Event.TYPE_ALARM)) {
-                            String alarms = notification.getString("alarms");
-                            if (alarms == null || !alarms.contains(event.getString(Position.KEY_ALARM))) {
-                                filter = true;
-                            }
-                        }
-                        if (!filter) {
-                            notificators.addAll(notification.getNotificatorsTypes());
-                        }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    LOGGER.warn("Geocoding failed", e);
+                    notifyEvent(event, position);
+                }
+            });
+        } else {
+            notifyEvent(event, position);
+        }
+    }
+
+    private void notifyEvent(Event event, Position position) {
+        try {
+            sendEvent(event, position);
+        } catch (RuntimeException error) {
+            LOGGER.warn("Event notification error", error);
+        }
+    }
+
+    private void sendEvent(Event event, Position position) {
+        long deviceId = event.getDeviceId();
+        for (Recipient recipient : getRecipients(deviceId, event.getType())) {
+            if (checkEventPermission(recipient.userId, event)) {
+                Set<String> notificators = new HashSet<>();
+                for (Notification notification : recipient.notifications) {
+                    if (checkNotification(notification, event)) {
+                        notificators.addAll(notification.getNotificatorsTypes());
                     }
                 }
                 for (String notificator : notificators) {
-                    Context.getNotificatorManager().getNotificator(notificator).sendAsync(userId, event, position);
+                    Context.getNotificatorManager().getNotificator(notificator)
+                            .sendAsync(recipient.userId, event, position);
                 }
             }
         }
+
         if (Context.getEventForwarder() != null) {
+            Set<Long> usersToForward = new HashSet<>();
+            for (long userId : Context.getPermissionsManager().getDeviceUsers(deviceId)) {
+                if (checkEventPermission(userId, event)) {
+                    usersToForward.add(userId);
+                }
+            }
             Context.getEventForwarder().forwardEvent(event, position, usersToForward);
         }
     }
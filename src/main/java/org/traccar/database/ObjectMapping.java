@@ -0,0 +1,164 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.database;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Property accessors of a model class used by {@link QueryBuilder}. Accessors are generated once per class with
+ * {@link LambdaMetafactory}, so binding parameters and mapping rows does not go through reflection.
+ */
+final class ObjectMapping<T> {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final Map<Class<?>, ObjectMapping<?>> MAPPINGS = new ConcurrentHashMap<>();
+
+    static final class Getter {
+
+        private final String name;
+        private final Class<?> type;
+        private final Function<Object, Object> function;
+
+        private Getter(String name, Class<?> type, Function<Object, Object> function) {
+            this.name = name;
+            this.type = type;
+            this.function = function;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Class<?> getType() {
+            return type;
+        }
+
+        public Object get(Object object) {
+            return function.apply(object);
+        }
+
+    }
+
+    static final class Setter {
+
+        private final Class<?> type;
+        private final BiConsumer<Object, Object> consumer;
+
+        private Setter(Class<?> type, BiConsumer<Object, Object> consumer) {
+            this.type = type;
+            this.consumer = consumer;
+        }
+
+        public Class<?> getType() {
+            return type;
+        }
+
+        public void set(Object object, Object value) {
+            consumer.accept(object, value);
+        }
+
+    }
+
+    private final Supplier<T> constructor;
+    private final List<Getter> getters;
+    private final Map<String, Setter> setters = new HashMap<>();
+
+    @SuppressWarnings("unchecked")
+    private ObjectMapping(Class<T> clazz) {
+        try {
+            constructor = (Supplier<T>) createLambda(
+                    Supplier.class, "get", MethodType.methodType(Object.class),
+                    LOOKUP.findConstructor(clazz, MethodType.methodType(void.class)));
+            List<Getter> getterList = new ArrayList<>();
+            for (Method method : clazz.getMethods()) {
+                if (method.getDeclaringClass() == Object.class || method.isAnnotationPresent(QueryIgnore.class)) {
+                    continue;
+                }
+                if (method.getName().startsWith("get") && method.getParameterTypes().length == 0) {
+                    getterList.add(new Getter(
+                            method.getName().substring(3), method.getReturnType(),
+                            (Function<Object, Object>) createLambda(
+                                    Function.class, "apply", MethodType.methodType(Object.class, Object.class),
+                                    LOOKUP.unreflect(method))));
+                } else if (method.getName().startsWith("set") && method.getParameterTypes().length == 1) {
+                    setters.put(method.getName().substring(3).toLowerCase(), new Setter(
+                            method.getParameterTypes()[0],
+                            (BiConsumer<Object, Object>) createLambda(
+                                    BiConsumer.class, "accept",
+                                    MethodType.methodType(void.class, Object.class, Object.class),
+                                    LOOKUP.unreflect(method))));
+                }
+            }
+            getters = Collections.unmodifiableList(getterList);
+        } catch (ReflectiveOperationException error) {
+            throw new IllegalArgumentException(error);
+        }
+    }
+
+    private static Object createLambda(
+            Class<?> interfaceClass, String methodName, MethodType methodType, MethodHandle handle)
+            throws ReflectiveOperationException {
+        MethodType instantiatedType = handle.type().wrap();
+        if (methodType.returnType() == void.class) {
+            instantiatedType = instantiatedType.changeReturnType(void.class);
+        }
+        try {
+            CallSite callSite = LambdaMetafactory.metafactory(
+                    LOOKUP, methodName, MethodType.methodType(interfaceClass), methodType, handle, instantiatedType);
+            return callSite.getTarget().invoke();
+        } catch (ReflectiveOperationException | RuntimeException | Error error) {
+            throw error;
+        } catch (Throwable error) {
+            throw new IllegalStateException(error);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> ObjectMapping<T> of(Class<T> clazz) {
+        return (ObjectMapping<T>) MAPPINGS.computeIfAbsent(clazz, key -> new ObjectMapping<>(key));
+    }
+
+    public T newInstance() {
+        return constructor.get();
+    }
+
+    public List<Getter> getGetters() {
+        return getters;
+    }
+
+    /**
+     * Returns setter for a lower case property name or null if the class does not have it.
+     */
+    public Setter getSetter(String name) {
+        return setters.get(name);
+    }
+
+}
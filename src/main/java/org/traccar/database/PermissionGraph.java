@@ -0,0 +1,396 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.database;
+
+import org.traccar.helper.LongSet;
+import org.traccar.model.Device;
+import org.traccar.model.Group;
+import org.traccar.model.Permission;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * User access to groups and devices, including access inherited through nested groups. The graph keeps direct user
+ * links and the group hierarchy, so single changes update only affected users instead of rebuilding everything.
+ * Identifier sets are immutable, so a copy of the graph shares them with the original and costs only the map tables.
+ */
+public class PermissionGraph {
+
+    private final Map<Long, Long> groupParents = new HashMap<>();
+    private final Map<Long, LongSet> groupChildren = new HashMap<>();
+    private final Map<Long, Long> deviceGroups = new HashMap<>();
+    private final Map<Long, LongSet> groupMembers = new HashMap<>();
+
+    private final Map<Long, LongSet> userGroupLinks = new HashMap<>();
+    private final Map<Long, LongSet> userDeviceLinks = new HashMap<>();
+    private final Map<Long, LongSet> groupUsers = new HashMap<>();
+
+    private final Map<Long, LongSet> groupDevices = new HashMap<>();
+    private final Map<Long, LongSet> groupPermissions = new HashMap<>();
+    private final Map<Long, LongSet> devicePermissions = new HashMap<>();
+    private final Map<Long, LongSet> deviceUsers = new HashMap<>();
+
+    public PermissionGraph() {
+    }
+
+    public PermissionGraph(PermissionGraph other) {
+        groupParents.putAll(other.groupParents);
+        groupChildren.putAll(other.groupChildren);
+        deviceGroups.putAll(other.deviceGroups);
+        groupMembers.putAll(other.groupMembers);
+        userGroupLinks.putAll(other.userGroupLinks);
+        userDeviceLinks.putAll(other.userDeviceLinks);
+        groupUsers.putAll(other.groupUsers);
+        groupDevices.putAll(other.groupDevices);
+        groupPermissions.putAll(other.groupPermissions);
+        devicePermissions.putAll(other.devicePermissions);
+        deviceUsers.putAll(other.deviceUsers);
+    }
+
+    public PermissionGraph(
+            Collection<Group> groups, Collection<Device> devices,
+            Collection<Permission> groupLinks, Collection<Permission> deviceLinks) {
+
+        Map<Long, Set<Long>> children = new HashMap<>();
+        for (Group group : groups) {
+            groupParents.put(group.getId(), group.getGroupId());
+            if (group.getGroupId() != 0) {
+                collect(children, group.getGroupId(), group.getId());
+            }
+        }
+        putAll(groupChildren, children);
+
+        Map<Long, Set<Long>> members = new HashMap<>();
+        Map<Long, Set<Long>> subtreeDevices = new HashMap<>();
+        for (Device device : devices) {
+            deviceGroups.put(device.getId(), device.getGroupId());
+            if (device.getGroupId() != 0) {
+                collect(members, device.getGroupId(), device.getId());
+                for (long groupId : getGroupsWithAncestors(device.getGroupId())) {
+                    collect(subtreeDevices, groupId, device.getId());
+                }
+            }
+        }
+        putAll(groupMembers, members);
+        putAll(groupDevices, subtreeDevices);
+
+        Map<Long, Set<Long>> userGroups = new HashMap<>();
+        Map<Long, Set<Long>> users = new HashMap<>();
+        for (Permission permission : groupLinks) {
+            collect(userGroups, permission.getOwnerId(), permission.getPropertyId());
+            collect(users, permission.getPropertyId(), permission.getOwnerId());
+        }
+        putAll(userGroupLinks, userGroups);
+        putAll(groupUsers, users);
+
+        Map<Long, Set<Long>> userDevices = new HashMap<>();
+        for (Permission permission : deviceLinks) {
+            collect(userDevices, permission.getOwnerId(), permission.getPropertyId());
+        }
+        putAll(userDeviceLinks, userDevices);
+
+        Set<Long> userIds = new HashSet<>(userGroupLinks.keySet());
+        userIds.addAll(userDeviceLinks.keySet());
+        Map<Long, Set<Long>> usersByDevice = new HashMap<>();
+        for (long userId : userIds) {
+            updateUserPermissions(userId);
+            for (long deviceId : get(devicePermissions, userId)) {
+                collect(usersByDevice, deviceId, userId);
+            }
+        }
+        putAll(deviceUsers, usersByDevice);
+    }
+
+    private static void collect(Map<Long, Set<Long>> map, long key, long value) {
+        map.computeIfAbsent(key, k -> new HashSet<>()).add(value);
+    }
+
+    private static void putAll(Map<Long, LongSet> map, Map<Long, Set<Long>> values) {
+        for (Map.Entry<Long, Set<Long>> entry : values.entrySet()) {
+            map.put(entry.getKey(), LongSet.of(entry.getValue()));
+        }
+    }
+
+    private static void put(Map<Long, LongSet> map, long key, LongSet values) {
+        if (values.isEmpty()) {
+            map.remove(key);
+        } else {
+            map.put(key, values);
+        }
+    }
+
+    private static void add(Map<Long, LongSet> map, long key, long value) {
+        map.put(key, get(map, key).with(value));
+    }
+
+    private static void remove(Map<Long, LongSet> map, long key, long value) {
+        LongSet values = map.get(key);
+        if (values != null) {
+            put(map, key, values.without(value));
+        }
+    }
+
+    private static LongSet get(Map<Long, LongSet> map, long key) {
+        return map.getOrDefault(key, LongSet.EMPTY);
+    }
+
+    public Set<Long> getGroupPermissions(long userId) {
+        return get(groupPermissions, userId);
+    }
+
+    public Set<Long> getDevicePermissions(long userId) {
+        return get(devicePermissions, userId);
+    }
+
+    public Set<Long> getDeviceUsers(long deviceId) {
+        return get(deviceUsers, deviceId);
+    }
+
+    public Set<Long> getGroupDevices(long groupId) {
+        return get(groupDevices, groupId);
+    }
+
+    private Collection<Long> getGroupsWithAncestors(long groupId) {
+        Set<Long> result = new HashSet<>();
+        while (groupId != 0 && result.add(groupId)) {
+            groupId = groupParents.getOrDefault(groupId, 0L);
+        }
+        return result;
+    }
+
+    private Set<Long> collectGroups(long groupId) {
+        Set<Long> result = new HashSet<>();
+        Deque<Long> stack = new ArrayDeque<>();
+        stack.push(groupId);
+        while (!stack.isEmpty()) {
+            long current = stack.pop();
+            if (result.add(current)) {
+                stack.addAll(get(groupChildren, current));
+            }
+        }
+        return result;
+    }
+
+    private Set<Long> getGroupUsers(Collection<Long> groupIds) {
+        Set<Long> result = new HashSet<>();
+        for (long groupId : groupIds) {
+            result.addAll(get(groupUsers, groupId));
+        }
+        return result;
+    }
+
+    private boolean hasDevice(long userId, long deviceId) {
+        if (get(userDeviceLinks, userId).contains(deviceId)) {
+            return true;
+        }
+        for (long groupId : get(userGroupLinks, userId)) {
+            if (get(groupDevices, groupId).contains(deviceId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void updateUserPermissions(long userId) {
+        Set<Long> groups = new HashSet<>();
+        Set<Long> devices = new HashSet<>(get(userDeviceLinks, userId));
+        for (long groupId : get(userGroupLinks, userId)) {
+            groups.addAll(collectGroups(groupId));
+            devices.addAll(get(groupDevices, groupId));
+        }
+        put(groupPermissions, userId, LongSet.of(groups));
+        put(devicePermissions, userId, LongSet.of(devices));
+    }
+
+    private void updateUser(long userId) {
+        LongSet oldDevices = get(devicePermissions, userId);
+        updateUserPermissions(userId);
+        LongSet newDevices = get(devicePermissions, userId);
+        for (long deviceId : oldDevices.difference(newDevices)) {
+            remove(deviceUsers, deviceId, userId);
+        }
+        for (long deviceId : newDevices.difference(oldDevices)) {
+            add(deviceUsers, deviceId, userId);
+        }
+    }
+
+    public void linkGroup(long userId, long groupId, boolean link) {
+        if (link) {
+            add(userGroupLinks, userId, groupId);
+            add(groupUsers, groupId, userId);
+        } else {
+            remove(userGroupLinks, userId, groupId);
+            remove(groupUsers, groupId, userId);
+        }
+        updateUser(userId);
+    }
+
+    public void linkDevice(long userId, long deviceId, boolean link) {
+        if (link) {
+            add(userDeviceLinks, userId, deviceId);
+            add(devicePermissions, userId, deviceId);
+            add(deviceUsers, deviceId, userId);
+        } else {
+            remove(userDeviceLinks, userId, deviceId);
+            if (!hasDevice(userId, deviceId)) {
+                remove(devicePermissions, userId, deviceId);
+                remove(deviceUsers, deviceId, userId);
+            }
+        }
+    }
+
+    public void updateDevice(long deviceId, long groupId) {
+        Long oldGroupId = deviceGroups.put(deviceId, groupId);
+        if (oldGroupId != null && oldGroupId == groupId) {
+            return;
+        }
+        if (oldGroupId != null && oldGroupId != 0) {
+            remove(groupMembers, oldGroupId, deviceId);
+            Collection<Long> ancestors = getGroupsWithAncestors(oldGroupId);
+            for (long ancestorId : ancestors) {
+                remove(groupDevices, ancestorId, deviceId);
+            }
+            for (long userId : getGroupUsers(ancestors)) {
+                if (!hasDevice(userId, deviceId)) {
+                    remove(devicePermissions, userId, deviceId);
+                    remove(deviceUsers, deviceId, userId);
+                }
+            }
+        }
+        if (groupId != 0) {
+            add(groupMembers, groupId, deviceId);
+            Collection<Long> ancestors = getGroupsWithAncestors(groupId);
+            for (long ancestorId : ancestors) {
+                add(groupDevices, ancestorId, deviceId);
+            }
+            for (long userId : getGroupUsers(ancestors)) {
+                add(devicePermissions, userId, deviceId);
+                add(deviceUsers, deviceId, userId);
+            }
+        }
+    }
+
+    public void removeDevice(long deviceId) {
+        updateDevice(deviceId, 0);
+        deviceGroups.remove(deviceId);
+        LongSet userIds = deviceUsers.remove(deviceId);
+        if (userIds != null) {
+            for (long userId : userIds) {
+                remove(userDeviceLinks, userId, deviceId);
+                remove(devicePermissions, userId, deviceId);
+            }
+        }
+    }
+
+    public void updateGroup(long groupId, long parentId) {
+        Long oldParentId = groupParents.put(groupId, parentId);
+        if (oldParentId != null && oldParentId == parentId) {
+            return;
+        }
+        LongSet devices = get(groupDevices, groupId);
+        Set<Long> userIds = new HashSet<>();
+        if (oldParentId != null && oldParentId != 0) {
+            remove(groupChildren, oldParentId, groupId);
+            Collection<Long> ancestors = getGroupsWithAncestors(oldParentId);
+            for (long ancestorId : ancestors) {
+                put(groupDevices, ancestorId, get(groupDevices, ancestorId).difference(devices));
+            }
+            userIds.addAll(getGroupUsers(ancestors));
+        }
+        if (parentId != 0) {
+            add(groupChildren, parentId, groupId);
+            Collection<Long> ancestors = getGroupsWithAncestors(parentId);
+            if (!devices.isEmpty()) {
+                for (long ancestorId : ancestors) {
+                    put(groupDevices, ancestorId, get(groupDevices, ancestorId).union(devices));
+                }
+            }
+            userIds.addAll(getGroupUsers(ancestors));
+        }
+        for (long userId : userIds) {
+            updateUser(userId);
+        }
+    }
+
+    public void removeGroup(long groupId) {
+        updateGroup(groupId, 0);
+        groupParents.remove(groupId);
+        groupDevices.remove(groupId);
+        LongSet children = groupChildren.remove(groupId);
+        if (children != null) {
+            for (long childId : children) {
+                groupParents.put(childId, 0L);
+            }
+        }
+        LongSet members = groupMembers.remove(groupId);
+        if (members != null) {
+            for (long deviceId : members) {
+                deviceGroups.put(deviceId, 0L);
+            }
+        }
+        LongSet userIds = groupUsers.remove(groupId);
+        if (userIds != null) {
+            for (long userId : userIds) {
+                remove(userGroupLinks, userId, groupId);
+                updateUser(userId);
+            }
+        }
+    }
+
+    public void removeUser(long userId) {
+        LongSet devices = devicePermissions.remove(userId);
+        if (devices != null) {
+            for (long deviceId : devices) {
+                remove(deviceUsers, deviceId, userId);
+            }
+        }
+        groupPermissions.remove(userId);
+        userDeviceLinks.remove(userId);
+        LongSet groups = userGroupLinks.remove(userId);
+        if (groups != null) {
+            for (long groupId : groups) {
+                remove(groupUsers, groupId, userId);
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PermissionGraph)) {
+            return false;
+        }
+        PermissionGraph other = (PermissionGraph) o;
+        return groupPermissions.equals(other.groupPermissions)
+                && devicePermissions.equals(other.devicePermissions)
+                && deviceUsers.equals(other.deviceUsers)
+                && groupDevices.equals(other.groupDevices);
+    }
+
+    @Override
+    public int hashCode() {
+        return devicePermissions.hashCode();
+    }
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 - 2018 Anton Tananaev (anton@traccar.org)
+ * Copyright 2015 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -34,10 +34,9 @@ import org.traccar.model.Server;
 import org.traccar.model.User;
 
 import java.sql.SQLException;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 public class PermissionsManager {
 
@@ -48,10 +47,11 @@ public class PermissionsManager {
 
     private volatile Server server;
 
-    private final Map<Long, Set<Long>> groupPermissions = new HashMap<>();
-    private final Map<Long, Set<Long>> devicePermissions = new HashMap<>();
-    private final Map<Long, Set<Long>> deviceUsers = new HashMap<>();
-    private final Map<Long, Set<Long>> groupDevices = new HashMap<>();
+    /**
+     * Readers use the current graph without locking. Changes are applied to a copy under the manager lock and the copy
+     * is published as a whole, so readers never see a partially updated graph.
+     */
+    private volatile PermissionGraph permissionGraph = new PermissionGraph();
 
     public PermissionsManager(DataManager dataManager, UsersManager usersManager) {
         this.dataManager = dataManager;
@@ -65,33 +65,20 @@ public class PermissionsManager {
     }
 
     public Set<Long> getGroupPermissions(long userId) {
-        if (!groupPermissions.containsKey(userId)) {
-            groupPermissions.put(userId, new HashSet<>());
-        }
-        return groupPermissions.get(userId);
+        return permissionGraph.getGroupPermissions(userId);
     }
 
     public Set<Long> getDevicePermissions(long userId) {
-        if (!devicePermissions.containsKey(userId)) {
-            devicePermissions.put(userId, new HashSet<>());
-        }
-        return devicePermissions.get(userId);
-    }
-
-    private Set<Long> getAllDeviceUsers(long deviceId) {
-        if (!deviceUsers.containsKey(deviceId)) {
-            deviceUsers.put(deviceId, new HashSet<>());
-        }
-        return deviceUsers.get(deviceId);
+        return permissionGraph.getDevicePermissions(userId);
     }
 
     public Set<Long> getDeviceUsers(long deviceId) {
         Device device = Context.getIdentityManager().getById(deviceId);
         if (device != null && !device.getDisabled()) {
-            return getAllDeviceUsers(deviceId);
+            return permissionGraph.getDeviceUsers(deviceId);
         } else {
             Set<Long> result = new HashSet<>();
-            for (long userId : getAllDeviceUsers(deviceId)) {
+            for (long userId : permissionGraph.getDeviceUsers(deviceId)) {
                 if (getUserAdmin(userId)) {
                     result.add(userId);
                 }
@@ -101,10 +88,7 @@ public class PermissionsManager {
     }
 
     public Set<Long> getGroupDevices(long groupId) {
-        if (!groupDevices.containsKey(groupId)) {
-            groupDevices.put(groupId, new HashSet<>());
-        }
-        return groupDevices.get(groupId);
+        return permissionGraph.getGroupDevices(groupId);
     }
 
     public void refreshServer() {
@@ -115,45 +99,80 @@ public class PermissionsManager {
         }
     }
 
-    public final void refreshDeviceAndGroupPermissions() {
-        groupPermissions.clear();
-        devicePermissions.clear();
-        try {
-            GroupTree groupTree = new GroupTree(Context.getGroupsManager().getItems(
-                    Context.getGroupsManager().getAllItems()),
-                    Context.getDeviceManager().getAllDevices());
-            for (Permission groupPermission : dataManager.getPermissions(User.class, Group.class)) {
-                Set<Long> userGroupPermissions = getGroupPermissions(groupPermission.getOwnerId());
-                Set<Long> userDevicePermissions = getDevicePermissions(groupPermission.getOwnerId());
-                userGroupPermissions.add(groupPermission.getPropertyId());
-                for (Group group : groupTree.getGroups(groupPermission.getPropertyId())) {
-                    userGroupPermissions.add(group.getId());
-                }
-                for (Device device : groupTree.getDevices(groupPermission.getPropertyId())) {
-                    userDevicePermissions.add(device.getId());
-                }
-            }
-
-            for (Permission devicePermission : dataManager.getPermissions(User.class, Device.class)) {
-                getDevicePermissions(devicePermission.getOwnerId()).add(devicePermission.getPropertyId());
-            }
+    private PermissionGraph loadPermissionGraph() throws SQLException, ClassNotFoundException {
+        return new PermissionGraph(
+                Context.getGroupsManager().getItems(Context.getGroupsManager().getAllItems()),
+                Context.getDeviceManager().getAllDevices(),
+                dataManager.getPermissions(User.class, Group.class),
+                dataManager.getPermissions(User.class, Device.class));
+    }
 
-            groupDevices.clear();
-            for (long groupId : Context.getGroupsManager().getAllItems()) {
-                for (Device device : groupTree.getDevices(groupId)) {
-                    getGroupDevices(groupId).add(device.getId());
-                }
-            }
+    private void invalidateRecipients() {
+        if (Context.getNotificationManager() != null) {
+            Context.getNotificationManager().invalidateRecipients();
+        }
+    }
 
+    public final synchronized void refreshDeviceAndGroupPermissions() {
+        try {
+            permissionGraph = loadPermissionGraph();
         } catch (SQLException | ClassNotFoundException error) {
             LOGGER.warn("Refresh device permissions error", error);
         }
+        invalidateRecipients();
+    }
 
-        deviceUsers.clear();
-        for (Map.Entry<Long, Set<Long>> entry : devicePermissions.entrySet()) {
-            for (long deviceId : entry.getValue()) {
-                getAllDeviceUsers(deviceId).add(entry.getKey());
+    /**
+     * Rebuilds device and group permissions from the database and reports if incremental updates missed any changes,
+     * for example when devices or links were modified directly in the database.
+     */
+    public synchronized void checkDeviceAndGroupPermissions() {
+        try {
+            PermissionGraph loadedGraph = loadPermissionGraph();
+            if (!loadedGraph.equals(permissionGraph)) {
+                LOGGER.warn("Device and group permissions were out of date");
+                permissionGraph = loadedGraph;
+                invalidateRecipients();
             }
+        } catch (SQLException | ClassNotFoundException error) {
+            LOGGER.warn("Check device permissions error", error);
+        }
+    }
+
+    public void updateDevicePermissions(Device device) {
+        updatePermissionGraph(graph -> graph.updateDevice(device.getId(), device.getGroupId()));
+    }
+
+    public void removeDevicePermissions(long deviceId) {
+        updatePermissionGraph(graph -> graph.removeDevice(deviceId));
+    }
+
+    public void updateGroupPermissions(Group group) {
+        updatePermissionGraph(graph -> graph.updateGroup(group.getId(), group.getGroupId()));
+    }
+
+    public void removeGroupPermissions(long groupId) {
+        updatePermissionGraph(graph -> graph.removeGroup(groupId));
+    }
+
+    public void removeUserPermissions(long userId) {
+        updatePermissionGraph(graph -> graph.removeUser(userId));
+    }
+
+    private synchronized void updatePermissionGraph(Consumer<PermissionGraph> update) {
+        PermissionGraph graph = new PermissionGraph(permissionGraph);
+        update.accept(graph);
+        permissionGraph = graph;
+        invalidateRecipients();
+    }
+
+    private void updateLinkPermissions(Permission permission, boolean link) {
+        if (permission.getPropertyClass().equals(Device.class)) {
+            updatePermissionGraph(
+                    graph -> graph.linkDevice(permission.getOwnerId(), permission.getPropertyId(), link));
+        } else {
+            updatePermissionGraph(
+                    graph -> graph.linkGroup(permission.getOwnerId(), permission.getPropertyId(), link));
         }
     }
 
@@ -384,12 +403,11 @@ public class PermissionsManager {
         Context.getMaintenancesManager().refreshExtendedPermissions();
     }
 
-    public void refreshPermissions(Permission permission) {
+    public void refreshPermissions(Permission permission, boolean link) {
         if (permission.getOwnerClass().equals(User.class)) {
             if (permission.getPropertyClass().equals(Device.class)
                     || permission.getPropertyClass().equals(Group.class)) {
-                refreshDeviceAndGroupPermissions();
-                refreshAllExtendedPermissions();
+                updateLinkPermissions(permission, link);
             } else if (permission.getPropertyClass().equals(ManagedUser.class)) {
                 usersManager.refreshUserItems();
             } else if (permission.getPropertyClass().equals(Geofence.class) && Context.getGeofenceManager() != null) {
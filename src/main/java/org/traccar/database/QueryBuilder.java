@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 Anton Tananaev (anton@traccar.org)
+ * Copyright 2015 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -24,23 +24,25 @@ import org.traccar.model.Permission;
 
 import javax.sql.DataSource;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public final class QueryBuilder {
 
@@ -116,7 +118,7 @@ public final class QueryBuilder {
                     // Add to list
                     List<Integer> indexList = paramMap.get(name);
                     if (indexList == null) {
-                        indexList = new LinkedList<>();
+                        indexList = new ArrayList<>(1);
                         paramMap.put(name, indexList);
                     }
                     indexList.add(index);
@@ -144,7 +146,7 @@ public final class QueryBuilder {
         name = name.toLowerCase();
         List<Integer> result = indexMap.get(name);
         if (result == null) {
-            result = new LinkedList<>();
+            result = Collections.emptyList();
         }
         return result;
     }
@@ -262,38 +264,36 @@ public final class QueryBuilder {
 
     public QueryBuilder setObject(Object object) throws SQLException {
 
-        Method[] methods = object.getClass().getMethods();
-
-        for (Method method : methods) {
-            if (method.getName().startsWith("get") && method.getParameterTypes().length == 0
-                    && !method.isAnnotationPresent(QueryIgnore.class)) {
-                String name = method.getName().substring(3);
-                try {
-                    if (method.getReturnType().equals(boolean.class)) {
-                        setBoolean(name, (Boolean) method.invoke(object));
-                    } else if (method.getReturnType().equals(int.class)) {
-                        setInteger(name, (Integer) method.invoke(object));
-                    } else if (method.getReturnType().equals(long.class)) {
-                        setLong(name, (Long) method.invoke(object), name.endsWith("Id"));
-                    } else if (method.getReturnType().equals(double.class)) {
-                        setDouble(name, (Double) method.invoke(object));
-                    } else if (method.getReturnType().equals(String.class)) {
-                        setString(name, (String) method.invoke(object));
-                    } else if (method.getReturnType().equals(Date.class)) {
-                        setDate(name, (Date) method.invoke(object));
-                    } else if (method.getReturnType().equals(byte[].class)) {
-                        setBlob(name, (byte[]) method.invoke(object));
+        for (ObjectMapping.Getter getter : ObjectMapping.of(object.getClass()).getGetters()) {
+            String name = getter.getName();
+            if (indexes(name).isEmpty()) {
+                continue;
+            }
+            Class<?> type = getter.getType();
+            try {
+                if (type.equals(boolean.class)) {
+                    setBoolean(name, (Boolean) getter.get(object));
+                } else if (type.equals(int.class)) {
+                    setInteger(name, (Integer) getter.get(object));
+                } else if (type.equals(long.class)) {
+                    setLong(name, (Long) getter.get(object), name.endsWith("Id"));
+                } else if (type.equals(double.class)) {
+                    setDouble(name, (Double) getter.get(object));
+                } else if (type.equals(String.class)) {
+                    setString(name, (String) getter.get(object));
+                } else if (type.equals(Date.class)) {
+                    setDate(name, (Date) getter.get(object));
+                } else if (type.equals(byte[].class)) {
+                    setBlob(name, (byte[]) getter.get(object));
+                } else {
+                    if (type.equals(Map.class) && Context.getConfig().getBoolean("database.xml")) {
+                        setString(name, MiscFormatter.toXmlString((Map) getter.get(object)));
                     } else {
-                        if (method.getReturnType().equals(Map.class)
-                                && Context.getConfig().getBoolean("database.xml")) {
-                            setString(name, MiscFormatter.toXmlString((Map) method.invoke(object)));
-                        } else {
-                            setString(name, Context.getObjectMapper().writeValueAsString(method.invoke(object)));
-                        }
+                        setString(name, Context.getObjectMapper().writeValueAsString(getter.get(object)));
                     }
-                } catch (IllegalAccessException | InvocationTargetException | JsonProcessingException error) {
-                    LOGGER.warn("Get property error", error);
                 }
+            } catch (JsonProcessingException error) {
+                LOGGER.warn("Get property error", error);
             }
         }
 
@@ -315,74 +315,50 @@ public final class QueryBuilder {
 
     private <T> void addProcessors(
             List<ResultSetProcessor<T>> processors,
-            final Class<?> parameterType, final Method method, final String name) {
+            final Class<?> parameterType, final ObjectMapping.Setter setter, final int index) {
 
         if (parameterType.equals(boolean.class)) {
             processors.add(new ResultSetProcessor<T>() {
                 @Override
                 public void process(T object, ResultSet resultSet) throws SQLException {
-                    try {
-                        method.invoke(object, resultSet.getBoolean(name));
-                    } catch (IllegalAccessException | InvocationTargetException error) {
-                        LOGGER.warn("Set property error", error);
-                    }
+                    setter.set(object, resultSet.getBoolean(index));
                 }
             });
         } else if (parameterType.equals(int.class)) {
             processors.add(new ResultSetProcessor<T>() {
                 @Override
                 public void process(T object, ResultSet resultSet) throws SQLException {
-                    try {
-                        method.invoke(object, resultSet.getInt(name));
-                    } catch (IllegalAccessException | InvocationTargetException error) {
-                        LOGGER.warn("Set property error", error);
-                    }
+                    setter.set(object, resultSet.getInt(index));
                 }
             });
         } else if (parameterType.equals(long.class)) {
             processors.add(new ResultSetProcessor<T>() {
                 @Override
                 public void process(T object, ResultSet resultSet) throws SQLException {
-                    try {
-                        method.invoke(object, resultSet.getLong(name));
-                    } catch (IllegalAccessException | InvocationTargetException error) {
-                        LOGGER.warn("Set property error", error);
-                    }
+                    setter.set(object, resultSet.getLong(index));
                 }
             });
         } else if (parameterType.equals(double.class)) {
             processors.add(new ResultSetProcessor<T>() {
                 @Override
                 public void process(T object, ResultSet resultSet) throws SQLException {
-                    try {
-                        method.invoke(object, resultSet.getDouble(name));
-                    } catch (IllegalAccessException | InvocationTargetException error) {
-                        LOGGER.warn("Set property error", error);
-                    }
+                    setter.set(object, resultSet.getDouble(index));
                 }
             });
         } else if (parameterType.equals(String.class)) {
             processors.add(new ResultSetProcessor<T>() {
                 @Override
                 public void process(T object, ResultSet resultSet) throws SQLException {
-                    try {
-                        method.invoke(object, resultSet.getString(name));
-                    } catch (IllegalAccessException | InvocationTargetException error) {
-                        LOGGER.warn("Set property error", error);
-                    }
+                    setter.set(object, resultSet.getString(index));
                 }
             });
         } else if (parameterType.equals(Date.class)) {
             processors.add(new ResultSetProcessor<T>() {
                 @Override
                 public void process(T object, ResultSet resultSet) throws SQLException {
-                    try {
-                        Timestamp timestamp = resultSet.getTimestamp(name);
-                        if (timestamp != null) {
-                            method.invoke(object, new Date(timestamp.getTime()));
-                        }
-                    } catch (IllegalAccessException | InvocationTargetException error) {
-                        LOGGER.warn("Set property error", error);
+                    Timestamp timestamp = resultSet.getTimestamp(index);
+                    if (timestamp != null) {
+                        setter.set(object, new Date(timestamp.getTime()));
                     }
                 }
             });
@@ -390,22 +366,18 @@ public final class QueryBuilder {
             processors.add(new ResultSetProcessor<T>() {
                 @Override
                 public void process(T object, ResultSet resultSet) throws SQLException {
-                    try {
-                        method.invoke(object, resultSet.getBytes(name));
-                    } catch (IllegalAccessException | InvocationTargetException error) {
-                        LOGGER.warn("Set property error", error);
-                    }
+                    setter.set(object, resultSet.getBytes(index));
                 }
             });
         } else {
             processors.add(new ResultSetProcessor<T>() {
                 @Override
                 public void process(T object, ResultSet resultSet) throws SQLException {
-                    String value = resultSet.getString(name);
+                    String value = resultSet.getString(index);
                     if (value != null && !value.isEmpty()) {
                         try {
-                            method.invoke(object, Context.getObjectMapper().readValue(value, parameterType));
-                        } catch (InvocationTargetException | IllegalAccessException | IOException error) {
+                            setter.set(object, Context.getObjectMapper().readValue(value, parameterType));
+                        } catch (IOException error) {
                             LOGGER.warn("Set property error", error);
                         }
                     }
@@ -414,8 +386,25 @@ public final class QueryBuilder {
         }
     }
 
+    private <T> List<ResultSetProcessor<T>> createProcessors(
+            ObjectMapping<T> mapping, ResultSetMetaData resultMetaData) throws SQLException {
+
+        List<ResultSetProcessor<T>> processors = new ArrayList<>();
+        Set<String> columns = new HashSet<>();
+
+        for (int i = 1; i <= resultMetaData.getColumnCount(); i++) {
+            String name = resultMetaData.getColumnLabel(i).toLowerCase();
+            ObjectMapping.Setter setter = mapping.getSetter(name);
+            if (setter != null && columns.add(name)) {
+                addProcessors(processors, setter.getType(), setter, i);
+            }
+        }
+
+        return processors;
+    }
+
     public <T> Collection<T> executeQuery(Class<T> clazz) throws SQLException {
-        List<T> result = new LinkedList<>();
+        List<T> result = new ArrayList<>();
 
         if (query != null) {
 
@@ -423,54 +412,87 @@ public final class QueryBuilder {
 
                 try (ResultSet resultSet = statement.executeQuery()) {
 
-                    ResultSetMetaData resultMetaData = resultSet.getMetaData();
+                    ObjectMapping<T> mapping = ObjectMapping.of(clazz);
+                    List<ResultSetProcessor<T>> processors = createProcessors(mapping, resultSet.getMetaData());
 
-                    List<ResultSetProcessor<T>> processors = new LinkedList<>();
+                    while (resultSet.next()) {
+                        T object = mapping.newInstance();
+                        for (ResultSetProcessor<T> processor : processors) {
+                            processor.process(object, resultSet);
+                        }
+                        result.add(object);
+                    }
+                }
 
-                    Method[] methods = clazz.getMethods();
+            } finally {
+                statement.close();
+                connection.close();
+            }
+        }
 
-                    for (final Method method : methods) {
-                        if (method.getName().startsWith("set") && method.getParameterTypes().length == 1
-                                && !method.isAnnotationPresent(QueryIgnore.class)) {
+        return result;
+    }
 
-                            final String name = method.getName().substring(3);
+    /**
+     * Executes query and returns rows one by one instead of loading the whole result into memory. Returned iterator
+     * owns the connection, so it has to be closed by the caller.
+     *
+     * @param fetchSize number of rows driver fetches from the database at once, zero to use driver default
+     */
+    public <T> QueryIterator<T> executeQueryIterator(Class<T> clazz, int fetchSize) throws SQLException {
 
-                            // Check if column exists
-                            boolean column = false;
-                            for (int i = 1; i <= resultMetaData.getColumnCount(); i++) {
-                                if (name.equalsIgnoreCase(resultMetaData.getColumnLabel(i))) {
-                                    column = true;
-                                    break;
-                                }
-                            }
-                            if (!column) {
-                                continue;
-                            }
+        if (query == null) {
+            return new QueryIterator<>();
+        }
 
-                            addProcessors(processors, method.getParameterTypes()[0], method, name);
-                        }
-                    }
+        boolean autoCommit = connection.getAutoCommit();
+        ResultSet resultSet = null;
+        try {
+            if (fetchSize != 0) {
+                // Some drivers (e.g. PostgreSQL) only use cursors inside a transaction
+                connection.setAutoCommit(false);
+                statement.setFetchSize(fetchSize);
+            }
+            resultSet = statement.executeQuery();
 
-                    while (resultSet.next()) {
-                        try {
-                            T object = clazz.newInstance();
-                            for (ResultSetProcessor<T> processor : processors) {
-                                processor.process(object, resultSet);
-                            }
-                            result.add(object);
-                        } catch (InstantiationException | IllegalAccessException e) {
-                            throw new IllegalArgumentException();
-                        }
+            ObjectMapping<T> mapping = ObjectMapping.of(clazz);
+            List<ResultSetProcessor<T>> processors = createProcessors(mapping, resultSet.getMetaData());
+
+            final ResultSet rows = resultSet;
+            return new QueryIterator<>(resultSet, () -> {
+                T object = mapping.newInstance();
+                for (ResultSetProcessor<T> processor : processors) {
+                    processor.process(object, rows);
+                }
+                return object;
+            }, () -> {
+                try {
+                    rows.close();
+                    if (connection.getAutoCommit() != autoCommit) {
+                        connection.rollback();
+                        connection.setAutoCommit(autoCommit);
                     }
+                } finally {
+                    statement.close();
+                    connection.close();
                 }
+            });
 
+        } catch (SQLException | RuntimeException error) {
+            try {
+                if (resultSet != null) {
+                    resultSet.close();
+                }
+                if (connection.getAutoCommit() != autoCommit) {
+                    connection.rollback();
+                    connection.setAutoCommit(autoCommit);
+                }
             } finally {
                 statement.close();
                 connection.close();
             }
+            throw error;
         }
-
-        return result;
     }
 
     public long executeUpdate() throws SQLException {
@@ -492,8 +514,55 @@ public final class QueryBuilder {
         return 0;
     }
 
+    public QueryBuilder addBatch() throws SQLException {
+        if (query != null) {
+            try {
+                statement.addBatch();
+            } catch (SQLException error) {
+                statement.close();
+                connection.close();
+                throw error;
+            }
+        }
+        return this;
+    }
+
+    public long[] executeBatch() throws SQLException {
+
+        long[] result = new long[0];
+
+        if (query != null) {
+            boolean autoCommit = connection.getAutoCommit();
+            try {
+                connection.setAutoCommit(false);
+                int count = statement.executeBatch().length;
+                result = new long[count];
+                if (returnGeneratedKeys) {
+                    int index = 0;
+                    try (ResultSet resultSet = statement.getGeneratedKeys()) {
+                        while (index < count && resultSet.next()) {
+                            result[index++] = resultSet.getLong(1);
+                        }
+                    }
+                    if (index < count) {
+                        throw new SQLFeatureNotSupportedException("Batch generated keys are not supported");
+                    }
+                }
+                connection.commit();
+            } catch (SQLException error) {
+                connection.rollback();
+                throw error;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+                statement.close();
+                connection.close();
+            }
+        }
+        return result;
+    }
+
     public Collection<Permission> executePermissionsQuery() throws SQLException, ClassNotFoundException {
-        List<Permission> result = new LinkedList<>();
+        List<Permission> result = new ArrayList<>();
         if (query != null) {
             try {
                 try (ResultSet resultSet = statement.executeQuery()) {
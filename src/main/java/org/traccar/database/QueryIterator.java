@@ -0,0 +1,108 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Forward-only iterator over query results. Database errors while reading rows are rethrown as
+ * {@link IllegalStateException} with the original {@link SQLException} as a cause. Resources are released when the
+ * last row is read or when the iterator is closed.
+ */
+public final class QueryIterator<T> implements Iterator<T>, AutoCloseable {
+
+    interface RowReader<T> {
+        T read() throws SQLException;
+    }
+
+    interface Releaser {
+        void release() throws SQLException;
+    }
+
+    private final ResultSet resultSet;
+    private final RowReader<T> reader;
+    private final Releaser releaser;
+
+    private boolean fetched;
+    private boolean available;
+    private boolean closed;
+
+    QueryIterator() {
+        this(null, null, null);
+        closed = true;
+    }
+
+    QueryIterator(ResultSet resultSet, RowReader<T> reader, Releaser releaser) {
+        this.resultSet = resultSet;
+        this.reader = reader;
+        this.releaser = releaser;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        if (!fetched) {
+            try {
+                available = resultSet.next();
+                fetched = true;
+                if (!available) {
+                    close();
+                }
+            } catch (SQLException error) {
+                closeQuietly();
+                throw new IllegalStateException(error);
+            }
+        }
+        return available;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        fetched = false;
+        try {
+            return reader.read();
+        } catch (SQLException error) {
+            closeQuietly();
+            throw new IllegalStateException(error);
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (SQLException ignored) {
+            // original error is more relevant
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (!closed) {
+            closed = true;
+            available = false;
+            releaser.release();
+        }
+    }
+
+}
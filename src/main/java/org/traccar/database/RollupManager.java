@@ -0,0 +1,322 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.database;
+
+import org.apache.commons.collections4.IteratorUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.traccar.config.Config;
+import org.traccar.config.Keys;
+import org.traccar.handler.events.MotionSegmentDetector;
+import org.traccar.model.Position;
+import org.traccar.model.Rollup;
+import org.traccar.model.RollupSegment;
+
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Maintains daily rollups of position data. Rollups are calculated for completed days, positions that arrive late
+ * for a completed day mark its rollup for recalculation. Marks are kept in memory, so after a restart rollups in the
+ * backfill window are verified against stored position counts.
+ * <p>
+ * Trip and stop detection for a day resumes from the start of the segment that was still in progress at the end of
+ * the previous day, so days are calculated in order and a recalculated day also marks the following day if the
+ * segment in progress at its end has changed.
+ */
+public class RollupManager {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RollupManager.class);
+
+    public static final long DAY = 24 * 60 * 60 * 1000;
+
+    public static final long UPDATE_PERIOD = 60 * 60 * 1000;
+
+    private final DataManager dataManager;
+    private final DeviceManager deviceManager;
+    private final MotionSegmentDetector detector;
+    private final int backfillDays;
+    private final int devicesPerQuery;
+
+    /**
+     * Days to recalculate with the earliest fix time of changed positions for each device.
+     */
+    private final ConcurrentNavigableMap<Long, Map<Long, Long>> outdated = new ConcurrentSkipListMap<>();
+    private boolean verified;
+
+    public RollupManager(
+            Config config, DataManager dataManager, DeviceManager deviceManager, MotionSegmentDetector detector) {
+        this.dataManager = dataManager;
+        this.deviceManager = deviceManager;
+        this.detector = detector;
+        backfillDays = Math.max(config.getInteger(Keys.REPORT_ROLLUP_BACKFILL_DAYS, 7), 1);
+        devicesPerQuery = Math.max(config.getInteger(Keys.REPORT_DEVICES_PER_QUERY, 100), 1);
+    }
+
+    public static long getDayStart(long time) {
+        return time - Math.floorMod(time, DAY);
+    }
+
+    private static void addPosition(Rollup rollup, Position position) {
+        boolean ignition = position.getBoolean(Position.KEY_IGNITION);
+        if (rollup.getPositionCount() == 0) {
+            rollup.setFirstPositionId(position.getId());
+            rollup.setFirstTime(position.getFixTime());
+            rollup.setFirstIgnition(ignition);
+        } else if (ignition && rollup.getLastIgnition()) {
+            rollup.setEngineHours(rollup.getEngineHours()
+                    + position.getFixTime().getTime() - rollup.getLastTime().getTime());
+        }
+        rollup.setLastPositionId(position.getId());
+        rollup.setLastTime(position.getFixTime());
+        rollup.setLastIgnition(ignition);
+        rollup.setPositionCount(rollup.getPositionCount() + 1);
+        rollup.setSpeedSum(rollup.getSpeedSum() + position.getSpeed());
+        rollup.setMaxSpeed(Math.max(rollup.getMaxSpeed(), position.getSpeed()));
+    }
+
+    public static Rollup calculateRollup(long deviceId, Date dayStart, Iterator<Position> positions) {
+        Rollup rollup = new Rollup();
+        rollup.setDeviceId(deviceId);
+        rollup.setDayStart(dayStart);
+        while (positions.hasNext()) {
+            addPosition(rollup, positions.next());
+        }
+        return rollup;
+    }
+
+    /**
+     * Calculates rollup with trips and stops. Positions have to start at the open time of the previous day, or at the
+     * start of the day if there is no previous rollup.
+     */
+    static Rollup calculateRollup(
+            MotionSegmentDetector detector, long deviceId, long dayStart, Date previousOpenTime,
+            Iterator<Position> positions) {
+
+        Rollup rollup = new Rollup();
+        rollup.setDeviceId(deviceId);
+        rollup.setDayStart(new Date(dayStart));
+
+        List<RollupSegment> segments = new ArrayList<>();
+        Position open = detector.detect(IteratorUtils.transformedIterator(positions, position -> {
+            if (position.getFixTime().getTime() >= dayStart) {
+                addPosition(rollup, position);
+            }
+            return position;
+        }), false, segment -> {
+            if (segment.getEventPosition().getFixTime().getTime() >= dayStart) {
+                RollupSegment item = new RollupSegment();
+                item.setMotion(segment.getMotion());
+                item.setStartPositionId(segment.getStartPosition().getId());
+                item.setEndPositionId(segment.getEndPosition().getId());
+                item.setStartTime(segment.getStartPosition().getFixTime());
+                item.setEndTime(segment.getEndPosition().getFixTime());
+                item.setPositionCount(segment.getPositionCount());
+                item.setSpeedSum(segment.getSpeedSum());
+                item.setMaxSpeed(segment.getMaxSpeed());
+                item.setEngineHours(segment.getIgnitionTime());
+                segments.add(item);
+            }
+        });
+
+        rollup.setOpenTime(open != null ? open.getFixTime() : previousOpenTime);
+        rollup.setSegments(segments.toArray(new RollupSegment[0]));
+        return rollup;
+    }
+
+    /**
+     * Should be called after the position is stored, otherwise the rollup can be recalculated before the position is
+     * available in the database.
+     */
+    public void registerPosition(Position position) {
+        if (position.getFixTime() != null) {
+            long time = position.getFixTime().getTime();
+            long dayStart = getDayStart(time);
+            if (dayStart < getDayStart(System.currentTimeMillis())) {
+                markOutdated(dayStart, position.getDeviceId(), time);
+            }
+        }
+    }
+
+    private void markOutdated(long dayStart, long deviceId, long changeTime) {
+        outdated.computeIfAbsent(dayStart, key -> new ConcurrentHashMap<>()).merge(deviceId, changeTime, Math::min);
+    }
+
+    /**
+     * Marks rollups that don't match the number of stored positions, for example because a late position was stored
+     * shortly before a restart.
+     */
+    private void verify() throws SQLException {
+        long today = getDayStart(System.currentTimeMillis());
+        for (int i = backfillDays; i > 0; i--) {
+            long dayStart = today - i * DAY;
+            Map<Long, Integer> counts = new HashMap<>();
+            for (Rollup count : dataManager.getPositionCounts(new Date(dayStart), new Date(dayStart + DAY - 1))) {
+                counts.put(count.getDeviceId(), count.getPositionCount());
+            }
+            for (Rollup rollup : dataManager.getRollupCounts(new Date(dayStart))) {
+                if (rollup.getPositionCount() != counts.getOrDefault(rollup.getDeviceId(), 0)) {
+                    markOutdated(dayStart, rollup.getDeviceId(), dayStart);
+                }
+            }
+        }
+    }
+
+    public synchronized void update() {
+        try {
+            if (!verified) {
+                verify();
+                verified = true;
+            }
+            Iterator<Long> iterator = outdated.keySet().iterator();
+            while (iterator.hasNext()) {
+                long dayStart = iterator.next();
+                Map<Long, Long> devices = outdated.remove(dayStart);
+                if (devices != null) {
+                    calculate(devices, dayStart);
+                }
+            }
+
+            long today = getDayStart(System.currentTimeMillis());
+            for (int i = backfillDays; i > 0; i--) {
+                long dayStart = today - i * DAY;
+                Map<Long, Long> devices = new HashMap<>();
+                for (long deviceId : deviceManager.getAllItems()) {
+                    devices.put(deviceId, dayStart);
+                }
+                devices.keySet().removeAll(dataManager.getRollupDevices(new Date(dayStart)));
+                calculate(devices, dayStart);
+            }
+        } catch (SQLException | RuntimeException error) {
+            LOGGER.warn("Rollup update error", error);
+        }
+    }
+
+    /**
+     * Calculates rollups for the day and stores them. Existing rollups are updated in place, so a rollup is replaced
+     * with a single statement.
+     *
+     * @param devices earliest fix time of changed positions for each device
+     */
+    private void calculate(Map<Long, Long> devices, long dayStart) throws SQLException {
+        if (devices.isEmpty()) {
+            return;
+        }
+
+        List<Long> deviceIds = new ArrayList<>(devices.keySet());
+        Map<Long, Rollup> previousRollups = new HashMap<>();
+        Map<Long, Rollup> currentRollups = new HashMap<>();
+        Map<Long, Rollup> nextRollups = new HashMap<>();
+        for (int i = 0; i < deviceIds.size(); i += devicesPerQuery) {
+            for (Rollup rollup : dataManager.getRollups(deviceIds.subList(i, Math.min(i + devicesPerQuery,
+                    deviceIds.size())), new Date(dayStart - DAY), new Date(dayStart + DAY), false)) {
+                long day = rollup.getDayStart().getTime();
+                if (day < dayStart) {
+                    previousRollups.put(rollup.getDeviceId(), rollup);
+                } else if (day > dayStart) {
+                    nextRollups.put(rollup.getDeviceId(), rollup);
+                } else {
+                    currentRollups.put(rollup.getDeviceId(), rollup);
+                }
+            }
+        }
+
+        Map<Long, List<Long>> groups = new HashMap<>();
+        Map<Long, Date> openTimes = new HashMap<>();
+        for (long deviceId : deviceIds) {
+            Rollup previous = previousRollups.get(deviceId);
+            long from = dayStart;
+            if (previous != null && previous.getOpenTime() != null) {
+                openTimes.put(deviceId, previous.getOpenTime());
+                from = Math.min(previous.getOpenTime().getTime(), dayStart);
+            }
+            groups.computeIfAbsent(getDayStart(from), key -> new ArrayList<>()).add(deviceId);
+        }
+
+        Map<Long, Rollup> rollups = new HashMap<>();
+        for (List<Long> group : groups.values()) {
+            long from = dayStart;
+            for (long deviceId : group) {
+                Date openTime = openTimes.get(deviceId);
+                if (openTime != null) {
+                    from = Math.min(from, openTime.getTime());
+                }
+            }
+            for (int i = 0; i < group.size(); i += devicesPerQuery) {
+                try (QueryIterator<Position> iterator = dataManager.getPositionsIterator(
+                        group.subList(i, Math.min(i + devicesPerQuery, group.size())),
+                        new Date(from), new Date(dayStart + DAY - 1))) {
+                    DevicePositions positions = new DevicePositions(iterator);
+                    while (positions.nextDevice()) {
+                        long deviceId = positions.getDeviceId();
+                        long start = openTimes.containsKey(deviceId)
+                                ? Math.min(openTimes.get(deviceId).getTime(), dayStart) : dayStart;
+                        rollups.put(deviceId, calculateRollup(detector, deviceId, dayStart, openTimes.get(deviceId),
+                                IteratorUtils.filteredIterator(
+                                        positions, position -> position.getFixTime().getTime() >= start)));
+                    }
+                } catch (IllegalStateException error) {
+                    if (error.getCause() instanceof SQLException) {
+                        throw (SQLException) error.getCause();
+                    }
+                    throw error;
+                }
+            }
+        }
+
+        List<Rollup> added = new ArrayList<>();
+        long today = getDayStart(System.currentTimeMillis());
+        for (long deviceId : deviceIds) {
+            Rollup rollup = rollups.get(deviceId);
+            if (rollup == null) {
+                rollup = calculateRollup(detector, deviceId, dayStart, openTimes.get(deviceId),
+                        Collections.<Position>emptyIterator());
+            }
+            Rollup current = currentRollups.get(deviceId);
+            if (current != null) {
+                rollup.setId(current.getId());
+                dataManager.updateObject(rollup);
+            } else {
+                added.add(rollup);
+            }
+            long changeTime = devices.get(deviceId);
+            if (nextRollups.containsKey(deviceId) && dayStart + DAY < today
+                    && (current == null || !Objects.equals(current.getOpenTime(), rollup.getOpenTime())
+                    || rollup.getOpenTime() != null && changeTime >= rollup.getOpenTime().getTime())) {
+                markOutdated(dayStart + DAY, deviceId, changeTime);
+            }
+        }
+        try {
+            dataManager.addObjects(added);
+        } catch (SQLFeatureNotSupportedException error) {
+            for (Rollup rollup : added) {
+                dataManager.addObject(rollup);
+            }
+        }
+    }
+
+}
@@ -68,7 +68,7 @@ public abstract class SimpleObjectManager<T extends BaseModel> extends BaseObjec
         refreshUserItems();
     }
 
-    public final void refreshUserItems() {
+    public void refreshUserItems() {
         if (getDataManager() != null) {
             try {
                 if (userItems != null) {
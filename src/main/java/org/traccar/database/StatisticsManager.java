@@ -29,32 +29,46 @@ import javax.ws.rs.core.Form;
 import java.sql.SQLException;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Collects daily usage statistics. Registration methods are called for every message and request, so they only
+ * update striped counters and never block. Daily split is performed by {@link #checkSplit()}, which has to be called
+ * periodically.
+ */
 public class StatisticsManager {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(StatisticsManager.class);
 
     private static final int SPLIT_MODE = Calendar.DAY_OF_MONTH;
 
+    public static final long SPLIT_CHECK_PERIOD = 60 * 1000;
+
     private final Config config;
     private final DataManager dataManager;
     private final Client client;
 
     private AtomicInteger lastUpdate = new AtomicInteger(Calendar.getInstance().get(SPLIT_MODE));
 
-    private Set<Long> users = new HashSet<>();
-    private Set<Long> devices = new HashSet<>();
+    private static final class Counters {
+
+        private final Set<Long> users = ConcurrentHashMap.newKeySet();
+        private final Set<Long> devices = ConcurrentHashMap.newKeySet();
+
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder messagesReceived = new LongAdder();
+        private final LongAdder messagesStored = new LongAdder();
+        private final LongAdder mailSent = new LongAdder();
+        private final LongAdder smsSent = new LongAdder();
+        private final LongAdder geocoderRequests = new LongAdder();
+        private final LongAdder geolocationRequests = new LongAdder();
+
+    }
 
-    private int requests;
-    private int messagesReceived;
-    private int messagesStored;
-    private int mailSent;
-    private int smsSent;
-    private int geocoderRequests;
-    private int geolocationRequests;
+    private volatile Counters counters = new Counters();
 
     @Inject
     public StatisticsManager(Config config, DataManager dataManager, Client client) {
@@ -63,20 +77,23 @@ public class StatisticsManager {
         this.client = client;
     }
 
-    private void checkSplit() {
+    public void checkSplit() {
         int currentUpdate = Calendar.getInstance().get(SPLIT_MODE);
         if (lastUpdate.getAndSet(currentUpdate) != currentUpdate) {
+            Counters previous = counters;
+            counters = new Counters();
+
             Statistics statistics = new Statistics();
             statistics.setCaptureTime(new Date());
-            statistics.setActiveUsers(users.size());
-            statistics.setActiveDevices(devices.size());
-            statistics.setRequests(requests);
-            statistics.setMessagesReceived(messagesReceived);
-            statistics.setMessagesStored(messagesStored);
-            statistics.setMailSent(mailSent);
-            statistics.setSmsSent(smsSent);
-            statistics.setGeocoderRequests(geocoderRequests);
-            statistics.setGeolocationRequests(geolocationRequests);
+            statistics.setActiveUsers(previous.users.size());
+            statistics.setActiveDevices(previous.devices.size());
+            statistics.setRequests(previous.requests.intValue());
+            statistics.setMessagesReceived(previous.messagesReceived.intValue());
+            statistics.setMessagesStored(previous.messagesStored.intValue());
+            statistics.setMailSent(previous.mailSent.intValue());
+            statistics.setSmsSent(previous.smsSent.intValue());
+            statistics.setGeocoderRequests(previous.geocoderRequests.intValue());
+            statistics.setGeolocationRequests(previous.geolocationRequests.intValue());
 
             try {
                 dataManager.addObject(statistics);
@@ -103,58 +120,45 @@ public class StatisticsManager {
 
                 client.target(url).request().async().post(Entity.form(form));
             }
-
-            users.clear();
-            devices.clear();
-            requests = 0;
-            messagesReceived = 0;
-            messagesStored = 0;
-            mailSent = 0;
-            smsSent = 0;
-            geocoderRequests = 0;
-            geolocationRequests = 0;
         }
     }
 
-    public synchronized void registerRequest(long userId) {
-        checkSplit();
-        requests += 1;
-        if (userId != 0) {
-            users.add(userId);
+    private static void addId(Set<Long> ids, long id) {
+        if (id != 0 && !ids.contains(id)) {
+            ids.add(id);
         }
     }
 
-    public synchronized void registerMessageReceived() {
-        checkSplit();
-        messagesReceived += 1;
+    public void registerRequest(long userId) {
+        Counters current = counters;
+        current.requests.increment();
+        addId(current.users, userId);
     }
 
-    public synchronized void registerMessageStored(long deviceId) {
-        checkSplit();
-        messagesStored += 1;
-        if (deviceId != 0) {
-            devices.add(deviceId);
-        }
+    public void registerMessageReceived() {
+        counters.messagesReceived.increment();
+    }
+
+    public void registerMessageStored(long deviceId) {
+        Counters current = counters;
+        current.messagesStored.increment();
+        addId(current.devices, deviceId);
     }
 
-    public synchronized void registerMail() {
-        checkSplit();
-        mailSent += 1;
+    public void registerMail() {
+        counters.mailSent.increment();
     }
 
-    public synchronized void registerSms() {
-        checkSplit();
-        smsSent += 1;
+    public void registerSms() {
+        counters.smsSent.increment();
     }
 
-    public synchronized void registerGeocoderRequest() {
-        checkSplit();
-        geocoderRequests += 1;
+    public void registerGeocoderRequest() {
+        counters.geocoderRequests.increment();
     }
 
-    public synchronized void registerGeolocationRequest() {
-        checkSplit();
-        geolocationRequests += 1;
+    public void registerGeolocationRequest() {
+        counters.geolocationRequests.increment();
     }
 
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 Anton Tananaev (anton@traccar.org)
+ * Copyright 2016 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,6 +19,55 @@ import java.text.ParseException;
 
 public abstract class GeofenceGeometry {
 
+    private static final double METERS_PER_DEGREE = 6378137 * Math.PI / 180;
+    private static final double BOUNDS_MARGIN = 1.01;
+    private static final double BOUNDS_EPSILON = 1e-9;
+
+    private double minLatitude = -90;
+    private double minLongitude = -180;
+    private double maxLatitude = 90;
+    private double maxLongitude = 180;
+
+    public double getMinLatitude() {
+        return minLatitude;
+    }
+
+    public double getMinLongitude() {
+        return minLongitude;
+    }
+
+    public double getMaxLatitude() {
+        return maxLatitude;
+    }
+
+    public double getMaxLongitude() {
+        return maxLongitude;
+    }
+
+    /**
+     * Sets bounding box of the geometry, extended by the given distance in meters. Boxes that reach a pole or cross the
+     * antimeridian cover all longitudes, so the box never excludes a point that the geometry contains.
+     */
+    protected void setBounds(
+            double minLatitude, double minLongitude, double maxLatitude, double maxLongitude, double distance) {
+        double latitudeDelta = distance * BOUNDS_MARGIN / METERS_PER_DEGREE + BOUNDS_EPSILON;
+        this.minLatitude = Math.max(minLatitude - latitudeDelta, -90);
+        this.maxLatitude = Math.min(maxLatitude + latitudeDelta, 90);
+        double cos = Math.cos(Math.toRadians(Math.max(Math.abs(this.minLatitude), Math.abs(this.maxLatitude))));
+        double longitudeDelta = cos > 0 ? latitudeDelta / cos : Double.POSITIVE_INFINITY;
+        this.minLongitude = minLongitude - longitudeDelta;
+        this.maxLongitude = maxLongitude + longitudeDelta;
+        if (this.minLongitude < -180 || this.maxLongitude > 180) {
+            this.minLongitude = -180;
+            this.maxLongitude = 180;
+        }
+    }
+
+    public boolean boundsContain(double latitude, double longitude) {
+        return latitude >= minLatitude && latitude <= maxLatitude
+                && longitude >= minLongitude && longitude <= maxLongitude;
+    }
+
     public abstract boolean containsPoint(double latitude, double longitude);
 
     public abstract String toWkt();
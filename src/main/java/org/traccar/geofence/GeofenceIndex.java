@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.geofence;
+
+import org.traccar.helper.LongSet;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Uniform grid over geofence bounding boxes. Each geofence is registered in all cells its box overlaps, so a point
+ * lookup returns only geofences whose boxes are close to the point. Geofences covering too many cells are kept in a
+ * separate list that is returned for every point. Lookups don't lock and can run concurrently with updates.
+ */
+public class GeofenceIndex {
+
+    public static final double DEFAULT_CELL_SIZE = 0.1;
+
+    private static final int MAX_CELLS = 256;
+
+    private final double cellSize;
+    private final long longitudeCells;
+
+    private final Map<Long, long[]> ranges = new ConcurrentHashMap<>();
+    private final Map<Long, LongSet> cells = new ConcurrentHashMap<>();
+    private volatile LongSet large = LongSet.EMPTY;
+
+    public GeofenceIndex() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    public GeofenceIndex(double cellSize) {
+        this.cellSize = cellSize;
+        this.longitudeCells = (long) Math.ceil(360 / cellSize) + 1;
+    }
+
+    private long latitudeCell(double latitude) {
+        return (long) Math.floor((latitude + 90) / cellSize);
+    }
+
+    private long longitudeCell(double longitude) {
+        return (long) Math.floor((longitude + 180) / cellSize);
+    }
+
+    private long cellKey(long latitudeCell, long longitudeCell) {
+        return latitudeCell * longitudeCells + longitudeCell;
+    }
+
+    private static boolean isLarge(long[] range) {
+        return (range[2] - range[0] + 1) * (range[3] - range[1] + 1) > MAX_CELLS;
+    }
+
+    public synchronized void put(long geofenceId, GeofenceGeometry geometry) {
+        remove(geofenceId);
+        long[] range = new long[] {
+                latitudeCell(geometry.getMinLatitude()), longitudeCell(geometry.getMinLongitude()),
+                latitudeCell(geometry.getMaxLatitude()), longitudeCell(geometry.getMaxLongitude())};
+        ranges.put(geofenceId, range);
+        if (isLarge(range)) {
+            large = large.with(geofenceId);
+        } else {
+            for (long i = range[0]; i <= range[2]; i++) {
+                for (long j = range[1]; j <= range[3]; j++) {
+                    cells.compute(cellKey(i, j), (key, ids) -> ids != null
+                            ? ids.with(geofenceId) : LongSet.EMPTY.with(geofenceId));
+                }
+            }
+        }
+    }
+
+    public synchronized void remove(long geofenceId) {
+        long[] range = ranges.remove(geofenceId);
+        if (range != null) {
+            if (isLarge(range)) {
+                large = large.without(geofenceId);
+            } else {
+                for (long i = range[0]; i <= range[2]; i++) {
+                    for (long j = range[1]; j <= range[3]; j++) {
+                        cells.computeIfPresent(cellKey(i, j), (key, ids) -> {
+                            LongSet result = ids.without(geofenceId);
+                            return result.isEmpty() ? null : result;
+                        });
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns geofences that may contain the point. The result can include geofences that don't contain it, but never
+     * misses one that does.
+     */
+    public Set<Long> getCandidates(double latitude, double longitude) {
+        LongSet result = cells.getOrDefault(cellKey(latitudeCell(latitude), longitudeCell(longitude)), LongSet.EMPTY);
+        return result.union(large);
+    }
+
+}
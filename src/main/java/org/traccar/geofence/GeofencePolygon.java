@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 Anton Tananaev (anton@traccar.org)
+ * Copyright 2016 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,10 +16,18 @@
 package org.traccar.geofence;
 
 import java.text.ParseException;
-import java.util.ArrayList;
 
+/**
+ * Polygon with point lookup by vertical ray casting. Edges are stored in primitive arrays and, for large polygons,
+ * grouped into longitude slabs, so a lookup only tests edges that span the longitude of the point.
+ */
 public class GeofencePolygon extends GeofenceGeometry {
 
+    private static final int SLAB_MIN_EDGES = 32;
+    private static final int SLAB_EDGES = 8;
+    private static final int SLAB_MAX_COUNT = 4096;
+    private static final int SLAB_MAX_ENTRIES = 32;
+
     public GeofencePolygon() {
     }
 
@@ -27,57 +35,125 @@ public class GeofencePolygon extends GeofenceGeometry {
         fromWkt(wkt);
     }
 
-    private ArrayList<Coordinate> coordinates;
+    private double[] latitudes;
+    private double[] longitudes;
 
+    private double[] edgeStart;
+    private double[] edgeEnd;
     private double[] constant;
     private double[] multiple;
 
+    private double longitudeStart;
+    private double longitudeEnd;
+
+    private int[][] slabs;
+    private double slabWidth;
+
     private boolean needNormalize = false;
 
     private void precalc() {
-        if (coordinates == null) {
-            return;
-        }
-
-        int polyCorners = coordinates.size();
+        int polyCorners = latitudes.length;
         int i;
         int j = polyCorners - 1;
 
-        if (constant != null) {
-            constant = null;
-        }
-        if (multiple != null) {
-            multiple = null;
-        }
-
-        constant = new double[polyCorners];
-        multiple = new double[polyCorners];
-
         boolean hasNegative = false;
         boolean hasPositive = false;
         for (i = 0; i < polyCorners; i++) {
-            if (coordinates.get(i).getLon() > 90) {
+            if (longitudes[i] > 90) {
                 hasPositive = true;
-            } else if (coordinates.get(i).getLon() < -90) {
+            } else if (longitudes[i] < -90) {
                 hasNegative = true;
             }
         }
         needNormalize = hasPositive && hasNegative;
 
+        edgeStart = new double[polyCorners];
+        edgeEnd = new double[polyCorners];
+        constant = new double[polyCorners];
+        multiple = new double[polyCorners];
+        longitudeStart = Double.POSITIVE_INFINITY;
+        longitudeEnd = Double.NEGATIVE_INFINITY;
+
         for (i = 0; i < polyCorners; j = i++) {
-            if (normalizeLon(coordinates.get(j).getLon()) == normalizeLon(coordinates.get(i).getLon())) {
-                constant[i] = coordinates.get(i).getLat();
+            double lonI = normalizeLon(longitudes[i]);
+            double lonJ = normalizeLon(longitudes[j]);
+            edgeStart[i] = Math.min(lonI, lonJ);
+            edgeEnd[i] = Math.max(lonI, lonJ);
+            longitudeStart = Math.min(longitudeStart, edgeStart[i]);
+            longitudeEnd = Math.max(longitudeEnd, edgeEnd[i]);
+            if (lonJ == lonI) {
+                constant[i] = latitudes[i];
                 multiple[i] = 0;
             } else {
-                constant[i] = coordinates.get(i).getLat()
-                        - (normalizeLon(coordinates.get(i).getLon()) * coordinates.get(j).getLat())
-                        / (normalizeLon(coordinates.get(j).getLon()) - normalizeLon(coordinates.get(i).getLon()))
-                        + (normalizeLon(coordinates.get(i).getLon()) * coordinates.get(i).getLat())
-                        / (normalizeLon(coordinates.get(j).getLon()) - normalizeLon(coordinates.get(i).getLon()));
-                multiple[i] = (coordinates.get(j).getLat() - coordinates.get(i).getLat())
-                        / (normalizeLon(coordinates.get(j).getLon()) - normalizeLon(coordinates.get(i).getLon()));
+                constant[i] = latitudes[i]
+                        - (lonI * latitudes[j]) / (lonJ - lonI)
+                        + (lonI * latitudes[i]) / (lonJ - lonI);
+                multiple[i] = (latitudes[j] - latitudes[i]) / (lonJ - lonI);
             }
         }
+
+        double minLatitude = Double.POSITIVE_INFINITY;
+        double maxLatitude = Double.NEGATIVE_INFINITY;
+        for (double latitude : latitudes) {
+            minLatitude = Math.min(minLatitude, latitude);
+            maxLatitude = Math.max(maxLatitude, latitude);
+        }
+        if (needNormalize) {
+            setBounds(minLatitude, -180, maxLatitude, 180, 0);
+        } else {
+            setBounds(minLatitude, longitudeStart, maxLatitude, longitudeEnd, 0);
+        }
+
+        buildSlabs();
+    }
+
+    private static int slab(double longitude, double start, double width, int count) {
+        return Math.max(0, Math.min((int) ((longitude - start) / width), count - 1));
+    }
+
+    private void buildSlabs() {
+        slabs = null;
+        int edges = edgeStart.length;
+        if (edges < SLAB_MIN_EDGES || !(longitudeEnd > longitudeStart)) {
+            return;
+        }
+        int count = Math.min(edges / SLAB_EDGES, SLAB_MAX_COUNT);
+        while (true) {
+            double width = (longitudeEnd - longitudeStart) / count;
+            int[] sizes = new int[count];
+            long total = 0;
+            for (int i = 0; i < edges; i++) {
+                if (edgeStart[i] < edgeEnd[i]) {
+                    int first = slab(edgeStart[i], longitudeStart, width, count);
+                    int last = slab(edgeEnd[i], longitudeStart, width, count);
+                    for (int k = first; k <= last; k++) {
+                        sizes[k] += 1;
+                    }
+                    total += last - first + 1;
+                }
+            }
+            if (total > (long) edges * SLAB_MAX_ENTRIES && count > 1) {
+                count /= 2;
+                continue;
+            }
+            int[][] result = new int[count][];
+            for (int k = 0; k < count; k++) {
+                result[k] = new int[sizes[k]];
+                sizes[k] = 0;
+            }
+            for (int i = 0; i < edges; i++) {
+                if (edgeStart[i] < edgeEnd[i]) {
+                    int first = slab(edgeStart[i], longitudeStart, width, count);
+                    int last = slab(edgeEnd[i], longitudeStart, width, count);
+                    for (int k = first; k <= last; k++) {
+                        result[k][sizes[k]++] = i;
+                    }
+                }
+            }
+            slabs = result;
+            slabWidth = width;
+            return;
+        }
     }
 
     private double normalizeLon(double lon) {
@@ -87,21 +163,29 @@ public class GeofencePolygon extends GeofenceGeometry {
         return lon;
     }
 
+    private boolean crosses(int i, double longitude, double latitude) {
+        return edgeStart[i] < longitude && longitude <= edgeEnd[i] && longitude * multiple[i] + constant[i] < latitude;
+    }
+
     @Override
     public boolean containsPoint(double latitude, double longitude) {
 
-        int polyCorners = coordinates.size();
-        int i;
-        int j = polyCorners - 1;
+        if (latitude < getMinLatitude() || latitude > getMaxLatitude()) {
+            return false;
+        }
         double longitudeNorm = normalizeLon(longitude);
-        boolean oddNodes = false;
+        if (longitudeNorm <= longitudeStart || longitudeNorm > longitudeEnd) {
+            return false;
+        }
 
-        for (i = 0; i < polyCorners; j = i++) {
-            if (normalizeLon(coordinates.get(i).getLon()) < longitudeNorm
-                    && normalizeLon(coordinates.get(j).getLon()) >= longitudeNorm
-                    || normalizeLon(coordinates.get(j).getLon()) < longitudeNorm
-                    && normalizeLon(coordinates.get(i).getLon()) >= longitudeNorm) {
-                oddNodes ^= longitudeNorm * multiple[i] + constant[i] < latitude;
+        boolean oddNodes = false;
+        if (slabs != null) {
+            for (int i : slabs[slab(longitudeNorm, longitudeStart, slabWidth, slabs.length)]) {
+                oddNodes ^= crosses(i, longitudeNorm, latitude);
+            }
+        } else {
+            for (int i = 0; i < edgeStart.length; i++) {
+                oddNodes ^= crosses(i, longitudeNorm, latitude);
             }
         }
         return oddNodes;
@@ -111,10 +195,10 @@ public class GeofencePolygon extends GeofenceGeometry {
     public String toWkt() {
         StringBuilder buf = new StringBuilder();
         buf.append("POLYGON ((");
-        for (Coordinate coordinate : coordinates) {
-            buf.append(String.valueOf(coordinate.getLat()));
+        for (int i = 0; i < latitudes.length; i++) {
+            buf.append(String.valueOf(latitudes[i]));
             buf.append(" ");
-            buf.append(String.valueOf(coordinate.getLon()));
+            buf.append(String.valueOf(longitudes[i]));
             buf.append(", ");
         }
         return buf.substring(0, buf.length() - 2) + "))";
@@ -122,12 +206,6 @@ public class GeofencePolygon extends GeofenceGeometry {
 
     @Override
     public void fromWkt(String wkt) throws ParseException {
-        if (coordinates == null) {
-            coordinates = new ArrayList<>();
-        } else {
-            coordinates.clear();
-        }
-
         if (!wkt.startsWith("POLYGON")) {
             throw new ParseException("Mismatch geometry type", 0);
         }
@@ -140,24 +218,26 @@ public class GeofencePolygon extends GeofenceGeometry {
             throw new ParseException("Not valid content", 0);
         }
 
-        for (String commaToken : commaTokens) {
-            String[] tokens = commaToken.trim().split("\\s");
+        double[] parsedLatitudes = new double[commaTokens.length];
+        double[] parsedLongitudes = new double[commaTokens.length];
+        for (int i = 0; i < commaTokens.length; i++) {
+            String[] tokens = commaTokens[i].trim().split("\\s");
             if (tokens.length != 2) {
-                throw new ParseException("Here must be two coordinates: " + commaToken, 0);
+                throw new ParseException("Here must be two coordinates: " + commaTokens[i], 0);
             }
-            Coordinate coordinate = new Coordinate();
             try {
-                coordinate.setLat(Double.parseDouble(tokens[0]));
+                parsedLatitudes[i] = Double.parseDouble(tokens[0]);
             } catch (NumberFormatException e) {
                 throw new ParseException(tokens[0] + " is not a double", 0);
             }
             try {
-                coordinate.setLon(Double.parseDouble(tokens[1]));
+                parsedLongitudes[i] = Double.parseDouble(tokens[1]);
             } catch (NumberFormatException e) {
                 throw new ParseException(tokens[1] + " is not a double", 0);
             }
-            coordinates.add(coordinate);
         }
+        latitudes = parsedLatitudes;
+        longitudes = parsedLongitudes;
         precalc();
     }
 
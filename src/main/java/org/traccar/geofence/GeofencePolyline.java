@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 Anton Tananaev (anton@traccar.org)
+ * Copyright 2016 - 2020 Anton Tananaev (anton@traccar.org)
  * Copyright 2016 Andrey Kunitsyn (andrey@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -23,6 +23,8 @@ import org.traccar.helper.DistanceCalculator;
 
 public class GeofencePolyline extends GeofenceGeometry {
 
+    private static final double EARTH_RADIUS = 6378137;
+
     private ArrayList<Coordinate> coordinates;
     private double distance;
 
@@ -32,6 +34,35 @@ public class GeofencePolyline extends GeofenceGeometry {
     public GeofencePolyline(String wkt, double distance) throws ParseException {
         fromWkt(wkt);
         this.distance = distance;
+        updateBounds();
+    }
+
+    private void updateBounds() {
+        double minLatitude = Double.POSITIVE_INFINITY;
+        double minLongitude = Double.POSITIVE_INFINITY;
+        double maxLatitude = Double.NEGATIVE_INFINITY;
+        double maxLongitude = Double.NEGATIVE_INFINITY;
+        double maxSegment = 0;
+        for (int i = 0; i < coordinates.size(); i++) {
+            Coordinate coordinate = coordinates.get(i);
+            minLatitude = Math.min(minLatitude, coordinate.getLat());
+            minLongitude = Math.min(minLongitude, coordinate.getLon());
+            maxLatitude = Math.max(maxLatitude, coordinate.getLat());
+            maxLongitude = Math.max(maxLongitude, coordinate.getLon());
+            if (i > 0) {
+                maxSegment = Math.max(maxSegment, DistanceCalculator.distance(
+                        coordinates.get(i - 1).getLat(), coordinates.get(i - 1).getLon(),
+                        coordinate.getLat(), coordinate.getLon()));
+            }
+        }
+        if (maxLongitude - minLongitude > 180) {
+            minLongitude = -180;
+            maxLongitude = 180;
+        }
+        // long segments follow great circles, which bend towards the pole beyond their end points
+        double maxLatitudeAbs = Math.min(Math.max(Math.abs(minLatitude), Math.abs(maxLatitude)), 89);
+        double bend = maxSegment * maxSegment / EARTH_RADIUS * Math.max(1, Math.tan(Math.toRadians(maxLatitudeAbs)));
+        setBounds(minLatitude, minLongitude, maxLatitude, maxLongitude, distance + bend);
     }
 
     @Override
@@ -97,11 +128,12 @@ public class GeofencePolyline extends GeofenceGeometry {
             }
             coordinates.add(coordinate);
         }
-
+        updateBounds();
     }
 
     public void setDistance(double distance) {
         this.distance = distance;
+        updateBounds();
     }
 
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2017 - 2019 Anton Tananaev (anton@traccar.org)
+ * Copyright 2017 - 2020 Anton Tananaev (anton@traccar.org)
  * Copyright 2017 Andrey Kunitsyn (andrey@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -16,19 +16,17 @@
  */
 package org.traccar.handler;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.netty.channel.ChannelHandler;
+import org.apache.commons.jexl2.Expression;
+import org.apache.commons.jexl2.JexlContext;
 import org.apache.commons.jexl2.JexlEngine;
 import org.apache.commons.jexl2.JexlException;
-import org.apache.commons.jexl2.MapContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.BaseDataHandler;
@@ -52,6 +50,9 @@ public class ComputedAttributesHandler extends BaseDataHandler {
 
     private final boolean includeDeviceAttributes;
 
+    private final Map<Long, CachedExpression> expressions = new ConcurrentHashMap<>();
+    private volatile long expressionsVersion;
+
     public ComputedAttributesHandler(
             Config config, IdentityManager identityManager, AttributesManager attributesManager) {
         this.identityManager = identityManager;
@@ -62,36 +63,144 @@ public class ComputedAttributesHandler extends BaseDataHandler {
         includeDeviceAttributes = config.getBoolean(Keys.PROCESSING_COMPUTED_ATTRIBUTES_DEVICE_ATTRIBUTES);
     }
 
-    private MapContext prepareContext(Position position) {
-        MapContext result = new MapContext();
-        if (includeDeviceAttributes) {
-            Device device = identityManager.getById(position.getDeviceId());
-            if (device != null) {
-                for (Object key : device.getAttributes().keySet()) {
-                    result.set((String) key, device.getAttributes().get(key));
-                }
+    private static final class PositionContext implements JexlContext {
+
+        private final Position position;
+        private final IdentityManager identityManager;
+        private Map<String, Object> deviceAttributes;
+        private Map<String, Object> variables;
+
+        private PositionContext(Position position, IdentityManager identityManager) {
+            this.position = position;
+            this.identityManager = identityManager;
+        }
+
+        private Map<String, Object> getDeviceAttributes() {
+            if (deviceAttributes == null) {
+                Device device = identityManager != null ? identityManager.getById(position.getDeviceId()) : null;
+                deviceAttributes = device != null ? device.getAttributes() : Collections.emptyMap();
             }
+            return deviceAttributes;
         }
-        Set<Method> methods = new HashSet<>(Arrays.asList(position.getClass().getMethods()));
-        methods.removeAll(Arrays.asList(Object.class.getMethods()));
-        for (Method method : methods) {
-            if (method.getName().startsWith("get") && method.getParameterTypes().length == 0) {
-                String name = Character.toLowerCase(method.getName().charAt(3)) + method.getName().substring(4);
 
-                try {
-                    if (!method.getReturnType().equals(Map.class)) {
-                        result.set(name, method.invoke(position));
-                    } else {
-                        for (Object key : ((Map) method.invoke(position)).keySet()) {
-                            result.set((String) key, ((Map) method.invoke(position)).get(key));
-                        }
-                    }
-                } catch (IllegalAccessException | InvocationTargetException error) {
-                    LOGGER.warn("Attribute reflection error", error);
-                }
+        private boolean hasProperty(String name) {
+            switch (name) {
+                case "id":
+                case "deviceId":
+                case "type":
+                case "protocol":
+                case "serverTime":
+                case "deviceTime":
+                case "fixTime":
+                case "outdated":
+                case "valid":
+                case "latitude":
+                case "longitude":
+                case "altitude":
+                case "speed":
+                case "course":
+                case "address":
+                case "accuracy":
+                case "network":
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        private Object getProperty(String name) {
+            switch (name) {
+                case "id":
+                    return position.getId();
+                case "deviceId":
+                    return position.getDeviceId();
+                case "type":
+                    return position.getType();
+                case "protocol":
+                    return position.getProtocol();
+                case "serverTime":
+                    return position.getServerTime();
+                case "deviceTime":
+                    return position.getDeviceTime();
+                case "fixTime":
+                    return position.getFixTime();
+                case "outdated":
+                    return position.getOutdated();
+                case "valid":
+                    return position.getValid();
+                case "latitude":
+                    return position.getLatitude();
+                case "longitude":
+                    return position.getLongitude();
+                case "altitude":
+                    return position.getAltitude();
+                case "speed":
+                    return position.getSpeed();
+                case "course":
+                    return position.getCourse();
+                case "address":
+                    return position.getAddress();
+                case "accuracy":
+                    return position.getAccuracy();
+                case "network":
+                    return position.getNetwork();
+                default:
+                    return null;
+            }
+        }
+
+        @Override
+        public Object get(String name) {
+            if (variables != null && variables.containsKey(name)) {
+                return variables.get(name);
+            } else if (hasProperty(name)) {
+                return getProperty(name);
+            } else if (position.getAttributes().containsKey(name)) {
+                return position.getAttributes().get(name);
+            } else if (identityManager != null) {
+                return getDeviceAttributes().get(name);
             }
+            return null;
         }
-        return result;
+
+        @Override
+        public void set(String name, Object value) {
+            if (variables == null) {
+                variables = new HashMap<>();
+            }
+            variables.put(name, value);
+        }
+
+        @Override
+        public boolean has(String name) {
+            return variables != null && variables.containsKey(name)
+                    || hasProperty(name)
+                    || position.getAttributes().containsKey(name)
+                    || identityManager != null && getDeviceAttributes().containsKey(name);
+        }
+
+    }
+
+    private static final class CachedExpression {
+
+        private final String text;
+        private final Expression expression;
+
+        private CachedExpression(String text, Expression expression) {
+            this.text = text;
+            this.expression = expression;
+        }
+
+    }
+
+    private Expression getExpression(Attribute attribute) {
+        CachedExpression cachedExpression = expressions.get(attribute.getId());
+        if (cachedExpression == null || !cachedExpression.text.equals(attribute.getExpression())) {
+            cachedExpression = new CachedExpression(
+                    attribute.getExpression(), engine.createExpression(attribute.getExpression()));
+            expressions.put(attribute.getId(), cachedExpression);
+        }
+        return cachedExpression.expression;
     }
 
     /**
@@ -99,11 +208,17 @@ public class ComputedAttributesHandler extends BaseDataHandler {
      */
     @Deprecated
     public Object computeAttribute(Attribute attribute, Position position) throws JexlException {
-        return engine.createExpression(attribute.getExpression()).evaluate(prepareContext(position));
+        return getExpression(attribute).evaluate(
+                new PositionContext(position, includeDeviceAttributes ? identityManager : null));
     }
 
     @Override
     protected Position handlePosition(Position position) {
+        long version = attributesManager.getVersion();
+        if (version != expressionsVersion) {
+            expressions.clear();
+            expressionsVersion = version;
+        }
         Collection<Attribute> attributes = attributesManager.getItems(
                 attributesManager.getAllDeviceItems(position.getDeviceId()));
         for (Attribute attribute : attributes) {
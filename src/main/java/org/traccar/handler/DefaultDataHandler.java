@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 - 2019 Anton Tananaev (anton@traccar.org)
+ * Copyright 2015 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,22 +15,148 @@
  */
 package org.traccar.handler;
 
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.BaseDataHandler;
+import org.traccar.MainEventHandler;
+import org.traccar.config.Config;
+import org.traccar.config.Keys;
+import org.traccar.database.BatchWriter;
 import org.traccar.database.DataManager;
+import org.traccar.database.MetricsManager;
+import org.traccar.database.RollupManager;
 import org.traccar.model.Position;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 @ChannelHandler.Sharable
 public class DefaultDataHandler extends BaseDataHandler {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultDataHandler.class);
 
+    private static final AttributeKey<List<ChannelHandler>> FOLLOWING_HANDLERS =
+            AttributeKey.valueOf("followingHandlers");
+
     private final DataManager dataManager;
+    private final RollupManager rollupManager;
+    private final BatchWriter<Position> batchWriter;
 
-    public DefaultDataHandler(DataManager dataManager) {
+    public DefaultDataHandler(
+            Config config, DataManager dataManager, RollupManager rollupManager, MetricsManager metricsManager) {
         this.dataManager = dataManager;
+        this.rollupManager = rollupManager;
+        int batchSize = config.getInteger(Keys.DATABASE_BATCH_SIZE);
+        if (batchSize > 0) {
+            batchWriter = new BatchWriter<>(
+                    dataManager, "positions", batchSize,
+                    config.getLong(Keys.DATABASE_BATCH_PERIOD, 100),
+                    config.getInteger(Keys.DATABASE_BATCH_QUEUE_SIZE, 10000));
+            if (metricsManager != null) {
+                metricsManager.gauge("traccar_database_queue_size", "Records waiting for batch insert",
+                        batchWriter::getQueueSize, "writer", "positions");
+                metricsManager.gauge("traccar_database_dropped_records", "Records dropped because queue was full",
+                        batchWriter::getDroppedCount, "writer", "positions");
+            }
+        } else {
+            batchWriter = null;
+        }
+    }
+
+    @Override
+    public void channelRead(final ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof Position && batchWriter != null) {
+            final Position position = (Position) msg;
+            final List<ChannelHandler> handlers = getFollowingHandlers(ctx);
+            boolean available = batchWriter.write(position, new BatchWriter.WriteCallback() {
+                @Override
+                public void onSuccess() {
+                    if (rollupManager != null) {
+                        rollupManager.registerPosition(position);
+                    }
+                    forwardPosition(ctx, handlers, position);
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    LOGGER.warn("Failed to store position", e);
+                    forwardPosition(ctx, handlers, position);
+                }
+            });
+            if (!available) {
+                // stop reading from the connection until the database catches up
+                final Channel channel = ctx.channel();
+                channel.config().setAutoRead(false);
+                batchWriter.whenAvailable(() -> channel.config().setAutoRead(true));
+            }
+        } else {
+            super.channelRead(ctx, msg);
+        }
+    }
+
+    /**
+     * Returns handlers following this one that can process positions without a channel context. The pipeline doesn't
+     * change after initialization, so the list is resolved once per channel.
+     */
+    private List<ChannelHandler> getFollowingHandlers(ChannelHandlerContext ctx) {
+        Attribute<List<ChannelHandler>> attribute = ctx.channel().attr(FOLLOWING_HANDLERS);
+        List<ChannelHandler> handlers = attribute.get();
+        if (handlers == null) {
+            handlers = new ArrayList<>();
+            boolean following = false;
+            for (Map.Entry<String, ChannelHandler> entry : ctx.pipeline()) {
+                ChannelHandler handler = entry.getValue();
+                if (following) {
+                    if (handler instanceof BaseDataHandler || handler instanceof MainEventHandler) {
+                        handlers.add(handler);
+                    }
+                } else if (handler == this) {
+                    following = true;
+                }
+            }
+            attribute.set(handlers);
+        }
+        return handlers;
+    }
+
+    /**
+     * Netty removes pipeline handlers when channel is closed, so if the connection was closed while the position was
+     * waiting in the queue, it can't be passed through the pipeline anymore. In that case following handlers process
+     * it directly, so events and device updates don't depend on the connection state. Handlers are removed by the same
+     * executor, so removed handlers are never called by the pipeline at the same time.
+     */
+    private void forwardPosition(
+            final ChannelHandlerContext ctx, final List<ChannelHandler> handlers, final Position position) {
+        ctx.executor().execute(() -> {
+            if (!ctx.isRemoved()) {
+                ctx.fireChannelRead(position);
+            } else {
+                processPosition(ctx.channel(), handlers, position);
+            }
+        });
+    }
+
+    private static void processPosition(Channel channel, List<ChannelHandler> handlers, Position position) {
+        for (ChannelHandler handler : handlers) {
+            try {
+                if (handler instanceof BaseDataHandler) {
+                    position = ((BaseDataHandler) handler).processPosition(position);
+                    if (position == null) {
+                        return;
+                    }
+                } else {
+                    ((MainEventHandler) handler).handlePosition(channel, position);
+                }
+            } catch (RuntimeException error) {
+                LOGGER.warn("Position processing error", error);
+            }
+        }
     }
 
     @Override
@@ -38,6 +164,9 @@ public class DefaultDataHandler extends BaseDataHandler {
 
         try {
             dataManager.addObject(position);
+            if (rollupManager != null) {
+                rollupManager.registerPosition(position);
+            }
         } catch (Exception error) {
             LOGGER.warn("Failed to store position", error);
         }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2014 - 2018 Anton Tananaev (anton@traccar.org)
+ * Copyright 2014 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -22,9 +22,13 @@ import org.traccar.BaseDataHandler;
 import org.traccar.Context;
 import org.traccar.config.Config;
 import org.traccar.config.Keys;
+import org.traccar.database.MetricsManager;
 import org.traccar.helper.UnitsConverter;
 import org.traccar.model.Position;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 @ChannelHandler.Sharable
 public class FilterHandler extends BaseDataHandler {
 
@@ -43,7 +47,15 @@ public class FilterHandler extends BaseDataHandler {
     private long skipLimit;
     private boolean skipAttributes;
 
+    private final MetricsManager metricsManager;
+    private final Map<String, MetricsManager.Counter> droppedCounters = new ConcurrentHashMap<>();
+
     public FilterHandler(Config config) {
+        this(config, null);
+    }
+
+    public FilterHandler(Config config, MetricsManager metricsManager) {
+        this.metricsManager = metricsManager;
         filterInvalid = config.getBoolean(Keys.FILTER_INVALID);
         filterZero = config.getBoolean(Keys.FILTER_ZERO);
         filterDuplicate = config.getBoolean(Keys.FILTER_DUPLICATE);
@@ -189,6 +201,15 @@ public class FilterHandler extends BaseDataHandler {
             message.append(Context.getIdentityManager().getById(position.getDeviceId()).getUniqueId());
 
             LOGGER.info(message.toString());
+
+            if (metricsManager != null) {
+                for (String reason : filterType.toString().split(" ")) {
+                    droppedCounters.computeIfAbsent(reason, key -> metricsManager.counter(
+                            "traccar_filter_dropped_total", "Positions dropped by filter",
+                            "reason", key.toLowerCase())).increment();
+                }
+            }
+
             return true;
         }
 
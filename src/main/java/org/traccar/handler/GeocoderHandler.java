@@ -1,5 +1,5 @@
 /*
- * Copyright 2012 - 2019 Anton Tananaev (anton@traccar.org)
+ * Copyright 2012 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -24,6 +24,7 @@ import org.traccar.Context;
 import org.traccar.config.Config;
 import org.traccar.config.Keys;
 import org.traccar.database.IdentityManager;
+import org.traccar.database.MetricsManager;
 import org.traccar.database.StatisticsManager;
 import org.traccar.geocoder.Geocoder;
 import org.traccar.model.Position;
@@ -40,16 +41,44 @@ public class GeocoderHandler extends ChannelInboundHandlerAdapter {
     private final boolean processInvalidPositions;
     private final int geocoderReuseDistance;
 
+    private final MetricsManager.Counter reuseCounter;
+    private final MetricsManager.Counter cacheCounter;
+    private final MetricsManager.Counter successCounter;
+    private final MetricsManager.Counter failureCounter;
+
     public GeocoderHandler(
-            Config config, Geocoder geocoder, IdentityManager identityManager, StatisticsManager statisticsManager) {
+            Config config, Geocoder geocoder, IdentityManager identityManager, StatisticsManager statisticsManager,
+            MetricsManager metricsManager) {
         this.geocoder = geocoder;
         this.identityManager = identityManager;
         this.statisticsManager = statisticsManager;
+        if (metricsManager != null) {
+            reuseCounter = createCounter(metricsManager, "reuse");
+            cacheCounter = createCounter(metricsManager, "cache");
+            successCounter = createCounter(metricsManager, "success");
+            failureCounter = createCounter(metricsManager, "failure");
+        } else {
+            reuseCounter = null;
+            cacheCounter = null;
+            successCounter = null;
+            failureCounter = null;
+        }
         ignorePositions = Context.getConfig().getBoolean(Keys.GEOCODER_IGNORE_POSITIONS);
         processInvalidPositions = config.getBoolean(Keys.GEOCODER_PROCESS_INVALID_POSITIONS);
         geocoderReuseDistance = config.getInteger(Keys.GEOCODER_REUSE_DISTANCE, 0);
     }
 
+    private static MetricsManager.Counter createCounter(MetricsManager metricsManager, String result) {
+        return metricsManager.counter(
+                "traccar_geocoder_requests_total", "Reverse geocoding results", "result", result);
+    }
+
+    private static void increment(MetricsManager.Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
     @Override
     public void channelRead(final ChannelHandlerContext ctx, Object message) {
         if (message instanceof Position && !ignorePositions) {
@@ -60,6 +89,7 @@ public class GeocoderHandler extends ChannelInboundHandlerAdapter {
                     if (lastPosition != null && lastPosition.getAddress() != null
                             && position.getDouble(Position.KEY_DISTANCE) <= geocoderReuseDistance) {
                         position.setAddress(lastPosition.getAddress());
+                        increment(reuseCounter);
                         ctx.fireChannelRead(position);
                         return;
                     }
@@ -69,10 +99,13 @@ public class GeocoderHandler extends ChannelInboundHandlerAdapter {
                     statisticsManager.registerGeocoderRequest();
                 }
 
+                final Thread caller = Thread.currentThread();
                 geocoder.getAddress(position.getLatitude(), position.getLongitude(),
                         new Geocoder.ReverseGeocoderCallback() {
                     @Override
                     public void onSuccess(String address) {
+                        // cached addresses are returned synchronously
+                        increment(Thread.currentThread() == caller ? cacheCounter : successCounter);
                         position.setAddress(address);
                         ctx.fireChannelRead(position);
                     }
@@ -80,6 +113,7 @@ public class GeocoderHandler extends ChannelInboundHandlerAdapter {
                     @Override
                     public void onFailure(Throwable e) {
                         LOGGER.warn("Geocoding failed", e);
+                        increment(failureCounter);
                         ctx.fireChannelRead(position);
                     }
                 });
@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 - 2018 Anton Tananaev (anton@traccar.org)
+ * Copyright 2015 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -22,6 +22,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.traccar.config.Config;
 import org.traccar.config.Keys;
+import org.traccar.database.MetricsManager;
 import org.traccar.database.StatisticsManager;
 import org.traccar.geolocation.GeolocationProvider;
 import org.traccar.model.Position;
@@ -35,10 +36,23 @@ public class GeolocationHandler extends ChannelInboundHandlerAdapter {
     private final StatisticsManager statisticsManager;
     private final boolean processInvalidPositions;
 
+    private final MetricsManager.Counter successCounter;
+    private final MetricsManager.Counter failureCounter;
+
     public GeolocationHandler(
-            Config config, GeolocationProvider geolocationProvider, StatisticsManager statisticsManager) {
+            Config config, GeolocationProvider geolocationProvider, StatisticsManager statisticsManager,
+            MetricsManager metricsManager) {
         this.geolocationProvider = geolocationProvider;
         this.statisticsManager = statisticsManager;
+        if (metricsManager != null) {
+            successCounter = metricsManager.counter(
+                    "traccar_geolocation_requests_total", "Geolocation results", "result", "success");
+            failureCounter = metricsManager.counter(
+                    "traccar_geolocation_requests_total", "Geolocation results", "result", "failure");
+        } else {
+            successCounter = null;
+            failureCounter = null;
+        }
         this.processInvalidPositions = config.getBoolean(Keys.GEOLOCATION_PROCESS_INVALID_POSITIONS);
     }
 
@@ -56,6 +70,9 @@ public class GeolocationHandler extends ChannelInboundHandlerAdapter {
                         new GeolocationProvider.LocationProviderCallback() {
                     @Override
                     public void onSuccess(double latitude, double longitude, double accuracy) {
+                        if (successCounter != null) {
+                            successCounter.increment();
+                        }
                         position.set(Position.KEY_APPROXIMATE, true);
                         position.setValid(true);
                         position.setFixTime(position.getDeviceTime());
@@ -71,6 +88,9 @@ public class GeolocationHandler extends ChannelInboundHandlerAdapter {
                     @Override
                     public void onFailure(Throwable e) {
                         LOGGER.warn("Geolocation network error", e);
+                        if (failureCounter != null) {
+                            failureCounter.increment();
+                        }
                         ctx.fireChannelRead(position);
                     }
                 });
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.handler;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.AttributeKey;
+import org.traccar.database.MetricsManager;
+import org.traccar.model.Position;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Probe inserted in front of a processing handler. It counts positions entering the handler and, when the position
+ * reaches the next probe, records the handler latency and counts the position as passed through. Positions dropped by
+ * a handler never reach the next probe. They are counted as dropped by that handler when they are evicted from the
+ * pending positions of the channel or when the channel is closed.
+ */
+public class MetricsHandler extends ChannelInboundHandlerAdapter {
+
+    private static final AttributeKey<Map<Position, Stage>> STAGES = AttributeKey.valueOf("metricsStages");
+
+    private static final int MAX_PENDING = 1000;
+
+    private static final class Stage {
+
+        private MetricsHandler handler;
+        private long time;
+
+        private void drop() {
+            if (handler != null) {
+                handler.dropCounter.increment();
+            }
+        }
+
+    }
+
+    private final boolean last;
+    private final MetricsManager.Counter inCounter;
+    private final MetricsManager.Counter outCounter;
+    private final MetricsManager.Counter dropCounter;
+    private final MetricsManager.Histogram histogram;
+
+    public MetricsHandler(MetricsManager metricsManager, String protocol, String handler, boolean last) {
+        this.last = last;
+        inCounter = metricsManager.counter(
+                "traccar_handler_messages_in_total", "Positions received by handler",
+                "protocol", protocol, "handler", handler);
+        outCounter = metricsManager.counter(
+                "traccar_handler_messages_out_total", "Positions passed on by handler",
+                "protocol", protocol, "handler", handler);
+        dropCounter = metricsManager.counter(
+                "traccar_handler_messages_dropped_total", "Positions dropped by handler",
+                "protocol", protocol, "handler", handler);
+        histogram = metricsManager.histogram(
+                "traccar_handler_duration_seconds", "Position processing latency by handler",
+                "protocol", protocol, "handler", handler);
+    }
+
+    private static Map<Position, Stage> getStages(ChannelHandlerContext ctx) {
+        Map<Position, Stage> stages = ctx.channel().attr(STAGES).get();
+        if (stages == null) {
+            stages = new LinkedHashMap<Position, Stage>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Position, Stage> eldest) {
+                    if (size() > MAX_PENDING) {
+                        eldest.getValue().drop();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+            Map<Position, Stage> existing = ctx.channel().attr(STAGES).setIfAbsent(stages);
+            if (existing != null) {
+                stages = existing;
+            }
+        }
+        return stages;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof Position) {
+            Position position = (Position) msg;
+            long now = System.nanoTime();
+            Map<Position, Stage> stages = getStages(ctx);
+            Stage stage;
+            synchronized (stages) {
+                stage = last ? stages.remove(position) : stages.get(position);
+                if (stage == null && !last) {
+                    stage = new Stage();
+                    stages.put(position, stage);
+                }
+            }
+            if (stage != null) {
+                if (stage.handler != null) {
+                    stage.handler.outCounter.increment();
+                    stage.handler.histogram.observe(now - stage.time);
+                }
+                stage.handler = this;
+                stage.time = now;
+            }
+            inCounter.increment();
+        }
+        super.channelRead(ctx, msg);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        Map<Position, Stage> stages = ctx.channel().attr(STAGES).getAndSet(null);
+        if (stages != null) {
+            synchronized (stages) {
+                stages.values().forEach(Stage::drop);
+                stages.clear();
+            }
+        }
+        super.channelInactive(ctx);
+    }
+
+}
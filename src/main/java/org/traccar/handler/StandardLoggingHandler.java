@@ -1,5 +1,5 @@
 /*
- * Copyright 2019 Anton Tananaev (anton@traccar.org)
+ * Copyright 2019 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -22,19 +22,41 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.traccar.BasePipelineFactory;
+import org.traccar.BaseProtocolDecoder;
+import org.traccar.Context;
+import org.traccar.DeviceSession;
 import org.traccar.NetworkMessage;
+import org.traccar.database.IdentityManager;
+import org.traccar.helper.FrameCapture;
 
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.HashMap;
+import java.util.Map;
 
 public class StandardLoggingHandler extends ChannelDuplexHandler {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(StandardLoggingHandler.class);
 
     private final String protocol;
+    private final int sampling;
+    private final FrameCapture frameCapture;
+    private final IdentityManager identityManager;
+
+    private BaseProtocolDecoder protocolDecoder;
+    private final long[] counts = new long[2];
+    private final Map<Long, long[]> deviceCounts = new HashMap<>();
 
     public StandardLoggingHandler(String protocol) {
+        this(protocol, 1, null);
+    }
+
+    public StandardLoggingHandler(String protocol, int sampling, FrameCapture frameCapture) {
         this.protocol = protocol;
+        this.sampling = sampling;
+        this.frameCapture = frameCapture;
+        this.identityManager = Context.getIdentityManager();
     }
 
     @Override
@@ -60,7 +82,33 @@ public class StandardLoggingHandler extends ChannelDuplexHandler {
         }
     }
 
+    private boolean isSampled(ChannelHandlerContext ctx, boolean downstream, SocketAddress remoteAddress) {
+        int deviceSampling = sampling;
+        long[] frameCounts = counts;
+        if (identityManager != null) {
+            if (protocolDecoder == null) {
+                protocolDecoder = BasePipelineFactory.getHandler(ctx.pipeline(), BaseProtocolDecoder.class);
+            }
+            if (protocolDecoder != null) {
+                DeviceSession deviceSession = protocolDecoder.getDeviceSession(ctx.channel(), remoteAddress);
+                if (deviceSession != null) {
+                    deviceSampling = identityManager.lookupAttributeInteger(
+                            deviceSession.getDeviceId(), "logger.frameSampling", sampling, false, false);
+                    frameCounts = deviceCounts.computeIfAbsent(deviceSession.getDeviceId(), key -> new long[2]);
+                }
+            }
+        }
+        return deviceSampling > 0 && frameCounts[downstream ? 1 : 0]++ % deviceSampling == 0;
+    }
+
     public void log(ChannelHandlerContext ctx, boolean downstream, SocketAddress remoteAddress, ByteBuf buf) {
+        if (frameCapture != null) {
+            frameCapture.capture(protocol, ctx.channel().id().asShortText(), downstream, remoteAddress, buf);
+        }
+        if (!LOGGER.isInfoEnabled() || !isSampled(ctx, downstream, remoteAddress)) {
+            return;
+        }
+
         StringBuilder message = new StringBuilder();
 
         message.append("[").append(ctx.channel().id().asShortText()).append(": ");
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.handler.events;
+
+import org.traccar.database.DeviceManager;
+import org.traccar.database.IdentityManager;
+import org.traccar.model.DeviceState;
+import org.traccar.model.Position;
+import org.traccar.reports.model.TripsConfig;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+/**
+ * Splits positions of a device into trips and stops using the motion rules of {@link MotionEventHandler}.
+ */
+public class MotionSegmentDetector {
+
+    public static final class Segment {
+
+        private final boolean motion;
+        private final Position startPosition;
+        private final Position endPosition;
+        private final Position eventPosition;
+        private final int positionCount;
+        private final double speedSum;
+        private final double maxSpeed;
+        private final long ignitionTime;
+
+        private Segment(
+                boolean motion, PositionWindow positions, int startIndex, int endIndex, Position eventPosition) {
+            this.motion = motion;
+            this.eventPosition = eventPosition;
+            startPosition = positions.get(startIndex);
+            endPosition = positions.get(endIndex);
+            positionCount = endIndex - startIndex + 1;
+            double speedSum = 0;
+            double maxSpeed = 0;
+            long ignitionTime = 0;
+            for (int i = startIndex; i <= endIndex; i++) {
+                Position position = positions.get(i);
+                speedSum += position.getSpeed();
+                maxSpeed = Math.max(maxSpeed, position.getSpeed());
+                if (i > startIndex && position.getBoolean(Position.KEY_IGNITION)
+                        && positions.get(i - 1).getBoolean(Position.KEY_IGNITION)) {
+                    ignitionTime += position.getFixTime().getTime() - positions.get(i - 1).getFixTime().getTime();
+                }
+            }
+            this.speedSum = speedSum;
+            this.maxSpeed = maxSpeed;
+            this.ignitionTime = ignitionTime;
+        }
+
+        /**
+         * Returns true for trips and false for stops.
+         */
+        public boolean getMotion() {
+            return motion;
+        }
+
+        public Position getStartPosition() {
+            return startPosition;
+        }
+
+        public Position getEndPosition() {
+            return endPosition;
+        }
+
+        /**
+         * Position that confirmed the end of the segment, null if the segment was still in progress when positions
+         * ran out.
+         */
+        public Position getEventPosition() {
+            return eventPosition;
+        }
+
+        public int getPositionCount() {
+            return positionCount;
+        }
+
+        public double getSpeedSum() {
+            return speedSum;
+        }
+
+        public double getMaxSpeed() {
+            return maxSpeed;
+        }
+
+        /**
+         * Time between consecutive positions with ignition on.
+         */
+        public long getIgnitionTime() {
+            return ignitionTime;
+        }
+
+    }
+
+    private final MotionEventHandler motionHandler;
+    private final TripsConfig tripsConfig;
+
+    public MotionSegmentDetector(
+            IdentityManager identityManager, DeviceManager deviceManager, TripsConfig tripsConfig) {
+        motionHandler = new MotionEventHandler(identityManager, deviceManager, tripsConfig);
+        this.tripsConfig = tripsConfig;
+    }
+
+    private boolean isMoving(PositionWindow positions, int index) {
+        if (tripsConfig.getMinimalNoDataDuration() > 0) {
+            boolean beforeGap = positions.contains(index + 1)
+                    && positions.get(index + 1).getFixTime().getTime() - positions.get(index).getFixTime().getTime()
+                    >= tripsConfig.getMinimalNoDataDuration();
+            boolean afterGap = index > 0
+                    && positions.get(index).getFixTime().getTime() - positions.get(index - 1).getFixTime().getTime()
+                    >= tripsConfig.getMinimalNoDataDuration();
+            if (beforeGap || afterGap) {
+                return false;
+            }
+        }
+        if (positions.get(index).getAttributes().containsKey(Position.KEY_MOTION)
+                && positions.get(index).getAttributes().get(Position.KEY_MOTION) instanceof Boolean) {
+            return positions.get(index).getBoolean(Position.KEY_MOTION);
+        } else {
+            return positions.get(index).getSpeed() > tripsConfig.getSpeedThreshold();
+        }
+    }
+
+    /**
+     * Detects trips and stops in positions ordered by fix time. Segments are passed to the handler as soon as their
+     * end is confirmed. Segments still in progress after the last position are passed only when {@code complete} is
+     * set, the same way they are shown at the end of a report.
+     *
+     * @return first position that can still become part of a segment, later detection can be resumed from it, or
+     * null if there are no positions
+     */
+    public Position detect(Iterator<Position> positionIterator, boolean complete, Consumer<Segment> handler) {
+
+        PositionWindow positions = new PositionWindow(positionIterator);
+        if (!positions.contains(0)) {
+            return null;
+        }
+
+        DeviceState deviceState = new DeviceState();
+        deviceState.setMotionState(isMoving(positions, 0));
+        Tracker[] trackers = {new Tracker(true, deviceState), new Tracker(false, deviceState)};
+
+        int retainIndex = 0;
+        int i;
+        for (i = 0; positions.contains(i); i++) {
+            boolean event = motionHandler.updateMotionState(
+                    deviceState, positions.get(i), isMoving(positions, i)) != null;
+            retainIndex = i;
+            for (Tracker tracker : trackers) {
+                tracker.update(positions, i, deviceState, event, handler);
+                retainIndex = tracker.retain(retainIndex);
+            }
+            positions.release(retainIndex);
+        }
+
+        if (complete) {
+            for (Tracker tracker : trackers) {
+                tracker.complete(positions, i - 1, handler);
+            }
+        }
+
+        return positions.get(retainIndex);
+    }
+
+    /**
+     * Tracks start of the current segment of one type and start of the segment that may follow it.
+     */
+    private static final class Tracker {
+
+        private final boolean motion;
+        private int startEventIndex;
+        private int startNoEventIndex = -1;
+
+        private Tracker(boolean motion, DeviceState deviceState) {
+            this.motion = motion;
+            startEventIndex = motion == deviceState.getMotionState() ? 0 : -1;
+        }
+
+        public void update(
+                PositionWindow positions, int index, DeviceState deviceState, boolean event,
+                Consumer<Segment> handler) {
+            boolean sameState = motion == deviceState.getMotionState();
+            boolean pending = deviceState.getMotionPosition() != null;
+            if (startEventIndex == -1 && (!sameState && pending || sameState && event)) {
+                startEventIndex = index;
+                startNoEventIndex = -1;
+            } else if (!sameState && startEventIndex != -1 && !pending && !event) {
+                startEventIndex = -1;
+            }
+            if (startNoEventIndex == -1 && (sameState && pending || !sameState && event)) {
+                startNoEventIndex = index;
+            } else if (startNoEventIndex != -1 && !pending && !event) {
+                startNoEventIndex = -1;
+            }
+            if (startEventIndex != -1 && startNoEventIndex != -1 && event && !sameState) {
+                handler.accept(new Segment(
+                        motion, positions, startEventIndex, startNoEventIndex, positions.get(index)));
+                startEventIndex = -1;
+            }
+        }
+
+        public void complete(PositionWindow positions, int lastIndex, Consumer<Segment> handler) {
+            if (startEventIndex != -1 && (startNoEventIndex != -1 || !motion)) {
+                handler.accept(new Segment(
+                        motion, positions, startEventIndex, startNoEventIndex != -1 ? startNoEventIndex : lastIndex,
+                        null));
+            }
+        }
+
+        public int retain(int index) {
+            if (startEventIndex != -1) {
+                index = Math.min(index, startEventIndex);
+            }
+            if (startNoEventIndex != -1) {
+                index = Math.min(index, startNoEventIndex);
+            }
+            return index;
+        }
+
+    }
+
+    /**
+     * Sliding window over positions addressed by their index in the whole sequence. Only positions that can still be
+     * part of a trip or stop are kept in memory.
+     */
+    private static final class PositionWindow {
+
+        private final Iterator<Position> iterator;
+        private final ArrayList<Position> buffer = new ArrayList<>();
+        private int offset;
+
+        private PositionWindow(Iterator<Position> iterator) {
+            this.iterator = iterator;
+        }
+
+        public boolean contains(int index) {
+            while (offset + buffer.size() <= index && iterator.hasNext()) {
+                buffer.add(iterator.next());
+            }
+            return index >= offset && index < offset + buffer.size();
+        }
+
+        public Position get(int index) {
+            return buffer.get(index - offset);
+        }
+
+        public void release(int index) {
+            int count = index - offset;
+            if (count > 0 && count >= buffer.size() / 2) {
+                buffer.subList(0, count).clear();
+                offset = index;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.helper;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.traccar.config.Config;
+import org.traccar.config.Keys;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Binary capture of raw frames. Frames are copied on the calling thread and written to hourly files by a background
+ * thread. Each file starts with a magic number and a version, followed by records of frame time, direction, protocol,
+ * channel id, remote address and frame data. If the writer can't keep up, frames are dropped instead of blocking.
+ */
+public class FrameCapture {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FrameCapture.class);
+
+    public static final int MAGIC = 0x54434150; // TCAP
+    public static final int VERSION = 1;
+
+    private static final int QUEUE_SIZE = 65536;
+    private static final int BUFFER_SIZE = 65536;
+
+    public static class Frame {
+
+        private final long time;
+        private final boolean downstream;
+        private final String protocol;
+        private final String channel;
+        private final String remoteAddress;
+        private final byte[] data;
+
+        public Frame(
+                long time, boolean downstream, String protocol, String channel, String remoteAddress, byte[] data) {
+            this.time = time;
+            this.downstream = downstream;
+            this.protocol = protocol;
+            this.channel = channel;
+            this.remoteAddress = remoteAddress;
+            this.data = data;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public boolean getDownstream() {
+            return downstream;
+        }
+
+        public String getProtocol() {
+            return protocol;
+        }
+
+        public String getChannel() {
+            return channel;
+        }
+
+        public String getRemoteAddress() {
+            return remoteAddress;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+    }
+
+    private final File directory;
+    private final long fileSize;
+    private final BlockingQueue<Frame> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final AtomicLong dropped = new AtomicLong();
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMddHH");
+
+    private DataOutputStream output;
+    private String suffix;
+    private long written;
+
+    public FrameCapture(Config config) {
+        directory = new File(config.getString(Keys.LOGGER_CAPTURE_PATH));
+        fileSize = config.getInteger(Keys.LOGGER_CAPTURE_FILE_SIZE, 1024) * 1024L * 1024L;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            LOGGER.warn("Failed to create capture directory {}", directory);
+        }
+        Thread thread = new Thread(this::run, "frame-capture");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void capture(String protocol, String channel, boolean downstream, SocketAddress remoteAddress, ByteBuf buf) {
+        String address = "";
+        if (remoteAddress instanceof InetSocketAddress) {
+            InetSocketAddress inetAddress = (InetSocketAddress) remoteAddress;
+            address = inetAddress.getHostString() + ":" + inetAddress.getPort();
+        }
+        Frame frame = new Frame(
+                System.currentTimeMillis(), downstream, protocol, channel, address, ByteBufUtil.getBytes(buf));
+        if (!queue.offer(frame)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Frame frame = queue.take();
+                do {
+                    write(frame);
+                    frame = queue.poll();
+                } while (frame != null);
+                flush();
+                long count = dropped.getAndSet(0);
+                if (count > 0) {
+                    LOGGER.warn("Frame capture dropped {} frames", count);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(Frame frame) {
+        try {
+            String frameSuffix = dateFormat.format(new Date(frame.getTime()));
+            if (output != null && (!frameSuffix.equals(suffix) || written >= fileSize)) {
+                output.close();
+                output = null;
+            }
+            if (output == null) {
+                open(frameSuffix);
+            }
+            writeFrame(output, frame);
+            written += frame.getData().length;
+        } catch (IOException e) {
+            LOGGER.warn("Frame capture error", e);
+            close();
+        }
+    }
+
+    private void open(String frameSuffix) throws IOException {
+        File file = new File(directory, "capture-" + frameSuffix + ".bin");
+        for (int index = 1; file.exists(); index++) {
+            file = new File(directory, "capture-" + frameSuffix + "-" + index + ".bin");
+        }
+        output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        output.writeInt(MAGIC);
+        output.writeByte(VERSION);
+        suffix = frameSuffix;
+        written = 0;
+    }
+
+    private void flush() {
+        if (output != null) {
+            try {
+                output.flush();
+            } catch (IOException e) {
+                LOGGER.warn("Frame capture error", e);
+                close();
+            }
+        }
+    }
+
+    private void close() {
+        if (output != null) {
+            try {
+                output.close();
+            } catch (IOException e) {
+                LOGGER.warn("Frame capture error", e);
+            }
+            output = null;
+        }
+    }
+
+    private static void writeFrame(DataOutputStream output, Frame frame) throws IOException {
+        output.writeLong(frame.getTime());
+        output.writeBoolean(frame.getDownstream());
+        output.writeUTF(frame.getProtocol());
+        output.writeUTF(frame.getChannel());
+        output.writeUTF(frame.getRemoteAddress());
+        output.writeInt(frame.getData().length);
+        output.write(frame.getData());
+    }
+
+    public static void write(OutputStream stream, Iterable<Frame> frames) throws IOException {
+        DataOutputStream output = new DataOutputStream(stream);
+        output.writeInt(MAGIC);
+        output.writeByte(VERSION);
+        for (Frame frame : frames) {
+            writeFrame(output, frame);
+        }
+        output.flush();
+    }
+
+    public static void read(InputStream stream, Consumer<Frame> consumer) throws IOException {
+        DataInputStream input = new DataInputStream(stream);
+        if (input.readInt() != MAGIC || input.readUnsignedByte() != VERSION) {
+            throw new IOException("Unsupported capture file format");
+        }
+        while (true) {
+            long time;
+            try {
+                time = input.readLong();
+            } catch (EOFException e) {
+                break;
+            }
+            boolean downstream = input.readBoolean();
+            String protocol = input.readUTF();
+            String channel = input.readUTF();
+            String remoteAddress = input.readUTF();
+            byte[] data = new byte[input.readInt()];
+            input.readFully(data);
+            consumer.accept(new Frame(time, downstream, protocol, channel, remoteAddress, data));
+        }
+    }
+
+}
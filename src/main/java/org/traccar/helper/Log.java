@@ -1,5 +1,5 @@
 /*
- * Copyright 2012 - 2019 Anton Tananaev (anton@traccar.org)
+ * Copyright 2012 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,6 +16,7 @@
 package org.traccar.helper;
 
 import org.traccar.config.Config;
+import org.traccar.config.Keys;
 
 import java.io.BufferedWriter;
 import java.io.File;
@@ -29,6 +30,9 @@ import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Formatter;
 import java.util.logging.Handler;
@@ -108,6 +112,64 @@ public final class Log {
 
     }
 
+    private static class AsyncHandler extends Handler {
+
+        private final Handler handler;
+        private final BlockingQueue<LogRecord> queue;
+        private final AtomicLong dropped = new AtomicLong();
+
+        AsyncHandler(Handler handler, int queueSize) {
+            this.handler = handler;
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+            Thread thread = new Thread(this::run, "logger");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void publish(LogRecord record) {
+            if (isLoggable(record)) {
+                while (!queue.offer(record)) {
+                    if (queue.poll() != null) {
+                        dropped.incrementAndGet();
+                    }
+                }
+            }
+        }
+
+        private void run() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    handler.publish(queue.take());
+                    long count = dropped.getAndSet(0);
+                    if (count > 0) {
+                        LogRecord record = new LogRecord(Level.WARNING, "Logger dropped " + count + " records");
+                        record.setLoggerName(Log.class.getName());
+                        handler.publish(record);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void flush() {
+            LogRecord record;
+            while ((record = queue.poll()) != null) {
+                handler.publish(record);
+            }
+            handler.flush();
+        }
+
+        @Override
+        public void close() throws SecurityException {
+            flush();
+            handler.close();
+        }
+
+    }
+
     public static class LogFormatter extends Formatter {
 
         private boolean fullStackTraces;
@@ -173,7 +235,7 @@ public final class Log {
             }
             path = new File(logsPath, "tracker-server.log").getPath();
         }
-        setupLogger(path == null, path, Level.WARNING.getName(), false, true);
+        setupLogger(path == null, path, Level.WARNING.getName(), false, true, 0);
     }
 
     public static void setupLogger(Config config) {
@@ -182,11 +244,13 @@ public final class Log {
                 config.getString("logger.file"),
                 config.getString("logger.level"),
                 config.getBoolean("logger.fullStackTraces"),
-                config.getBoolean("logger.rotate"));
+                config.getBoolean("logger.rotate"),
+                config.getBoolean(Keys.LOGGER_ASYNC) ? config.getInteger(Keys.LOGGER_ASYNC_QUEUE_SIZE, 8192) : 0);
     }
 
     private static void setupLogger(
-            boolean console, String file, String levelString, boolean fullStackTraces, boolean rotate) {
+            boolean console, String file, String levelString, boolean fullStackTraces, boolean rotate,
+            int asyncQueueSize) {
 
         Logger rootLogger = Logger.getLogger("");
         for (Handler handler : rootLogger.getHandlers()) {
@@ -207,6 +271,13 @@ public final class Log {
         handler.setLevel(level);
         handler.setFilter(record -> record != null && !record.getLoggerName().startsWith("sun"));
 
+        if (asyncQueueSize > 0) {
+            Handler syncHandler = handler;
+            handler = new AsyncHandler(syncHandler, asyncQueueSize);
+            handler.setLevel(level);
+            handler.setFilter(syncHandler.getFilter());
+        }
+
         rootLogger.addHandler(handler);
     }
 
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.helper;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Immutable set of identifiers backed by a sorted primitive array. It uses 8 bytes per element instead of a boxed
+ * value and a hash table entry, and can be shared between threads without synchronization. Modifications return a new
+ * set, so it is intended for data that is read much more often than it is changed.
+ */
+public final class LongSet extends AbstractSet<Long> {
+
+    public static final LongSet EMPTY = new LongSet(new long[0]);
+
+    private final long[] values;
+
+    private LongSet(long[] values) {
+        this.values = values;
+    }
+
+    private static LongSet wrap(long[] values, int length) {
+        if (length == 0) {
+            return EMPTY;
+        }
+        return new LongSet(length == values.length ? values : Arrays.copyOf(values, length));
+    }
+
+    public static LongSet of(Collection<Long> collection) {
+        if (collection instanceof LongSet) {
+            return (LongSet) collection;
+        }
+        long[] values = new long[collection.size()];
+        int length = 0;
+        for (long value : collection) {
+            values[length++] = value;
+        }
+        Arrays.sort(values, 0, length);
+        int unique = 0;
+        for (int i = 0; i < length; i++) {
+            if (unique == 0 || values[unique - 1] != values[i]) {
+                values[unique++] = values[i];
+            }
+        }
+        return wrap(values, unique);
+    }
+
+    public boolean contains(long value) {
+        return Arrays.binarySearch(values, value) >= 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Long && contains(((Long) o).longValue());
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < values.length;
+            }
+
+            @Override
+            public long nextLong() {
+                if (index >= values.length) {
+                    throw new NoSuchElementException();
+                }
+                return values[index++];
+            }
+        };
+    }
+
+    public LongSet with(long value) {
+        int index = Arrays.binarySearch(values, value);
+        if (index >= 0) {
+            return this;
+        }
+        index = -index - 1;
+        long[] result = new long[values.length + 1];
+        System.arraycopy(values, 0, result, 0, index);
+        result[index] = value;
+        System.arraycopy(values, index, result, index + 1, values.length - index);
+        return new LongSet(result);
+    }
+
+    public LongSet without(long value) {
+        int index = Arrays.binarySearch(values, value);
+        if (index < 0) {
+            return this;
+        }
+        long[] result = new long[values.length - 1];
+        System.arraycopy(values, 0, result, 0, index);
+        System.arraycopy(values, index + 1, result, index, values.length - index - 1);
+        return wrap(result, result.length);
+    }
+
+    public LongSet union(LongSet other) {
+        if (other.values.length == 0) {
+            return this;
+        } else if (values.length == 0) {
+            return other;
+        }
+        long[] result = new long[values.length + other.values.length];
+        int i = 0;
+        int j = 0;
+        int length = 0;
+        while (i < values.length && j < other.values.length) {
+            if (values[i] < other.values[j]) {
+                result[length++] = values[i++];
+            } else if (values[i] > other.values[j]) {
+                result[length++] = other.values[j++];
+            } else {
+                result[length++] = values[i++];
+                j++;
+            }
+        }
+        while (i < values.length) {
+            result[length++] = values[i++];
+        }
+        while (j < other.values.length) {
+            result[length++] = other.values[j++];
+        }
+        return wrap(result, length);
+    }
+
+    public LongSet difference(LongSet other) {
+        if (values.length == 0 || other.values.length == 0) {
+            return this;
+        }
+        long[] result = new long[values.length];
+        int j = 0;
+        int length = 0;
+        for (long value : values) {
+            while (j < other.values.length && other.values[j] < value) {
+                j++;
+            }
+            if (j >= other.values.length || other.values[j] != value) {
+                result[length++] = value;
+            }
+        }
+        return length == values.length ? this : wrap(result, length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof LongSet) {
+            return Arrays.equals(values, ((LongSet) o).values);
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        int hashCode = 0;
+        for (long value : values) {
+            hashCode += Long.hashCode(value);
+        }
+        return hashCode;
+    }
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2017 Anton Tananaev (anton@traccar.org)
+ * Copyright 2017 - 2020 Anton Tananaev (anton@traccar.org)
  * Copyright 2017 Andrey Kunitsyn (andrey@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -29,6 +29,13 @@ public class Permission {
     private Class<?> propertyClass;
     private long propertyId;
 
+    public Permission(Class<?> ownerClass, long ownerId, Class<?> propertyClass, long propertyId) {
+        this.ownerClass = ownerClass;
+        this.ownerId = ownerId;
+        this.propertyClass = propertyClass;
+        this.propertyId = propertyId;
+    }
+
     public Permission(LinkedHashMap<String, Long> permissionMap) throws ClassNotFoundException {
         Iterator<Map.Entry<String, Long>> iterator = permissionMap.entrySet().iterator();
         String owner = iterator.next().getKey();
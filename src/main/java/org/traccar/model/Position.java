@@ -1,5 +1,5 @@
 /*
- * Copyright 2012 - 2016 Anton Tananaev (anton@traccar.org)
+ * Copyright 2012 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,6 +16,7 @@
 package org.traccar.model;
 
 import java.util.Date;
+import java.util.LinkedHashMap;
 
 import org.traccar.database.QueryIgnore;
 
@@ -150,6 +151,30 @@ public class Position extends Message {
         this.serverTime = new Date();
     }
 
+    /**
+     * Creates a shallow copy. Attributes are copied into a new map, so they can be changed independently.
+     */
+    public Position(Position other) {
+        setId(other.getId());
+        setDeviceId(other.getDeviceId());
+        setType(other.getType());
+        setAttributes(new LinkedHashMap<>(other.getAttributes()));
+        protocol = other.protocol;
+        serverTime = other.serverTime;
+        deviceTime = other.deviceTime;
+        fixTime = other.fixTime;
+        outdated = other.outdated;
+        valid = other.valid;
+        latitude = other.latitude;
+        longitude = other.longitude;
+        altitude = other.altitude;
+        speed = other.speed;
+        course = other.course;
+        address = other.address;
+        accuracy = other.accuracy;
+        network = other.network;
+    }
+
     private String protocol;
 
     public String getProtocol() {
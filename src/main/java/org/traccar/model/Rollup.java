@@ -0,0 +1,172 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.model;
+
+import java.util.Date;
+
+/**
+ * Aggregated position data of a device for a single day used to speed up summary, trips and stops reports.
+ */
+public class Rollup extends BaseModel {
+
+    private long deviceId;
+
+    public long getDeviceId() {
+        return deviceId;
+    }
+
+    public void setDeviceId(long deviceId) {
+        this.deviceId = deviceId;
+    }
+
+    private Date dayStart;
+
+    public Date getDayStart() {
+        return dayStart;
+    }
+
+    public void setDayStart(Date dayStart) {
+        this.dayStart = dayStart;
+    }
+
+    private long firstPositionId;
+
+    public long getFirstPositionId() {
+        return firstPositionId;
+    }
+
+    public void setFirstPositionId(long firstPositionId) {
+        this.firstPositionId = firstPositionId;
+    }
+
+    private long lastPositionId;
+
+    public long getLastPositionId() {
+        return lastPositionId;
+    }
+
+    public void setLastPositionId(long lastPositionId) {
+        this.lastPositionId = lastPositionId;
+    }
+
+    private Date firstTime;
+
+    public Date getFirstTime() {
+        return firstTime;
+    }
+
+    public void setFirstTime(Date firstTime) {
+        this.firstTime = firstTime;
+    }
+
+    private Date lastTime;
+
+    public Date getLastTime() {
+        return lastTime;
+    }
+
+    public void setLastTime(Date lastTime) {
+        this.lastTime = lastTime;
+    }
+
+    private boolean firstIgnition;
+
+    public boolean getFirstIgnition() {
+        return firstIgnition;
+    }
+
+    public void setFirstIgnition(boolean firstIgnition) {
+        this.firstIgnition = firstIgnition;
+    }
+
+    private boolean lastIgnition;
+
+    public boolean getLastIgnition() {
+        return lastIgnition;
+    }
+
+    public void setLastIgnition(boolean lastIgnition) {
+        this.lastIgnition = lastIgnition;
+    }
+
+    private int positionCount;
+
+    public int getPositionCount() {
+        return positionCount;
+    }
+
+    public void setPositionCount(int positionCount) {
+        this.positionCount = positionCount;
+    }
+
+    private double speedSum;
+
+    public double getSpeedSum() {
+        return speedSum;
+    }
+
+    public void setSpeedSum(double speedSum) {
+        this.speedSum = speedSum;
+    }
+
+    private double maxSpeed;
+
+    public double getMaxSpeed() {
+        return maxSpeed;
+    }
+
+    public void setMaxSpeed(double maxSpeed) {
+        this.maxSpeed = maxSpeed;
+    }
+
+    private long engineHours;
+
+    public long getEngineHours() {
+        return engineHours;
+    }
+
+    public void setEngineHours(long engineHours) {
+        this.engineHours = engineHours;
+    }
+
+    private Date openTime;
+
+    /**
+     * Start of the trip or stop that was still in progress at the end of the day. Detection for the next day resumes
+     * from this time.
+     */
+    public Date getOpenTime() {
+        return openTime;
+    }
+
+    public void setOpenTime(Date openTime) {
+        this.openTime = openTime;
+    }
+
+    private RollupSegment[] segments;
+
+    /**
+     * Trips and stops which end was confirmed during the day, null if the rollup was calculated without segments.
+     */
+    public RollupSegment[] getSegments() {
+        return segments;
+    }
+
+    public void setSegments(RollupSegment[] segments) {
+        this.segments = segments;
+    }
+
+}
@@ -0,0 +1,388 @@
+/*
+ * Copyright 2020 Anton Tananaev (anton@traccar.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.notification;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.traccar.config.Config;
+import org.traccar.config.Keys;
+import org.traccar.database.DataManager;
+import org.traccar.database.MetricsManager;
+import org.traccar.model.Event;
+import org.traccar.model.Position;
+import org.traccar.model.QueuedNotification;
+import org.traccar.notificators.Notificator;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Delivers notifications using a shared pool of threads. Each notificator has its own bounded queue and concurrency
+ * limit, so a slow notificator can not take over all delivery threads. Failed deliveries are retried with exponential
+ * backoff and pending retries are stored in the database. Notificators with a digest period combine all events for a
+ * user within the period into a single message.
+ * <p>
+ * Callers are never blocked. Notifications that don't fit into a full queue wait for another attempt together with
+ * retries. The number of waiting notifications kept in memory is limited. Above the limit, notifications are moved to
+ * the database and restored later. Notifications that can't be stored, such as digests, are dropped and counted.
+ */
+public final class NotificationDelivery {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NotificationDelivery.class);
+
+    private static final int MAX_BACKOFF_SHIFT = 16;
+
+    private static final long MIN_RESTORE_PERIOD = 1000;
+
+    private final Config config;
+    private final DataManager dataManager;
+    private final int threads;
+    private final int queueSize;
+    private final int retryAttempts;
+    private final long retryDelay;
+    private final int pendingLimit;
+    private final boolean persistent;
+
+    private final AtomicInteger scheduled = new AtomicInteger();
+    private final Set<Long> scheduledRecords = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, Channel> channels = new HashMap<>();
+    private final Map<Notificator, Channel> notificatorChannels = new IdentityHashMap<>();
+
+    private ExecutorService executor;
+    private ScheduledExecutorService scheduler;
+
+    private static final class Delivery {
+
+        private final long userId;
+        private final List<Event> events = new ArrayList<>(1);
+        private final List<Position> positions = new ArrayList<>(1);
+
+        private QueuedNotification record;
+        private int attempts;
+
+        private Delivery(long userId, Event event, Position position) {
+            this.userId = userId;
+            events.add(event);
+            positions.add(position);
+        }
+
+    }
+
+    private final class Channel {
+
+        private final String type;
+        private final Notificator notificator;
+        private final int concurrency;
+        private final long digestPeriod;
+        private final BlockingQueue<Delivery> queue;
+        private final AtomicInteger active = new AtomicInteger();
+        private final LongAdder dropped = new LongAdder();
+        private final Map<Long, Delivery> digests = new HashMap<>();
+
+        private Channel(String type, Notificator notificator, int concurrency, long digestPeriod) {
+            this.type = type;
+            this.notificator = notificator;
+            this.concurrency = concurrency;
+            this.digestPeriod = digestPeriod;
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+        }
+
+        private void submit(Delivery delivery) {
+            if (digestPeriod > 0) {
+                synchronized (digests) {
+                    Delivery digest = digests.get(delivery.userId);
+                    if (digest != null) {
+                        digest.events.addAll(delivery.events);
+                        digest.positions.addAll(delivery.positions);
+                        return;
+                    }
+                    digests.put(delivery.userId, delivery);
+                }
+                scheduler.schedule(() -> flush(delivery.userId), digestPeriod, TimeUnit.MILLISECONDS);
+            } else if (!offer(delivery)) {
+                NotificationDelivery.this.schedule(this, delivery, retryDelay);
+            }
+        }
+
+        private void flush(long userId) {
+            Delivery delivery;
+            synchronized (digests) {
+                delivery = digests.remove(userId);
+            }
+            if (delivery != null && !offer(delivery)) {
+                NotificationDelivery.this.schedule(this, delivery, retryDelay);
+            }
+        }
+
+        private boolean offer(Delivery delivery) {
+            if (queue.offer(delivery)) {
+                schedule();
+                return true;
+            }
+            return false;
+        }
+
+        private void schedule() {
+            int current = active.get();
+            while (current < concurrency && !queue.isEmpty()) {
+                if (active.compareAndSet(current, current + 1)) {
+                    executor.execute(this::drain);
+                }
+                current = active.get();
+            }
+        }
+
+        private void drain() {
+            try {
+                Delivery delivery = queue.poll();
+                while (delivery != null) {
+                    deliver(this, delivery);
+                    delivery = queue.poll();
+                }
+            } finally {
+                active.decrementAndGet();
+                schedule();
+            }
+        }
+
+    }
+
+    public NotificationDelivery(Config config, DataManager dataManager) {
+        this.config = config;
+        this.dataManager = dataManager;
+        threads = Math.max(config.getInteger(Keys.NOTIFICATOR_THREADS, 10), 1);
+        queueSize = Math.max(config.getInteger(Keys.NOTIFICATOR_QUEUE_SIZE, 1000), 1);
+        retryAttempts = config.getInteger(Keys.NOTIFICATOR_RETRY_ATTEMPTS, 5);
+        retryDelay = TimeUnit.SECONDS.toMillis(config.getLong(Keys.NOTIFICATOR_RETRY_DELAY, 60));
+        pendingLimit = Math.max(config.getInteger(Keys.NOTIFICATOR_PENDING_LIMIT, 10000), 1);
+        persistent = retryAttempts > 0 && dataManager != null;
+    }
+
+    public void register(String type, Notificator notificator) {
+        int concurrency = config.getInteger(Keys.NOTIFICATOR_CONCURRENCY.withPrefix("notificator." + type), 4);
+        long digestPeriod = TimeUnit.SECONDS.toMillis(
+                config.getLong(Keys.NOTIFICATOR_DIGEST_PERIOD.withPrefix("notificator." + type)));
+        Channel channel = new Channel(type, notificator, Math.max(concurrency, 1), digestPeriod);
+        channels.put(type, channel);
+        notificatorChannels.put(notificator, channel);
+    }
+
+    public void registerMetrics(MetricsManager metricsManager) {
+        for (Channel channel : channels.values()) {
+            metricsManager.gauge("traccar_notification_queue_size", "Notifications waiting for delivery",
+                    channel.queue::size, "type", channel.type);
+            metricsManager.gauge("traccar_notification_active", "Notifications being delivered",
+                    channel.active::get, "type", channel.type);
+            metricsManager.gauge("traccar_notification_dropped", "Notifications dropped because of overload",
+                    channel.dropped::sum, "type", channel.type);
+        }
+        metricsManager.gauge("traccar_notification_scheduled", "Notifications waiting for another attempt",
+                scheduled::get);
+    }
+
+    public void start() {
+        executor = Executors.newFixedThreadPool(threads, new DefaultThreadFactory("notificator", true));
+        scheduler = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("notificator-scheduler", true));
+        if (persistent) {
+            long restorePeriod = Math.max(retryDelay, MIN_RESTORE_PERIOD);
+            scheduler.scheduleWithFixedDelay(this::restore, retryDelay, restorePeriod, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Queues notification for delivery without blocking. If the notificator queue is full, the notification waits for
+     * another attempt after the retry delay, within the pending limit.
+     */
+    public void submit(Notificator notificator, long userId, Event event, Position position) {
+        Channel channel = notificatorChannels.get(notificator);
+        Delivery delivery = new Delivery(userId, event, position);
+        if (channel == null || executor == null) {
+            sendDirect(notificator, delivery);
+            return;
+        }
+        channel.submit(delivery);
+    }
+
+    private static void send(Notificator notificator, Delivery delivery)
+            throws MessageException, InterruptedException {
+        if (delivery.events.size() > 1) {
+            notificator.sendDigest(delivery.userId, delivery.events, delivery.positions);
+        } else {
+            notificator.sendSync(delivery.userId, delivery.events.get(0), delivery.positions.get(0));
+        }
+    }
+
+    private void sendDirect(Notificator notificator, Delivery delivery) {
+        try {
+            send(notificator, delivery);
+        } catch (MessageException | InterruptedException error) {
+            LOGGER.warn("Event send error", error);
+        }
+    }
+
+    private void deliver(Channel channel, Delivery delivery) {
+        try {
+            send(channel.notificator, delivery);
+            removeRecord(delivery);
+        } catch (MessageException error) {
+            retry(channel, delivery, error);
+        } catch (InterruptedException | RuntimeException error) {
+            LOGGER.warn("Event send error", error);
+            removeRecord(delivery);
+        }
+    }
+
+    private void retry(Channel channel, Delivery delivery, MessageException error) {
+        delivery.attempts += 1;
+        if (delivery.attempts > retryAttempts) {
+            LOGGER.warn("Event send error", error);
+            removeRecord(delivery);
+            return;
+        }
+        LOGGER.warn("Event send error, retry " + delivery.attempts + " of " + retryAttempts, error);
+        long delay = retryDelay << Math.min(delivery.attempts - 1, MAX_BACKOFF_SHIFT);
+        saveRecord(channel, delivery, new Date(System.currentTimeMillis() + delay));
+        schedule(channel, delivery, delay);
+    }
+
+    private void schedule(Channel channel, Delivery delivery, long delay) {
+        if (scheduled.incrementAndGet() > pendingLimit) {
+            scheduled.decrementAndGet();
+            overflow(channel, delivery, delay);
+            return;
+        }
+        scheduler.schedule(() -> {
+            scheduled.decrementAndGet();
+            if (!channel.offer(delivery)) {
+                schedule(channel, delivery, retryDelay);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void overflow(Channel channel, Delivery delivery, long delay) {
+        Date nextAttempt = new Date(System.currentTimeMillis() + Math.max(delay, retryDelay));
+        if (persistent && saveRecord(channel, delivery, nextAttempt)) {
+            // the record is left in the database and restored once there is space
+            scheduledRecords.remove(delivery.record.getId());
+        } else {
+            channel.dropped.increment();
+            removeRecord(delivery);
+        }
+    }
+
+    private boolean saveRecord(Channel channel, Delivery delivery, Date nextAttempt) {
+        Event event = delivery.events.get(0);
+        if (dataManager == null || delivery.events.size() > 1 || event.getId() == 0) {
+            return false;
+        }
+        try {
+            if (delivery.record == null) {
+                QueuedNotification record = new QueuedNotification();
+                record.setUserId(delivery.userId);
+                record.setEventId(event.getId());
+                if (delivery.positions.get(0) != null) {
+                    record.setPositionId(delivery.positions.get(0).getId());
+                }
+                record.setType(channel.type);
+                record.setAttempts(delivery.attempts);
+                record.setNextAttempt(nextAttempt);
+                synchronized (scheduledRecords) {
+                    dataManager.addObject(record);
+                    scheduledRecords.add(record.getId());
+                }
+                delivery.record = record;
+            } else {
+                delivery.record.setAttempts(delivery.attempts);
+                delivery.record.setNextAttempt(nextAttempt);
+                dataManager.updateObject(delivery.record);
+            }
+            return true;
+        } catch (SQLException error) {
+            LOGGER.warn("Queued notification save error", error);
+            return false;
+        }
+    }
+
+    private void removeRecord(Delivery delivery) {
+        if (delivery.record != null) {
+            try {
+                dataManager.removeObject(QueuedNotification.class, delivery.record.getId());
+            } catch (SQLException error) {
+                LOGGER.warn("Queued notification remove error", error);
+            }
+            scheduledRecords.remove(delivery.record.getId());
+            delivery.record = null;
+        }
+    }
+
+    /**
+     * Loads stored notifications that are due soon and are not already waiting in memory, up to the pending limit.
+     */
+    private void restore() {
+        try {
+            long horizon = System.currentTimeMillis() + retryDelay;
+            Collection<QueuedNotification> records;
+            synchronized (scheduledRecords) {
+                records = new ArrayList<>(dataManager.getObjects(QueuedNotification.class));
+                records.removeIf(record -> scheduledRecords.contains(record.getId()));
+            }
+            for (QueuedNotification record : records) {
+                if (scheduled.get() >= pendingLimit) {
+                    break;
+                }
+                if (record.getNextAttempt() != null && record.getNextAttempt().getTime() > horizon) {
+                    continue;
+                }
+                Channel channel = channels.get(record.getType());
+                Event event = channel != null ? dataManager.getObject(Event.class, record.getEventId()) : null;
+                if (event == null) {
+                    dataManager.removeObject(QueuedNotification.class, record.getId());
+                    continue;
+                }
+                Position position = record.getPositionId() != 0
+                        ? dataManager.getObject(Position.class, record.getPositionId()) : null;
+                Delivery delivery = new Delivery(record.getUserId(), event, position);
+                delivery.record = record;
+                delivery.attempts = record.getAttempts();
+                long delay = record.getNextAttempt() != null
+                        ? record.getNextAttempt().getTime() - System.currentTimeMillis() : 0;
+                scheduledRecords.add(record.getId());
+                schedule(channel, delivery, Math.max(delay, 0));
+            }
+        } catch (SQLException | RuntimeException error) {
+            LOGGER.warn("Queued notifications restore error", error);
+        }
+    }
+
+}
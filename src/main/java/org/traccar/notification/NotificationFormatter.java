@@ -19,6 +19,8 @@ package org.traccar.notification;
 import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 
 import org.apache.velocity.Template;
@@ -102,6 +104,36 @@ public final class NotificationFormatter {
         return formatMessage(null, userId, event, position, "short");
     }
 
+    public static FullMessage formatFullDigest(long userId, List<Event> events, List<Position> positions) {
+        List<String> messages = new ArrayList<>();
+        for (int i = 0; i < events.size(); i++) {
+            messages.add(formatShortMessage(userId, events.get(i), positions.get(i)).trim());
+        }
+
+        VelocityContext velocityContext = new VelocityContext();
+        velocityContext.put("user", Context.getPermissionsManager().getUser(userId));
+        velocityContext.put("messages", messages);
+        velocityContext.put("webUrl", Context.getVelocityEngine().getProperty("web.url"));
+
+        StringWriter writer = new StringWriter();
+        Template template = Context.getVelocityEngine().getTemplate(
+                Paths.get("full", "digest.vm").toString(), StandardCharsets.UTF_8.name());
+        template.merge(velocityContext, writer);
+
+        return new FullMessage((String) velocityContext.get("subject"), writer.toString());
+    }
+
+    public static String formatShortDigest(long userId, List<Event> events, List<Position> positions) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < events.size(); i++) {
+            if (i > 0) {
+                result.append('\n');
+            }
+            result.append(formatShortMessage(userId, events.get(i), positions.get(i)).trim());
+        }
+        return result.toString();
+    }
+
     private static String formatMessage(VelocityContext vc, Long userId, Event event, Position position,
             String templatePath) {
 
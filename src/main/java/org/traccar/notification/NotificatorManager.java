@@ -41,7 +41,10 @@ public final class NotificatorManager {
 
     private final Map<String, Notificator> notificators = new HashMap<>();
 
+    private final NotificationDelivery delivery;
+
     public NotificatorManager() {
+        delivery = new NotificationDelivery(Context.getConfig(), Context.getDataManager());
         final String[] types = Context.getConfig().getString("notificator.types", "").split(",");
         for (String type : types) {
             String defaultNotificator = "";
@@ -67,11 +70,21 @@ public final class NotificatorManager {
             final String className = Context.getConfig()
                     .getString("notificator." + type + ".class", defaultNotificator);
             try {
-                notificators.put(type, (Notificator) Class.forName(className).newInstance());
+                Notificator notificator = (Notificator) Class.forName(className).newInstance();
+                notificators.put(type, notificator);
+                delivery.register(type, notificator);
             } catch (ClassNotFoundException | InstantiationException | IllegalAccessException e) {
                 LOGGER.warn("Unable to load notificator class for " + type + " " + className + " " + e.getMessage());
             }
         }
+        if (Context.getMetricsManager() != null) {
+            delivery.registerMetrics(Context.getMetricsManager());
+        }
+        delivery.start();
+    }
+
+    public NotificationDelivery getDelivery() {
+        return delivery;
     }
 
     public Notificator getNotificator(String type) {
@@ -16,26 +16,27 @@
  */
 package org.traccar.notificators;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.traccar.Context;
 import org.traccar.model.Event;
 import org.traccar.model.Position;
 import org.traccar.notification.MessageException;
 
+import java.util.List;
+
 public abstract class Notificator {
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(Notificator.class);
+    public void sendAsync(long userId, Event event, Position position) {
+        Context.getNotificatorManager().getDelivery().submit(this, userId, event, position);
+    }
 
-    public void sendAsync(final long userId, final Event event, final Position position) {
-        new Thread(new Runnable() {
-            public void run() {
-                try {
-                    sendSync(userId, event, position);
-                } catch (MessageException | InterruptedException error) {
-                    LOGGER.warn("Event send error", error);
-                }
-            }
-        }).start();
+    /**
+     * Sends several events to a user at once. Notificators that support digests combine events into one message.
+     */
+    public void sendDigest(long userId, List<Event> events, List<Position> positions)
+            throws MessageException, InterruptedException {
+        for (int i = 0; i < events.size(); i++) {
+            sendSync(userId, events.get(i), positions.get(i));
+        }
     }
 
     public abstract void sendSync(long userId, Event event, Position position)
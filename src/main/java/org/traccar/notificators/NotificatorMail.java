@@ -24,17 +24,26 @@ import org.traccar.notification.MessageException;
 import org.traccar.notification.NotificationFormatter;
 
 import javax.mail.MessagingException;
+import java.util.List;
 
 public final class NotificatorMail extends Notificator {
 
-    @Override
-    public void sendSync(long userId, Event event, Position position) throws MessageException {
+    private void send(long userId, FullMessage message) throws MessageException {
         try {
-            FullMessage message = NotificationFormatter.formatFullMessage(userId, event, position);
             Context.getMailManager().sendMessage(userId, message.getSubject(), message.getBody());
         } catch (MessagingException e) {
             throw new MessageException(e);
         }
     }
 
+    @Override
+    public void sendSync(long userId, Event event, Position position) throws MessageException {
+        send(userId, NotificationFormatter.formatFullMessage(userId, event, position));
+    }
+
+    @Override
+    public void sendDigest(long userId, List<Event> events, List<Position> positions) throws MessageException {
+        send(userId, NotificationFormatter.formatFullDigest(userId, events, positions));
+    }
+
 }
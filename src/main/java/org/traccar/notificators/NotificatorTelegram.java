@@ -16,20 +16,19 @@
 package org.traccar.notificators;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.traccar.Context;
 import org.traccar.model.Event;
 import org.traccar.model.Position;
+import org.traccar.notification.MessageException;
 import org.traccar.notification.NotificationFormatter;
 
+import javax.ws.rs.ProcessingException;
 import javax.ws.rs.client.Entity;
-import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.core.Response;
+import java.util.List;
 
 public class NotificatorTelegram extends Notificator {
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(NotificatorTelegram.class);
-
     private String url;
     private String chatId;
 
@@ -49,29 +48,32 @@ public class NotificatorTelegram extends Notificator {
         chatId = Context.getConfig().getString("notificator.telegram.chatId");
     }
 
-    @Override
-    public void sendSync(long userId, Event event, Position position) {
+    private void send(String text) throws MessageException {
 
         Message message = new Message();
         message.chatId = chatId;
-        message.text = NotificationFormatter.formatShortMessage(userId, event, position);
+        message.text = text;
 
-        Context.getClient().target(url).request()
-                .async().post(Entity.json(message), new InvocationCallback<Object>() {
-            @Override
-            public void completed(Object o) {
-            }
+        Response response;
+        try {
+            response = Context.getClient().target(url).request().post(Entity.json(message));
+        } catch (ProcessingException error) {
+            throw new MessageException(error);
+        }
+        if (response.getStatus() / 100 != 2) {
+            throw new MessageException(response.readEntity(String.class));
+        }
+        response.close();
+    }
 
-            @Override
-            public void failed(Throwable throwable) {
-                LOGGER.warn("Telegram API error", throwable);
-            }
-        });
+    @Override
+    public void sendSync(long userId, Event event, Position position) throws MessageException {
+        send(NotificationFormatter.formatShortMessage(userId, event, position));
     }
 
     @Override
-    public void sendAsync(long userId, Event event, Position position) {
-        sendSync(userId, event, position);
+    public void sendDigest(long userId, List<Event> events, List<Position> positions) throws MessageException {
+        send(NotificationFormatter.formatShortDigest(userId, events, positions));
     }
 
 }
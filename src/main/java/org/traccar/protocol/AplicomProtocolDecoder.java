@@ -1,5 +1,5 @@
 /*
- * Copyright 2013 - 2018 Anton Tananaev (anton@traccar.org)
+ * Copyright 2013 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -37,8 +37,11 @@ public class AplicomProtocolDecoder extends BaseProtocolDecoder {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AplicomProtocolDecoder.class);
 
+    private final boolean can;
+
     public AplicomProtocolDecoder(Protocol protocol) {
         super(protocol);
+        can = Context.getConfig().getBoolean(getProtocolName() + ".can");
     }
 
     private static final long IMEI_BASE_TC65_V20 = 0x1437207000000L;
@@ -302,8 +305,7 @@ public class AplicomProtocolDecoder extends BaseProtocolDecoder {
             decodeEventData(position, buf, event);
         }
 
-        if (Context.getConfig().getBoolean(getProtocolName() + ".can")
-                && buf.isReadable() && (selector & 0x1000) != 0 && event == EVENT_DATA) {
+        if (can && buf.isReadable() && (selector & 0x1000) != 0 && event == EVENT_DATA) {
             decodeCanData(buf, position);
         }
     }
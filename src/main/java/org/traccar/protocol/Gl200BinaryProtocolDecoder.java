@@ -15,7 +15,6 @@
  */
 package org.traccar.protocol;
 
-import com.sun.javafx.image.impl.BaseIntToByteConverter;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import org.traccar.BaseProtocolDecoder;
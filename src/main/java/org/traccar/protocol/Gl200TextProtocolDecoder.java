@@ -1,5 +1,5 @@
 /*
- * Copyright 2012 - 2019 Anton Tananaev (anton@traccar.org)
+ * Copyright 2012 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -46,11 +46,13 @@ import java.util.regex.Pattern;
 public class Gl200TextProtocolDecoder extends BaseProtocolDecoder {
 
     private boolean ignoreFixTime;
+    private boolean ack;
 
     public Gl200TextProtocolDecoder(Protocol protocol) {
         super(protocol);
 
         ignoreFixTime = Context.getConfig().getBoolean(getProtocolName() + ".ignoreFixTime");
+        ack = Context.getConfig().getBoolean(getProtocolName() + ".ack");
     }
 
     private static final Pattern PATTERN_ACK = new PatternBuilder()
@@ -1116,7 +1118,7 @@ public class Gl200TextProtocolDecoder extends BaseProtocolDecoder {
 
         decodeDeviceTime(position, parser);
 
-        if (Context.getConfig().getBoolean(getProtocolName() + ".ack") && channel != null) {
+        if (ack && channel != null) {
             channel.writeAndFlush(new NetworkMessage("+SACK:" + parser.next() + "$", remoteAddress));
         }
 
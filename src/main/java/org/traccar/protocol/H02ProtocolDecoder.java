@@ -1,5 +1,5 @@
 /*
- * Copyright 2012 - 2019 Anton Tananaev (anton@traccar.org)
+ * Copyright 2012 - 2020 Anton Tananaev (anton@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -42,8 +42,11 @@ import java.util.regex.Pattern;
 
 public class H02ProtocolDecoder extends BaseProtocolDecoder {
 
+    private final boolean ack;
+
     public H02ProtocolDecoder(Protocol protocol) {
         super(protocol);
+        ack = Context.getConfig().getBoolean(getProtocolName() + ".ack");
     }
 
     private static double readCoordinate(ByteBuf buf, boolean lon) {
@@ -323,7 +326,7 @@ public class H02ProtocolDecoder extends BaseProtocolDecoder {
 
         if (parser.hasNext() && parser.next().equals("V1")) {
             sendResponse(channel, remoteAddress, id, "V1");
-        } else if (Context.getConfig().getBoolean(getProtocolName() + ".ack")) {
+        } else if (ack) {
             sendResponse(channel, remoteAddress, id, "R12");
         }
 
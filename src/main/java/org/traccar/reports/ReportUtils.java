@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 - 2018 Anton Tananaev (anton@traccar.org)
+ * Copyright 2016 - 2020 Anton Tananaev (anton@traccar.org)
  * Copyright 2016 - 2017 Andrey Kunitsyn (andrey@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -16,6 +16,7 @@
  */
 package org.traccar.reports;
 
+import org.apache.commons.collections4.IteratorUtils;
 import org.apache.velocity.tools.generic.DateTool;
 import org.apache.velocity.tools.generic.NumberTool;
 import org.jxls.area.Area;
@@ -26,13 +27,18 @@ import org.jxls.transform.Transformer;
 import org.jxls.transform.poi.PoiTransformer;
 import org.jxls.util.TransformerFactory;
 import org.traccar.Context;
+import org.traccar.Main;
+import org.traccar.config.Keys;
 import org.traccar.database.DeviceManager;
+import org.traccar.database.DevicePositions;
 import org.traccar.database.IdentityManager;
-import org.traccar.handler.events.MotionEventHandler;
-import org.traccar.model.DeviceState;
+import org.traccar.database.QueryIterator;
+import org.traccar.database.RollupManager;
+import org.traccar.handler.events.MotionSegmentDetector;
 import org.traccar.model.Driver;
-import org.traccar.model.Event;
 import org.traccar.model.Position;
+import org.traccar.model.Rollup;
+import org.traccar.model.RollupSegment;
 import org.traccar.reports.model.BaseReport;
 import org.traccar.reports.model.StopReport;
 import org.traccar.reports.model.TripReport;
@@ -43,16 +49,34 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Predicate;
 
 public final class ReportUtils {
 
+    private static final ForkJoinPool EXECUTOR = new ForkJoinPool();
+
+    static final int PARALLEL_BUFFER_SIZE = 10000;
+
     private ReportUtils() {
     }
 
@@ -89,6 +113,118 @@ public final class ReportUtils {
         return result;
     }
 
+    /**
+     * Splits unique identifiers into lists small enough for a single query.
+     */
+    public static List<List<Long>> partition(Collection<Long> ids) {
+        List<Long> unique = new ArrayList<>(new LinkedHashSet<>(ids));
+        int size = Math.max(Context.getConfig().getInteger(Keys.REPORT_DEVICES_PER_QUERY, 100), 1);
+        List<List<Long>> result = new ArrayList<>();
+        for (int i = 0; i < unique.size(); i += size) {
+            result.add(unique.subList(i, Math.min(i + size, unique.size())));
+        }
+        return result;
+    }
+
+    public interface PositionsProcessor<T> {
+        T process(long deviceId, Iterator<Position> positions) throws SQLException;
+    }
+
+    interface PositionsSource {
+        Iterator<Position> open(List<Long> deviceIds) throws SQLException;
+    }
+
+    /**
+     * Fetches positions of all devices with a few ordered queries and passes positions of each device to the
+     * processor. In parallel mode positions of a device are collected first and processed in a fork-join pool while
+     * the query continues, otherwise they are processed directly from the result set. Devices with more positions than
+     * fit in the buffer, and reports for a single device, are always processed directly, so the whole history of a
+     * device is never held in memory.
+     *
+     * @return results in the order of the device list
+     */
+    public static <T> List<T> processPositions(
+            Collection<Long> deviceIds, Date from, Date to, boolean parallel,
+            PositionsProcessor<T> processor) throws SQLException {
+        return processPositions(deviceIds, parallel, processor,
+                chunk -> Context.getDataManager().getPositionsIterator(chunk, from, to));
+    }
+
+    static <T> List<T> processPositions(
+            Collection<Long> deviceIds, boolean parallel,
+            PositionsProcessor<T> processor, PositionsSource source) throws SQLException {
+
+        Map<Long, T> results = new HashMap<>();
+        Map<Long, ForkJoinTask<T>> tasks = new HashMap<>();
+        Deque<ForkJoinTask<T>> pending = new ArrayDeque<>();
+        boolean parallelDevices = parallel && new HashSet<>(deviceIds).size() > 1;
+
+        for (List<Long> chunk : partition(deviceIds)) {
+            Iterator<Position> iterator = source.open(chunk);
+            try {
+                DevicePositions positions = new DevicePositions(iterator);
+                while (positions.nextDevice()) {
+                    long deviceId = positions.getDeviceId();
+                    List<Position> buffer = new ArrayList<>();
+                    if (parallelDevices) {
+                        while (positions.hasNext() && buffer.size() < PARALLEL_BUFFER_SIZE) {
+                            buffer.add(positions.next());
+                        }
+                    }
+                    if (parallelDevices && !positions.hasNext()) {
+                        ForkJoinTask<T> task = EXECUTOR.submit(() -> processor.process(deviceId, buffer.iterator()));
+                        tasks.put(deviceId, task);
+                        pending.add(task);
+                        if (pending.size() > EXECUTOR.getParallelism()) {
+                            getResult(pending.poll());
+                        }
+                    } else {
+                        results.put(deviceId, processor.process(
+                                deviceId, IteratorUtils.chainedIterator(buffer.iterator(), positions)));
+                    }
+                }
+            } catch (IllegalStateException error) {
+                if (error.getCause() instanceof SQLException) {
+                    throw (SQLException) error.getCause();
+                }
+                throw error;
+            } finally {
+                if (iterator instanceof QueryIterator) {
+                    ((QueryIterator<Position>) iterator).close();
+                }
+            }
+        }
+
+        for (Map.Entry<Long, ForkJoinTask<T>> entry : tasks.entrySet()) {
+            results.put(entry.getKey(), getResult(entry.getValue()));
+        }
+
+        List<T> result = new ArrayList<>();
+        for (long deviceId : deviceIds) {
+            if (!results.containsKey(deviceId)) {
+                results.put(deviceId, processor.process(deviceId, Collections.<Position>emptyIterator()));
+            }
+            result.add(results.get(deviceId));
+        }
+        return result;
+    }
+
+    private static <T> T getResult(ForkJoinTask<T> task) throws SQLException {
+        try {
+            return task.get();
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(error);
+        } catch (ExecutionException error) {
+            if (error.getCause() instanceof SQLException) {
+                throw (SQLException) error.getCause();
+            } else if (error.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) error.getCause();
+            }
+            throw new SQLException(error.getCause());
+        }
+    }
+
     public static double calculateDistance(Position firstPosition, Position lastPosition) {
         return calculateDistance(firstPosition, lastPosition, true);
     }
@@ -169,20 +305,8 @@ public final class ReportUtils {
     }
 
     private static TripReport calculateTrip(
-            ArrayList<Position> positions, int startIndex, int endIndex, boolean ignoreOdometer) {
-
-        Position startTrip = positions.get(startIndex);
-        Position endTrip = positions.get(endIndex);
-
-        double speedMax = 0.0;
-        double speedSum = 0.0;
-        for (int i = startIndex; i <= endIndex; i++) {
-            double speed = positions.get(i).getSpeed();
-            speedSum += speed;
-            if (speed > speedMax) {
-                speedMax = speed;
-            }
-        }
+            Position startTrip, Position endTrip, int positionCount, double speedSum, double speedMax,
+            boolean ignoreOdometer) {
 
         TripReport trip = new TripReport();
 
@@ -215,7 +339,7 @@ public final class ReportUtils {
 
         trip.setDistance(calculateDistance(startTrip, endTrip, !ignoreOdometer));
         trip.setDuration(tripDuration);
-        trip.setAverageSpeed(speedSum / (endIndex - startIndex));
+        trip.setAverageSpeed(speedSum / (positionCount - 1));
         trip.setMaxSpeed(speedMax);
         trip.setSpentFuel(calculateFuel(startTrip, endTrip));
 
@@ -236,10 +360,7 @@ public final class ReportUtils {
     }
 
     private static StopReport calculateStop(
-            ArrayList<Position> positions, int startIndex, int endIndex, boolean ignoreOdometer) {
-
-        Position startStop = positions.get(startIndex);
-        Position endStop = positions.get(endIndex);
+            Position startStop, Position endStop, long ignitionTime, boolean ignoreOdometer) {
 
         StopReport stop = new StopReport();
 
@@ -270,13 +391,7 @@ public final class ReportUtils {
             engineHours = endStop.getLong(Position.KEY_HOURS) - startStop.getLong(Position.KEY_HOURS);
         } else if (Context.getConfig().getBoolean("processing.engineHours.enable")) {
             // Temporary fallback for old data, to be removed in May 2019
-            for (int i = startIndex + 1; i <= endIndex; i++) {
-                if (positions.get(i).getBoolean(Position.KEY_IGNITION)
-                        && positions.get(i - 1).getBoolean(Position.KEY_IGNITION)) {
-                    engineHours += positions.get(i).getFixTime().getTime()
-                            - positions.get(i - 1).getFixTime().getTime();
-                }
-            }
+            engineHours = ignitionTime;
         }
         stop.setEngineHours(engineHours);
 
@@ -295,83 +410,280 @@ public final class ReportUtils {
     }
 
     private static <T extends BaseReport> T calculateTripOrStop(
-            ArrayList<Position> positions, int startIndex, int endIndex, boolean ignoreOdometer, Class<T> reportClass) {
+            MotionSegmentDetector.Segment segment, boolean ignoreOdometer) {
 
-        if (reportClass.equals(TripReport.class)) {
-            return (T) calculateTrip(positions, startIndex, endIndex, ignoreOdometer);
+        if (segment.getMotion()) {
+            return (T) calculateTrip(
+                    segment.getStartPosition(), segment.getEndPosition(),
+                    segment.getPositionCount(), segment.getSpeedSum(), segment.getMaxSpeed(), ignoreOdometer);
         } else {
-            return (T) calculateStop(positions, startIndex, endIndex, ignoreOdometer);
+            return (T) calculateStop(
+                    segment.getStartPosition(), segment.getEndPosition(), segment.getIgnitionTime(), ignoreOdometer);
         }
     }
 
-    private static boolean isMoving(ArrayList<Position> positions, int index, TripsConfig tripsConfig) {
-        if (tripsConfig.getMinimalNoDataDuration() > 0) {
-            boolean beforeGap = index < positions.size() - 1
-                    && positions.get(index + 1).getFixTime().getTime() - positions.get(index).getFixTime().getTime()
-                    >= tripsConfig.getMinimalNoDataDuration();
-            boolean afterGap = index > 0
-                    && positions.get(index).getFixTime().getTime() - positions.get(index - 1).getFixTime().getTime()
-                    >= tripsConfig.getMinimalNoDataDuration();
-            if (beforeGap || afterGap) {
-                return false;
-            }
-        }
-        if (positions.get(index).getAttributes().containsKey(Position.KEY_MOTION)
-                && positions.get(index).getAttributes().get(Position.KEY_MOTION) instanceof Boolean) {
-            return positions.get(index).getBoolean(Position.KEY_MOTION);
+    private static <T extends BaseReport> T calculateTripOrStop(
+            RollupSegment segment, Map<Long, Position> positions, boolean ignoreOdometer) {
+
+        Position startPosition = positions.get(segment.getStartPositionId());
+        Position endPosition = positions.get(segment.getEndPositionId());
+        if (segment.getMotion()) {
+            return (T) calculateTrip(
+                    startPosition, endPosition,
+                    segment.getPositionCount(), segment.getSpeedSum(), segment.getMaxSpeed(), ignoreOdometer);
         } else {
-            return positions.get(index).getSpeed() > tripsConfig.getSpeedThreshold();
+            return (T) calculateStop(startPosition, endPosition, segment.getEngineHours(), ignoreOdometer);
         }
     }
 
+    private static <T extends BaseReport> Collection<T> detectTripsAndStops(
+            MotionSegmentDetector detector, Iterator<Position> positions, boolean ignoreOdometer,
+            Class<T> reportClass, Predicate<MotionSegmentDetector.Segment> filter) {
+
+        Collection<T> result = new ArrayList<>();
+        boolean motion = reportClass.equals(TripReport.class);
+        detector.detect(positions, true, segment -> {
+            if (segment.getMotion() == motion && filter.test(segment)) {
+                result.add(calculateTripOrStop(segment, ignoreOdometer));
+            }
+        });
+        return result;
+    }
+
     public static <T extends BaseReport> Collection<T> detectTripsAndStops(
             IdentityManager identityManager, DeviceManager deviceManager,
             Collection<Position> positionCollection,
             TripsConfig tripsConfig, boolean ignoreOdometer, Class<T> reportClass) {
+        return detectTripsAndStops(identityManager, deviceManager, positionCollection.iterator(),
+                tripsConfig, ignoreOdometer, reportClass);
+    }
 
-        Collection<T> result = new ArrayList<>();
+    public static <T extends BaseReport> Collection<T> detectTripsAndStops(
+            IdentityManager identityManager, DeviceManager deviceManager,
+            Iterator<Position> positionIterator,
+            TripsConfig tripsConfig, boolean ignoreOdometer, Class<T> reportClass) {
+        return detectTripsAndStops(
+                new MotionSegmentDetector(identityManager, deviceManager, tripsConfig),
+                positionIterator, ignoreOdometer, reportClass, segment -> true);
+    }
+
+    private static <T extends BaseReport> Collection<T> detectTripsAndStops(
+            long deviceId, Iterator<Position> positions, Class<T> reportClass,
+            Predicate<MotionSegmentDetector.Segment> filter) {
+
+        boolean ignoreOdometer = Context.getDeviceManager()
+                .lookupAttributeBoolean(deviceId, "report.ignoreOdometer", false, false, true);
+
+        MotionSegmentDetector detector = new MotionSegmentDetector(
+                Main.getInjector().getInstance(IdentityManager.class),
+                Main.getInjector().getInstance(DeviceManager.class),
+                Context.getTripsConfig());
+
+        return detectTripsAndStops(detector, positions, ignoreOdometer, reportClass, filter);
+    }
+
+    /**
+     * Detects trips or stops of each device. With rollups enabled, segments that ended on complete days of the period
+     * are taken from rollups and positions are processed only before the first and after the last of them. Devices
+     * without complete rollups are processed from positions.
+     *
+     * @return results in the order of the device list
+     */
+    public static <T extends BaseReport> List<Collection<T>> detectTripsAndStops(
+            Collection<Long> devices, Date from, Date to, Class<T> reportClass) throws SQLException {
+
+        Map<Long, Collection<T>> results = new HashMap<>();
+        if (Context.getConfig().getBoolean(Keys.REPORT_ROLLUP_ENABLE)) {
+            results.putAll(detectTripsAndStopsFromRollups(devices, from, to, reportClass));
+        }
+
+        List<Long> remaining = new ArrayList<>();
+        for (long deviceId : devices) {
+            if (!results.containsKey(deviceId)) {
+                remaining.add(deviceId);
+            }
+        }
+        Iterator<Collection<T>> calculated = processPositions(remaining, from, to, true,
+                (deviceId, positions) -> detectTripsAndStops(deviceId, positions, reportClass, segment -> true))
+                .iterator();
+        for (long deviceId : remaining) {
+            results.put(deviceId, calculated.next());
+        }
+
+        List<Collection<T>> result = new ArrayList<>();
+        for (long deviceId : devices) {
+            result.add(results.get(deviceId));
+        }
+        return result;
+    }
 
-        ArrayList<Position> positions = new ArrayList<>(positionCollection);
-        if (!positions.isEmpty()) {
-            boolean trips = reportClass.equals(TripReport.class);
-            MotionEventHandler  motionHandler = new MotionEventHandler(identityManager, deviceManager, tripsConfig);
-            DeviceState deviceState = new DeviceState();
-            deviceState.setMotionState(isMoving(positions, 0, tripsConfig));
-            int startEventIndex = trips == deviceState.getMotionState() ? 0 : -1;
-            int startNoEventIndex = -1;
-            for (int i = 0; i < positions.size(); i++) {
-                Map<Event, Position> event = motionHandler.updateMotionState(deviceState, positions.get(i),
-                        isMoving(positions, i, tripsConfig));
-                if (startEventIndex == -1
-                        && (trips != deviceState.getMotionState() && deviceState.getMotionPosition() != null
-                        || trips == deviceState.getMotionState() && event != null)) {
-                    startEventIndex = i;
-                    startNoEventIndex = -1;
-                } else if (trips != deviceState.getMotionState() && startEventIndex != -1
-                        && deviceState.getMotionPosition() == null && event == null) {
-                    startEventIndex = -1;
+    private static <T extends BaseReport> Map<Long, Collection<T>> detectTripsAndStopsFromRollups(
+            Collection<Long> devices, Date from, Date to, Class<T> reportClass) throws SQLException {
+
+        boolean motion = reportClass.equals(TripReport.class);
+        Map<Long, List<RollupSegment>> segments = new HashMap<>();
+        Map<Long, Date[]> heads = new HashMap<>();
+        Map<Long, Date[]> tails = new HashMap<>();
+        Map<Long, Date> tailLimits = new HashMap<>();
+        for (Map.Entry<Long, List<Rollup>> entry : getRollups(devices, from, to, true).entrySet()) {
+            List<RollupSegment> sequence = new ArrayList<>();
+            Date firstStart = null;
+            Date lastEnd = null;
+            boolean complete = true;
+            for (Rollup rollup : entry.getValue()) {
+                if (rollup.getSegments() == null) {
+                    complete = false;
+                    break;
                 }
-                if (startNoEventIndex == -1
-                        && (trips == deviceState.getMotionState() && deviceState.getMotionPosition() != null
-                        || trips != deviceState.getMotionState() && event != null)) {
-                    startNoEventIndex = i;
-                } else if (startNoEventIndex != -1 && deviceState.getMotionPosition() == null && event == null) {
-                    startNoEventIndex = -1;
+                for (RollupSegment segment : rollup.getSegments()) {
+                    if (!segment.getStartTime().before(from)) {
+                        if (segment.getMotion() == motion) {
+                            sequence.add(segment);
+                        }
+                        if (firstStart == null || segment.getStartTime().before(firstStart)) {
+                            firstStart = segment.getStartTime();
+                        }
+                        if (lastEnd == null || segment.getEndTime().after(lastEnd)) {
+                            lastEnd = segment.getEndTime();
+                        }
+                    }
                 }
-                if (startEventIndex != -1 && startNoEventIndex != -1 && event != null
-                        && trips != deviceState.getMotionState()) {
-                    result.add(calculateTripOrStop(positions, startEventIndex, startNoEventIndex,
-                            ignoreOdometer, reportClass));
-                    startEventIndex = -1;
+            }
+            Date openTime = entry.getValue().get(entry.getValue().size() - 1).getOpenTime();
+            if (complete && firstStart != null && openTime != null) {
+                long deviceId = entry.getKey();
+                segments.put(deviceId, sequence);
+                heads.put(deviceId, new Date[] {from, firstStart});
+                tails.put(deviceId, new Date[] {openTime.before(from) ? from : openTime, to});
+                tailLimits.put(deviceId, lastEnd);
+            }
+        }
+
+        Set<Long> positionIds = new HashSet<>();
+        for (List<RollupSegment> sequence : segments.values()) {
+            for (RollupSegment segment : sequence) {
+                positionIds.add(segment.getStartPositionId());
+                positionIds.add(segment.getEndPositionId());
+            }
+        }
+        Map<Long, Position> positions = new HashMap<>();
+        for (List<Long> chunk : partition(positionIds)) {
+            for (Position position : Context.getDataManager().getPositionsById(chunk)) {
+                positions.put(position.getId(), position);
+            }
+        }
+        for (Map.Entry<Long, List<RollupSegment>> entry : new ArrayList<>(segments.entrySet())) {
+            for (RollupSegment segment : entry.getValue()) {
+                if (!positions.containsKey(segment.getStartPositionId())
+                        || !positions.containsKey(segment.getEndPositionId())) {
+                    segments.remove(entry.getKey());
+                    heads.remove(entry.getKey());
+                    tails.remove(entry.getKey());
+                    break;
                 }
             }
-            if (startEventIndex != -1 && (startNoEventIndex != -1 || !trips)) {
-                result.add(calculateTripOrStop(positions, startEventIndex,
-                            startNoEventIndex != -1 ? startNoEventIndex : positions.size() - 1,
-                            ignoreOdometer, reportClass));
+        }
+
+        Map<Long, Collection<T>> headResults = processPositions(heads, (deviceId, iterator) -> {
+            Date limit = heads.get(deviceId)[1];
+            return detectTripsAndStops(deviceId, iterator, reportClass,
+                    segment -> segment.getStartPosition().getFixTime().before(limit));
+        });
+        Map<Long, Collection<T>> tailResults = processPositions(tails, (deviceId, iterator) -> {
+            Date limit = tailLimits.get(deviceId);
+            return detectTripsAndStops(deviceId, iterator, reportClass,
+                    segment -> !segment.getStartPosition().getFixTime().before(limit));
+        });
+
+        Map<Long, Collection<T>> result = new HashMap<>();
+        for (Map.Entry<Long, List<RollupSegment>> entry : segments.entrySet()) {
+            long deviceId = entry.getKey();
+            boolean ignoreOdometer = Context.getDeviceManager()
+                    .lookupAttributeBoolean(deviceId, "report.ignoreOdometer", false, false, true);
+            Collection<T> items = new ArrayList<>(headResults.get(deviceId));
+            for (RollupSegment segment : entry.getValue()) {
+                items.add(calculateTripOrStop(segment, positions, ignoreOdometer));
             }
+            items.addAll(tailResults.get(deviceId));
+            result.put(deviceId, items);
+        }
+        return result;
+    }
+
+    /**
+     * Processes positions of each device within its own time range. Devices with ranges that start and end on the
+     * same days share queries.
+     */
+    private static <T> Map<Long, T> processPositions(
+            Map<Long, Date[]> ranges, PositionsProcessor<T> processor) throws SQLException {
+
+        Map<List<Long>, List<Long>> groups = new HashMap<>();
+        for (Map.Entry<Long, Date[]> entry : ranges.entrySet()) {
+            List<Long> key = Arrays.asList(
+                    RollupManager.getDayStart(entry.getValue()[0].getTime()),
+                    RollupManager.getDayStart(entry.getValue()[1].getTime()));
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(entry.getKey());
         }
 
+        Map<Long, T> result = new HashMap<>();
+        for (List<Long> group : groups.values()) {
+            Date from = null;
+            Date to = null;
+            for (long deviceId : group) {
+                Date[] range = ranges.get(deviceId);
+                if (from == null || range[0].before(from)) {
+                    from = range[0];
+                }
+                if (to == null || range[1].after(to)) {
+                    to = range[1];
+                }
+            }
+            Iterator<T> results = processPositions(group, from, to, true, (deviceId, positions) -> {
+                Date[] range = ranges.get(deviceId);
+                return processor.process(deviceId, IteratorUtils.filteredIterator(positions,
+                        position -> !position.getFixTime().before(range[0]) && !position.getFixTime().after(range[1])));
+            }).iterator();
+            for (long deviceId : group) {
+                result.put(deviceId, results.next());
+            }
+        }
+        return result;
+    }
+
+    static long getRollupStart(Date from) {
+        return RollupManager.getDayStart(from.getTime() + RollupManager.DAY - 1);
+    }
+
+    static long getRollupEnd(Date to) {
+        return Math.min(
+                RollupManager.getDayStart(to.getTime() + 1), RollupManager.getDayStart(System.currentTimeMillis()));
+    }
+
+    /**
+     * Returns rollups of complete days of the period for devices that have rollups for each of these days.
+     */
+    static Map<Long, List<Rollup>> getRollups(
+            Collection<Long> devices, Date from, Date to, boolean segments) throws SQLException {
+
+        long rollupStart = getRollupStart(from);
+        long rollupEnd = getRollupEnd(to);
+        long days = (rollupEnd - rollupStart) / RollupManager.DAY;
+
+        Map<Long, List<Rollup>> result = new HashMap<>();
+        if (days > 0) {
+            for (List<Long> chunk : partition(devices)) {
+                Map<Long, List<Rollup>> chunkRollups = new HashMap<>();
+                for (Rollup rollup : Context.getDataManager().getRollups(
+                        chunk, new Date(rollupStart), new Date(rollupEnd - 1), segments)) {
+                    chunkRollups.computeIfAbsent(rollup.getDeviceId(), key -> new ArrayList<>()).add(rollup);
+                }
+                for (Map.Entry<Long, List<Rollup>> entry : chunkRollups.entrySet()) {
+                    if (entry.getValue().size() == days) {
+                        result.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+        }
         return result;
     }
 
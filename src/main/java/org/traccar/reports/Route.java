@@ -24,6 +24,8 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
 
 import org.apache.poi.ss.util.WorkbookUtil;
 import org.traccar.Context;
@@ -37,13 +39,25 @@ public final class Route {
     private Route() {
     }
 
+    private static List<Collection<Position>> getPositions(
+            long userId, Collection<Long> devices, Date from, Date to) throws SQLException {
+        for (long deviceId: devices) {
+            Context.getPermissionsManager().checkDevice(userId, deviceId);
+        }
+        return ReportUtils.processPositions(devices, from, to, false, (deviceId, positions) -> {
+            Collection<Position> result = new ArrayList<>();
+            positions.forEachRemaining(result::add);
+            return result;
+        });
+    }
+
     public static Collection<Position> getObjects(long userId, Collection<Long> deviceIds, Collection<Long> groupIds,
             Date from, Date to) throws SQLException {
         ReportUtils.checkPeriodLimit(from, to);
         ArrayList<Position> result = new ArrayList<>();
-        for (long deviceId: ReportUtils.getDeviceList(deviceIds, groupIds)) {
-            Context.getPermissionsManager().checkDevice(userId, deviceId);
-            result.addAll(Context.getDataManager().getPositions(deviceId, from, to));
+        Collection<Long> devices = ReportUtils.getDeviceList(deviceIds, groupIds);
+        for (Collection<Position> positions : getPositions(userId, devices, from, to)) {
+            result.addAll(positions);
         }
         return result;
     }
@@ -54,10 +68,10 @@ public final class Route {
         ReportUtils.checkPeriodLimit(from, to);
         ArrayList<DeviceReport> devicesRoutes = new ArrayList<>();
         ArrayList<String> sheetNames = new ArrayList<>();
-        for (long deviceId: ReportUtils.getDeviceList(deviceIds, groupIds)) {
-            Context.getPermissionsManager().checkDevice(userId, deviceId);
-            Collection<Position> positions = Context.getDataManager()
-                    .getPositions(deviceId, from, to);
+        Collection<Long> devices = ReportUtils.getDeviceList(deviceIds, groupIds);
+        Iterator<Collection<Position>> results = getPositions(userId, devices, from, to).iterator();
+        for (long deviceId: devices) {
+            Collection<Position> positions = results.next();
             DeviceReport deviceRoutes = new DeviceReport();
             Device device = Context.getIdentityManager().getById(deviceId);
             deviceRoutes.setDeviceName(device.getName());
@@ -1,5 +1,5 @@
 /*
- * Copyright 2017 Anton Tananaev (anton@traccar.org)
+ * Copyright 2017 - 2020 Anton Tananaev (anton@traccar.org)
  * Copyright 2017 Andrey Kunitsyn (andrey@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -25,12 +25,11 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
 
 import org.apache.poi.ss.util.WorkbookUtil;
 import org.traccar.Context;
-import org.traccar.Main;
-import org.traccar.database.DeviceManager;
-import org.traccar.database.IdentityManager;
 import org.traccar.model.Device;
 import org.traccar.model.Group;
 import org.traccar.reports.model.DeviceReport;
@@ -41,16 +40,12 @@ public final class Stops {
     private Stops() {
     }
 
-    private static Collection<StopReport> detectStops(long deviceId, Date from, Date to) throws SQLException {
-        boolean ignoreOdometer = Context.getDeviceManager()
-                .lookupAttributeBoolean(deviceId, "report.ignoreOdometer", false, false, true);
-
-        IdentityManager identityManager = Main.getInjector().getInstance(IdentityManager.class);
-        DeviceManager deviceManager = Main.getInjector().getInstance(DeviceManager.class);
-
-        return ReportUtils.detectTripsAndStops(
-                identityManager, deviceManager, Context.getDataManager().getPositions(deviceId, from, to),
-                Context.getTripsConfig(), ignoreOdometer, StopReport.class);
+    private static List<Collection<StopReport>> detectStops(
+            long userId, Collection<Long> devices, Date from, Date to) throws SQLException {
+        for (long deviceId: devices) {
+            Context.getPermissionsManager().checkDevice(userId, deviceId);
+        }
+        return ReportUtils.detectTripsAndStops(devices, from, to, StopReport.class);
     }
 
     public static Collection<StopReport> getObjects(
@@ -58,9 +53,9 @@ public final class Stops {
             Date from, Date to) throws SQLException {
         ReportUtils.checkPeriodLimit(from, to);
         ArrayList<StopReport> result = new ArrayList<>();
-        for (long deviceId: ReportUtils.getDeviceList(deviceIds, groupIds)) {
-            Context.getPermissionsManager().checkDevice(userId, deviceId);
-            result.addAll(detectStops(deviceId, from, to));
+        Collection<Long> devices = ReportUtils.getDeviceList(deviceIds, groupIds);
+        for (Collection<StopReport> stops : detectStops(userId, devices, from, to)) {
+            result.addAll(stops);
         }
         return result;
     }
@@ -71,9 +66,10 @@ public final class Stops {
         ReportUtils.checkPeriodLimit(from, to);
         ArrayList<DeviceReport> devicesStops = new ArrayList<>();
         ArrayList<String> sheetNames = new ArrayList<>();
-        for (long deviceId: ReportUtils.getDeviceList(deviceIds, groupIds)) {
-            Context.getPermissionsManager().checkDevice(userId, deviceId);
-            Collection<StopReport> stops = detectStops(deviceId, from, to);
+        Collection<Long> devices = ReportUtils.getDeviceList(deviceIds, groupIds);
+        Iterator<Collection<StopReport>> results = detectStops(userId, devices, from, to).iterator();
+        for (long deviceId: devices) {
+            Collection<StopReport> stops = results.next();
             DeviceReport deviceStops = new DeviceReport();
             Device device = Context.getIdentityManager().getById(deviceId);
             deviceStops.setDeviceName(device.getName());
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 Anton Tananaev (anton@traccar.org)
+ * Copyright 2016 - 2020 Anton Tananaev (anton@traccar.org)
  * Copyright 2016 Andrey Kunitsyn (andrey@traccar.org)
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -24,10 +24,20 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.jxls.util.JxlsHelper;
 import org.traccar.Context;
+import org.traccar.config.Keys;
+import org.traccar.database.RollupManager;
 import org.traccar.model.Position;
+import org.traccar.model.Rollup;
 import org.traccar.reports.model.SummaryReport;
 
 public final class Summary {
@@ -35,54 +45,186 @@ public final class Summary {
     private Summary() {
     }
 
-    private static SummaryReport calculateSummaryResult(long deviceId, Date from, Date to) throws SQLException {
+    private static SummaryReport calculateSummaryResult(long deviceId, Iterator<Position> positions) {
         SummaryReport result = new SummaryReport();
         result.setDeviceId(deviceId);
         result.setDeviceName(Context.getIdentityManager().getById(deviceId).getName());
-        Collection<Position> positions = Context.getDataManager().getPositions(deviceId, from, to);
-        if (positions != null && !positions.isEmpty()) {
-            Position firstPosition = null;
-            Position previousPosition = null;
-            double speedSum = 0;
-            boolean engineHoursEnabled = Context.getConfig().getBoolean("processing.engineHours.enable");
-            for (Position position : positions) {
-                if (firstPosition == null) {
-                    firstPosition = position;
+        Position firstPosition = null;
+        Position previousPosition = null;
+        int count = 0;
+        double speedSum = 0;
+        boolean engineHoursEnabled = Context.getConfig().getBoolean("processing.engineHours.enable");
+        while (positions.hasNext()) {
+            Position position = positions.next();
+            if (firstPosition == null) {
+                firstPosition = position;
+            }
+            if (engineHoursEnabled && previousPosition != null
+                    && position.getBoolean(Position.KEY_IGNITION)
+                    && previousPosition.getBoolean(Position.KEY_IGNITION)) {
+                // Temporary fallback for old data, to be removed in May 2019
+                result.addEngineHours(position.getFixTime().getTime()
+                        - previousPosition.getFixTime().getTime());
+            }
+            previousPosition = position;
+            count += 1;
+            speedSum += position.getSpeed();
+            result.setMaxSpeed(position.getSpeed());
+        }
+        if (firstPosition != null) {
+            completeSummaryResult(result, firstPosition, previousPosition, count, speedSum, engineHoursEnabled);
+        }
+        return result;
+    }
+
+    private static SummaryReport calculateSummaryResult(
+            long deviceId, List<Rollup> rollups, Map<Long, Position> positions) {
+        SummaryReport result = new SummaryReport();
+        result.setDeviceId(deviceId);
+        result.setDeviceName(Context.getIdentityManager().getById(deviceId).getName());
+        Rollup firstRollup = null;
+        Rollup previousRollup = null;
+        int count = 0;
+        double speedSum = 0;
+        boolean engineHoursEnabled = Context.getConfig().getBoolean("processing.engineHours.enable");
+        for (Rollup rollup : rollups) {
+            if (rollup.getPositionCount() == 0) {
+                continue;
+            }
+            if (firstRollup == null) {
+                firstRollup = rollup;
+            }
+            if (engineHoursEnabled) {
+                result.addEngineHours(rollup.getEngineHours());
+                if (previousRollup != null && rollup.getFirstIgnition() && previousRollup.getLastIgnition()) {
+                    result.addEngineHours(rollup.getFirstTime().getTime() - previousRollup.getLastTime().getTime());
                 }
-                if (engineHoursEnabled && previousPosition != null
-                        && position.getBoolean(Position.KEY_IGNITION)
-                        && previousPosition.getBoolean(Position.KEY_IGNITION)) {
-                    // Temporary fallback for old data, to be removed in May 2019
-                    result.addEngineHours(position.getFixTime().getTime()
-                            - previousPosition.getFixTime().getTime());
+            }
+            previousRollup = rollup;
+            count += rollup.getPositionCount();
+            speedSum += rollup.getSpeedSum();
+            result.setMaxSpeed(rollup.getMaxSpeed());
+        }
+        if (firstRollup != null) {
+            completeSummaryResult(
+                    result, positions.get(firstRollup.getFirstPositionId()),
+                    positions.get(previousRollup.getLastPositionId()), count, speedSum, engineHoursEnabled);
+        }
+        return result;
+    }
+
+    private static void completeSummaryResult(
+            SummaryReport result, Position firstPosition, Position lastPosition,
+            int count, double speedSum, boolean engineHoursEnabled) {
+
+        boolean ignoreOdometer = Context.getDeviceManager()
+                .lookupAttributeBoolean(result.getDeviceId(), "report.ignoreOdometer", false, false, true);
+        result.setDistance(ReportUtils.calculateDistance(firstPosition, lastPosition, !ignoreOdometer));
+        result.setAverageSpeed(speedSum / count);
+        result.setSpentFuel(ReportUtils.calculateFuel(firstPosition, lastPosition));
+
+        if (engineHoursEnabled
+                && firstPosition.getAttributes().containsKey(Position.KEY_HOURS)
+                && lastPosition.getAttributes().containsKey(Position.KEY_HOURS)) {
+            result.setEngineHours(lastPosition.getLong(Position.KEY_HOURS) - firstPosition.getLong(Position.KEY_HOURS));
+        }
+
+        if (!ignoreOdometer
+                && firstPosition.getDouble(Position.KEY_ODOMETER) != 0
+                && lastPosition.getDouble(Position.KEY_ODOMETER) != 0) {
+            result.setStartOdometer(firstPosition.getDouble(Position.KEY_ODOMETER));
+            result.setEndOdometer(lastPosition.getDouble(Position.KEY_ODOMETER));
+        } else {
+            result.setStartOdometer(firstPosition.getDouble(Position.KEY_TOTAL_DISTANCE));
+            result.setEndOdometer(lastPosition.getDouble(Position.KEY_TOTAL_DISTANCE));
+        }
+    }
+
+    private static Map<Long, Rollup> calculateEdgeRollups(
+            Collection<Long> devices, long from, long to) throws SQLException {
+        Map<Long, Rollup> result = new HashMap<>();
+        if (from <= to && !devices.isEmpty()) {
+            Date start = new Date(from);
+            for (Rollup rollup : ReportUtils.processPositions(devices, start, new Date(to), false,
+                    (deviceId, positions) -> RollupManager.calculateRollup(deviceId, start, positions))) {
+                result.put(rollup.getDeviceId(), rollup);
+            }
+        }
+        return result;
+    }
+
+    private static Rollup findBoundary(List<Rollup> rollups, boolean first) {
+        Rollup result = null;
+        for (Rollup rollup : rollups) {
+            if (rollup.getPositionCount() > 0) {
+                result = rollup;
+                if (first) {
+                    break;
                 }
-                previousPosition = position;
-                speedSum += position.getSpeed();
-                result.setMaxSpeed(position.getSpeed());
             }
-            boolean ignoreOdometer = Context.getDeviceManager()
-                    .lookupAttributeBoolean(deviceId, "report.ignoreOdometer", false, false, true);
-            result.setDistance(ReportUtils.calculateDistance(firstPosition, previousPosition, !ignoreOdometer));
-            result.setAverageSpeed(speedSum / positions.size());
-            result.setSpentFuel(ReportUtils.calculateFuel(firstPosition, previousPosition));
-
-            if (engineHoursEnabled
-                    && firstPosition.getAttributes().containsKey(Position.KEY_HOURS)
-                    && previousPosition.getAttributes().containsKey(Position.KEY_HOURS)) {
-                result.setEngineHours(
-                        previousPosition.getLong(Position.KEY_HOURS) - firstPosition.getLong(Position.KEY_HOURS));
+        }
+        return result;
+    }
+
+    /**
+     * Calculates summaries from daily rollups for complete days of the period and from positions for partial days at
+     * the edges. Devices that do not have rollups for every day are calculated from positions.
+     */
+    private static List<SummaryReport> calculateSummaryResults(
+            Collection<Long> devices, Date from, Date to) throws SQLException {
+
+        long rollupFrom = ReportUtils.getRollupStart(from);
+        long rollupTo = ReportUtils.getRollupEnd(to);
+        Map<Long, List<Rollup>> rollups = ReportUtils.getRollups(devices, from, to, false);
+
+        Map<Long, Rollup> head = calculateEdgeRollups(rollups.keySet(), from.getTime(), rollupFrom - 1);
+        Map<Long, Rollup> tail = calculateEdgeRollups(rollups.keySet(), rollupTo, to.getTime());
+        Set<Long> positionIds = new HashSet<>();
+        for (Map.Entry<Long, List<Rollup>> entry : rollups.entrySet()) {
+            List<Rollup> sequence = entry.getValue();
+            if (head.containsKey(entry.getKey())) {
+                sequence.add(0, head.get(entry.getKey()));
             }
+            if (tail.containsKey(entry.getKey())) {
+                sequence.add(tail.get(entry.getKey()));
+            }
+            Rollup first = findBoundary(sequence, true);
+            if (first != null) {
+                positionIds.add(first.getFirstPositionId());
+                positionIds.add(findBoundary(sequence, false).getLastPositionId());
+            }
+        }
+
+        Map<Long, Position> positions = new HashMap<>();
+        for (List<Long> chunk : ReportUtils.partition(positionIds)) {
+            for (Position position : Context.getDataManager().getPositionsById(chunk)) {
+                positions.put(position.getId(), position);
+            }
+        }
 
-            if (!ignoreOdometer
-                    && firstPosition.getDouble(Position.KEY_ODOMETER) != 0
-                    && previousPosition.getDouble(Position.KEY_ODOMETER) != 0) {
-                result.setStartOdometer(firstPosition.getDouble(Position.KEY_ODOMETER));
-                result.setEndOdometer(previousPosition.getDouble(Position.KEY_ODOMETER));
+        Map<Long, SummaryReport> results = new HashMap<>();
+        List<Long> remaining = new ArrayList<>();
+        for (long deviceId : new LinkedHashSet<>(devices)) {
+            List<Rollup> sequence = rollups.get(deviceId);
+            Rollup first = sequence != null ? findBoundary(sequence, true) : null;
+            if (sequence != null && (first == null
+                    || positions.containsKey(first.getFirstPositionId())
+                    && positions.containsKey(findBoundary(sequence, false).getLastPositionId()))) {
+                results.put(deviceId, calculateSummaryResult(deviceId, sequence, positions));
             } else {
-                result.setStartOdometer(firstPosition.getDouble(Position.KEY_TOTAL_DISTANCE));
-                result.setEndOdometer(previousPosition.getDouble(Position.KEY_TOTAL_DISTANCE));
+                remaining.add(deviceId);
             }
+        }
+
+        Iterator<SummaryReport> calculated = ReportUtils.processPositions(
+                remaining, from, to, false, Summary::calculateSummaryResult).iterator();
+        for (long deviceId : remaining) {
+            results.put(deviceId, calculated.next());
+        }
 
+        List<SummaryReport> result = new ArrayList<>();
+        for (long deviceId : devices) {
+            result.add(results.get(deviceId));
         }
         return result;
     }
@@ -90,12 +232,14 @@ public final class Summary {
     public static Collection<SummaryReport> getObjects(long userId, Collection<Long> deviceIds,
             Collection<Long> groupIds, Date from, Date to) throws SQLException {
         ReportUtils.checkPeriodLimit(from, to);
-        ArrayList<SummaryReport> result = new ArrayList<>();
-        for (long deviceId: ReportUtils.getDeviceList(deviceIds, groupIds)) {
+        Collection<Long> devices = ReportUtils.getDeviceList(deviceIds, groupIds);
+        for (long deviceId: devices) {
             Context.getPermissionsManager().checkDevice(userId, deviceId);
-            result.add(calculateSummaryResult(deviceId, from, to));
         }
-        return result;
+        if (Context.getConfig().getBoolean(Keys.REPORT_ROLLUP_ENABLE)) {
+            return calculateSummaryResults(devices, from, to);
+        }
+        return ReportUtils.processPositions(devices, from, to, false, Summary::calculateSummaryResult);
     }
 
     public static void getExcel(OutputStream outputStream,
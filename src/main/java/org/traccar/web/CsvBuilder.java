@@ -17,15 +17,20 @@
 package org.traccar.web;
 
 import java.beans.Introspector;
+import java.io.IOException;
+import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import org.slf4j.Logger;
@@ -49,67 +54,74 @@ public class CsvBuilder {
         builder.append(SEPARATOR);
     }
 
-    private SortedSet<Method> getSortedMethods(Object object) {
-        Method[] methodArray = object.getClass().getMethods();
-        SortedSet<Method> methods = new TreeSet<>(new Comparator<Method>() {
-            @Override
-            public int compare(Method m1, Method m2) {
-                if (m1.getName().equals("getAttributes") && !m1.getName().equals(m2.getName())) {
-                    return 1;
-                }
-                if (m2.getName().equals("getAttributes") && !m1.getName().equals(m2.getName())) {
-                    return -1;
+    private static final Map<Class<?>, List<Method>> GETTERS = new ConcurrentHashMap<>();
+
+    private static final Comparator<Method> METHOD_COMPARATOR = new Comparator<Method>() {
+        @Override
+        public int compare(Method m1, Method m2) {
+            if (m1.getName().equals("getAttributes") && !m1.getName().equals(m2.getName())) {
+                return 1;
+            }
+            if (m2.getName().equals("getAttributes") && !m1.getName().equals(m2.getName())) {
+                return -1;
+            }
+            return m1.getName().compareTo(m2.getName());
+        }
+    };
+
+    private static List<Method> getSortedMethods(Object object) {
+        return GETTERS.computeIfAbsent(object.getClass(), clazz -> {
+            SortedSet<Method> methods = new TreeSet<>(METHOD_COMPARATOR);
+            methods.addAll(Arrays.asList(clazz.getMethods()));
+            List<Method> getters = new ArrayList<>();
+            for (Method method : methods) {
+                if (method.getName().startsWith("get") && method.getParameterTypes().length == 0) {
+                    getters.add(method);
                 }
-                return m1.getName().compareTo(m2.getName());
             }
+            return getters;
         });
-        methods.addAll(Arrays.asList(methodArray));
-        return methods;
     }
 
     public void addLine(Object object) {
 
-        SortedSet<Method> methods = getSortedMethods(object);
-
-        for (Method method : methods) {
-            if (method.getName().startsWith("get") && method.getParameterTypes().length == 0) {
-                try {
-                    if (method.getReturnType().equals(boolean.class)) {
-                        builder.append(method.invoke(object));
-                        addSeparator();
-                    } else if (method.getReturnType().equals(int.class)) {
-                        builder.append(method.invoke(object));
-                        addSeparator();
-                    } else if (method.getReturnType().equals(long.class)) {
-                        builder.append(method.invoke(object));
-                        addSeparator();
-                    } else if (method.getReturnType().equals(double.class)) {
-                        builder.append(method.invoke(object));
-                        addSeparator();
-                    } else if (method.getReturnType().equals(String.class)) {
-                        builder.append((String) method.invoke(object));
-                        addSeparator();
-                    } else if (method.getReturnType().equals(Date.class)) {
-                        Date value = (Date) method.invoke(object);
-                        builder.append(DateUtil.formatDate(value));
-                        addSeparator();
-                    } else if (method.getReturnType().equals(Map.class)) {
-                        Map value = (Map) method.invoke(object);
-                        if (value != null) {
-                            try {
-                                String map = Context.getObjectMapper().writeValueAsString(value);
-                                map = map.replaceAll("[\\{\\}\"]", "");
-                                map = map.replaceAll(",", " ");
-                                builder.append(map);
-                                addSeparator();
-                            } catch (JsonProcessingException e) {
-                                LOGGER.warn("Map JSON formatting error", e);
-                            }
+        for (Method method : getSortedMethods(object)) {
+            try {
+                if (method.getReturnType().equals(boolean.class)) {
+                    builder.append(method.invoke(object));
+                    addSeparator();
+                } else if (method.getReturnType().equals(int.class)) {
+                    builder.append(method.invoke(object));
+                    addSeparator();
+                } else if (method.getReturnType().equals(long.class)) {
+                    builder.append(method.invoke(object));
+                    addSeparator();
+                } else if (method.getReturnType().equals(double.class)) {
+                    builder.append(method.invoke(object));
+                    addSeparator();
+                } else if (method.getReturnType().equals(String.class)) {
+                    builder.append((String) method.invoke(object));
+                    addSeparator();
+                } else if (method.getReturnType().equals(Date.class)) {
+                    Date value = (Date) method.invoke(object);
+                    builder.append(DateUtil.formatDate(value));
+                    addSeparator();
+                } else if (method.getReturnType().equals(Map.class)) {
+                    Map value = (Map) method.invoke(object);
+                    if (value != null) {
+                        try {
+                            String map = Context.getObjectMapper().writeValueAsString(value);
+                            map = map.replaceAll("[\\{\\}\"]", "");
+                            map = map.replaceAll(",", " ");
+                            builder.append(map);
+                            addSeparator();
+                        } catch (JsonProcessingException e) {
+                            LOGGER.warn("Map JSON formatting error", e);
                         }
                     }
-                } catch (IllegalAccessException | InvocationTargetException error) {
-                    LOGGER.warn("Reflection invocation error", error);
                 }
+            } catch (IllegalAccessException | InvocationTargetException error) {
+                LOGGER.warn("Reflection invocation error", error);
             }
         }
         addLineEnding();
@@ -117,15 +129,11 @@ public class CsvBuilder {
 
     public void addHeaderLine(Object object) {
 
-        SortedSet<Method> methods = getSortedMethods(object);
-
-        for (Method method : methods) {
-            if (method.getName().startsWith("get") && method.getParameterTypes().length == 0) {
-                String name = Introspector.decapitalize(method.getName().substring(3));
-                if (!name.equals("class")) {
-                    builder.append(name);
-                    addSeparator();
-                }
+        for (Method method : getSortedMethods(object)) {
+            String name = Introspector.decapitalize(method.getName().substring(3));
+            if (!name.equals("class")) {
+                builder.append(name);
+                addSeparator();
             }
         }
         addLineEnding();
@@ -157,6 +165,14 @@ public class CsvBuilder {
         }
     }
 
+    /**
+     * Writes content added so far and clears the buffer, so large exports do not have to be kept in memory.
+     */
+    public void flush(Writer writer) throws IOException {
+        writer.append(builder);
+        builder.setLength(0);
+    }
+
     public String build() {
         return builder.toString();
     }
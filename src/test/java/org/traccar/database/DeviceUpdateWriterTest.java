@@ -0,0 +1,103 @@
+package org.traccar.database;
+
+import org.junit.After;
+import org.junit.Test;
+import org.traccar.model.Device;
+import org.traccar.model.Position;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class DeviceUpdateWriterTest {
+
+    private final List<Device> statuses = new ArrayList<>();
+    private final List<Position> positions = new ArrayList<>();
+    private boolean failing;
+
+    private final DeviceUpdateWriter writer = new DeviceUpdateWriter(
+            devices -> write(statuses, devices), latestPositions -> write(positions, latestPositions), 3600000);
+
+    private <T> void write(List<T> result, Collection<T> items) throws SQLException {
+        if (failing) {
+            throw new SQLException("Test failure");
+        }
+        result.addAll(items);
+    }
+
+    private Device device(long id) {
+        Device device = new Device();
+        device.setId(id);
+        return device;
+    }
+
+    private Position position(long deviceId, long time) {
+        Position position = new Position();
+        position.setDeviceId(deviceId);
+        position.setTime(new Date(time));
+        return position;
+    }
+
+    @After
+    public void tearDown() {
+        writer.stop();
+    }
+
+    @Test
+    public void testCoalescing() {
+
+        Device device = device(1);
+        writer.updateStatus(device(1));
+        writer.updateStatus(device);
+        writer.updateStatus(device(2));
+
+        Position position = position(1, 2000);
+        writer.updateLatestPosition(position(1, 1000));
+        writer.updateLatestPosition(position);
+        writer.updateLatestPosition(position(1, 500));
+        writer.updateLatestPosition(position(2, 1000));
+
+        assertEquals(4, writer.getPendingCount());
+
+        writer.flush();
+
+        assertEquals(0, writer.getPendingCount());
+        assertEquals(2, statuses.size());
+        assertSame(device, statuses.stream().filter(item -> item.getId() == 1).findFirst().get());
+        assertEquals(2, positions.size());
+        assertSame(position, positions.stream().filter(item -> item.getDeviceId() == 1).findFirst().get());
+
+    }
+
+    @Test
+    public void testFailure() {
+
+        Device device = device(1);
+        Position position = position(1, 2000);
+        writer.updateStatus(device);
+        writer.updateLatestPosition(position);
+
+        failing = true;
+        writer.flush();
+
+        assertEquals(2, writer.getPendingCount());
+
+        writer.updateLatestPosition(position(1, 1000));
+
+        failing = false;
+        writer.flush();
+
+        assertEquals(0, writer.getPendingCount());
+        assertEquals(1, statuses.size());
+        assertSame(device, statuses.get(0));
+        assertEquals(1, positions.size());
+        assertSame(position, positions.get(0));
+
+    }
+
+}
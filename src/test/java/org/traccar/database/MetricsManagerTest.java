@@ -0,0 +1,51 @@
+package org.traccar.database;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsManagerTest {
+
+    @Test
+    public void testWrite() throws Exception {
+
+        MetricsManager metricsManager = new MetricsManager();
+
+        MetricsManager.Counter counter = metricsManager.counter("test_total", "Test counter", "type", "a\"b");
+        assertSame(counter, metricsManager.counter("test_total", "Test counter", "type", "a\"b"));
+        counter.increment();
+        counter.add(2);
+
+        MetricsManager.Histogram histogram = metricsManager.histogram("test_seconds", "Test histogram");
+        histogram.observe(TimeUnit.MILLISECONDS.toNanos(3));
+        histogram.observe(TimeUnit.SECONDS.toNanos(20));
+
+        metricsManager.gauge("test_size", "Test gauge", () -> 5);
+
+        StringWriter writer = new StringWriter();
+        metricsManager.write(writer);
+        String result = writer.toString();
+
+        assertTrue(result.contains("# TYPE test_total counter\n"));
+        assertTrue(result.contains("test_total{type=\"a\\\"b\"} 3\n"));
+        assertTrue(result.contains("test_seconds_bucket{le=\"0.0025\"} 0\n"));
+        assertTrue(result.contains("test_seconds_bucket{le=\"0.005\"} 1\n"));
+        assertTrue(result.contains("test_seconds_bucket{le=\"10.0\"} 1\n"));
+        assertTrue(result.contains("test_seconds_bucket{le=\"+Inf\"} 2\n"));
+        assertTrue(result.contains("test_seconds_count 2\n"));
+        assertTrue(result.contains("test_size 5\n"));
+
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTypeConflict() {
+        MetricsManager metricsManager = new MetricsManager();
+        metricsManager.counter("test", "Test");
+        metricsManager.histogram("test", "Test");
+    }
+
+}
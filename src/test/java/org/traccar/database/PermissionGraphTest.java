@@ -0,0 +1,193 @@
+package org.traccar.database;
+
+import org.junit.Test;
+import org.traccar.model.Device;
+import org.traccar.model.Group;
+import org.traccar.model.Permission;
+import org.traccar.model.User;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PermissionGraphTest {
+
+    private final Collection<Group> groups = new ArrayList<>();
+    private final Collection<Device> devices = new ArrayList<>();
+    private final Collection<Permission> groupLinks = new ArrayList<>();
+    private final Collection<Permission> deviceLinks = new ArrayList<>();
+
+    private Group addGroup(long id, long parent) {
+        Group group = new Group();
+        group.setId(id);
+        group.setGroupId(parent);
+        groups.add(group);
+        return group;
+    }
+
+    private Device addDevice(long id, long parent) {
+        Device device = new Device();
+        device.setId(id);
+        device.setGroupId(parent);
+        devices.add(device);
+        return device;
+    }
+
+    private PermissionGraph load() {
+        return new PermissionGraph(groups, devices, groupLinks, deviceLinks);
+    }
+
+    @Test
+    public void testLoad() {
+
+        addGroup(1, 0);
+        addGroup(2, 1);
+        addGroup(3, 2);
+        addDevice(1, 3);
+        addDevice(2, 1);
+        addDevice(3, 0);
+        groupLinks.add(new Permission(User.class, 1, Group.class, 2));
+        deviceLinks.add(new Permission(User.class, 1, Device.class, 3));
+        deviceLinks.add(new Permission(User.class, 2, Device.class, 1));
+
+        PermissionGraph graph = load();
+
+        assertEquals(new HashSet<>(Arrays.asList(2L, 3L)), graph.getGroupPermissions(1));
+        assertEquals(new HashSet<>(Arrays.asList(1L, 3L)), graph.getDevicePermissions(1));
+        assertEquals(new HashSet<>(Arrays.asList(1L, 2L)), graph.getDeviceUsers(1));
+        assertEquals(new HashSet<>(Arrays.asList(1L, 2L)), graph.getGroupDevices(1));
+        assertTrue(graph.getGroupPermissions(2).isEmpty());
+        assertTrue(graph.getDeviceUsers(2).isEmpty());
+
+    }
+
+    @Test
+    public void testLinks() {
+
+        addGroup(1, 0);
+        addGroup(2, 1);
+        addDevice(1, 2);
+        addDevice(2, 0);
+
+        PermissionGraph graph = load();
+
+        graph.linkGroup(1, 1, true);
+        groupLinks.add(new Permission(User.class, 1, Group.class, 1));
+        graph.linkDevice(1, 1, true);
+        deviceLinks.add(new Permission(User.class, 1, Device.class, 1));
+        graph.linkDevice(1, 2, true);
+        deviceLinks.add(new Permission(User.class, 1, Device.class, 2));
+        assertEquals(load(), graph);
+
+        graph.linkDevice(1, 1, false);
+        deviceLinks.clear();
+        deviceLinks.add(new Permission(User.class, 1, Device.class, 2));
+        assertEquals(load(), graph);
+        assertTrue(graph.getDevicePermissions(1).contains(1L));
+
+        graph.linkGroup(1, 1, false);
+        groupLinks.clear();
+        assertEquals(load(), graph);
+        assertEquals(new HashSet<>(Arrays.asList(2L)), graph.getDevicePermissions(1));
+
+    }
+
+    @Test
+    public void testCopy() {
+
+        addGroup(1, 0);
+        addDevice(1, 1);
+        groupLinks.add(new Permission(User.class, 1, Group.class, 1));
+
+        PermissionGraph graph = load();
+        PermissionGraph copy = new PermissionGraph(graph);
+
+        copy.linkDevice(2, 1, true);
+        copy.removeGroup(1);
+
+        assertEquals(load(), graph);
+        assertEquals(new HashSet<>(Arrays.asList(1L)), graph.getDeviceUsers(1));
+        assertEquals(new HashSet<>(Arrays.asList(2L)), copy.getDeviceUsers(1));
+
+    }
+
+    @Test
+    public void testHierarchyChanges() {
+
+        Group first = addGroup(1, 0);
+        addGroup(2, 1);
+        Group third = addGroup(3, 0);
+        Device device = addDevice(1, 2);
+        addDevice(2, 3);
+        groupLinks.add(new Permission(User.class, 1, Group.class, 1));
+        groupLinks.add(new Permission(User.class, 2, Group.class, 3));
+        deviceLinks.add(new Permission(User.class, 2, Device.class, 1));
+
+        PermissionGraph graph = load();
+
+        third.setGroupId(2);
+        graph.updateGroup(3, 2);
+        assertEquals(load(), graph);
+
+        device.setGroupId(3);
+        graph.updateDevice(1, 3);
+        assertEquals(load(), graph);
+
+        graph.updateDevice(3, 1);
+        addDevice(3, 1);
+        assertEquals(load(), graph);
+
+        graph.updateGroup(4, 3);
+        addGroup(4, 3);
+        assertEquals(load(), graph);
+
+        third.setGroupId(0);
+        graph.updateGroup(3, 0);
+        assertEquals(load(), graph);
+
+        first.setGroupId(3);
+        graph.updateGroup(1, 3);
+        assertEquals(load(), graph);
+
+    }
+
+    @Test
+    public void testRemove() {
+
+        addGroup(1, 0);
+        addGroup(2, 1);
+        addGroup(3, 2);
+        addDevice(1, 2);
+        addDevice(2, 3);
+        addDevice(3, 0);
+        groupLinks.add(new Permission(User.class, 1, Group.class, 1));
+        groupLinks.add(new Permission(User.class, 2, Group.class, 2));
+        deviceLinks.add(new Permission(User.class, 2, Device.class, 3));
+        deviceLinks.add(new Permission(User.class, 3, Device.class, 3));
+
+        PermissionGraph graph = load();
+
+        graph.removeGroup(2);
+        groups.removeIf(group -> group.getId() == 2);
+        groups.forEach(group -> group.setGroupId(group.getGroupId() == 2 ? 0 : group.getGroupId()));
+        devices.forEach(device -> device.setGroupId(device.getGroupId() == 2 ? 0 : device.getGroupId()));
+        groupLinks.removeIf(permission -> permission.getPropertyId() == 2);
+        assertEquals(load(), graph);
+
+        graph.removeDevice(3);
+        devices.removeIf(device -> device.getId() == 3);
+        deviceLinks.clear();
+        assertEquals(load(), graph);
+
+        graph.removeUser(1);
+        groupLinks.clear();
+        assertEquals(load(), graph);
+        assertTrue(graph.getDeviceUsers(1).isEmpty());
+
+    }
+
+}
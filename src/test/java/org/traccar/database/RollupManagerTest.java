@@ -0,0 +1,123 @@
+package org.traccar.database;
+
+import org.junit.Test;
+import org.traccar.BaseTest;
+import org.traccar.TestIdentityManager;
+import org.traccar.handler.events.MotionSegmentDetector;
+import org.traccar.model.Position;
+import org.traccar.model.Rollup;
+import org.traccar.model.RollupSegment;
+import org.traccar.reports.model.TripsConfig;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RollupManagerTest extends BaseTest {
+
+    private Date date(String time) throws ParseException {
+        DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return dateFormat.parse(time);
+    }
+
+    private Position position(long id, String time, double speed, double totalDistance) throws ParseException {
+        Position position = new Position();
+        position.setId(id);
+        position.setDeviceId(1);
+        position.setTime(date(time));
+        position.setValid(true);
+        position.setSpeed(speed);
+        position.set(Position.KEY_TOTAL_DISTANCE, totalDistance);
+        return position;
+    }
+
+    @Test
+    public void testCalculateRollup() throws ParseException {
+
+        List<Position> data = Arrays.asList(
+                position(1, "2016-01-01 00:00:00.000", 0, 0),
+                position(2, "2016-01-01 00:01:00.000", 10, 0),
+                position(3, "2016-01-01 00:02:00.000", 20, 1000),
+                position(4, "2016-01-01 00:03:00.000", 0, 2000));
+        for (int i = 0; i < data.size(); i++) {
+            data.get(i).set(Position.KEY_IGNITION, i > 0);
+        }
+
+        Rollup rollup = RollupManager.calculateRollup(1, date("2016-01-01 00:00:00.000"), data.iterator());
+
+        assertEquals(1, rollup.getFirstPositionId());
+        assertEquals(4, rollup.getLastPositionId());
+        assertFalse(rollup.getFirstIgnition());
+        assertTrue(rollup.getLastIgnition());
+        assertEquals(4, rollup.getPositionCount());
+        assertEquals(30, rollup.getSpeedSum(), 0.01);
+        assertEquals(20, rollup.getMaxSpeed(), 0.01);
+        assertEquals(120000, rollup.getEngineHours());
+
+    }
+
+    @Test
+    public void testCalculateSegmentsAcrossDays() throws ParseException {
+
+        List<Position> firstDay = Arrays.asList(
+                position(1, "2016-01-01 23:54:00.000", 0, 0),
+                position(2, "2016-01-01 23:55:00.000", 0, 0),
+                position(3, "2016-01-01 23:56:00.000", 10, 0),
+                position(4, "2016-01-01 23:57:00.000", 10, 1000),
+                position(5, "2016-01-01 23:58:00.000", 10, 2000),
+                position(6, "2016-01-01 23:59:00.000", 10, 3000));
+
+        List<Position> secondDay = Arrays.asList(
+                position(3, "2016-01-01 23:56:00.000", 10, 0),
+                position(4, "2016-01-01 23:57:00.000", 10, 1000),
+                position(5, "2016-01-01 23:58:00.000", 10, 2000),
+                position(6, "2016-01-01 23:59:00.000", 10, 3000),
+                position(7, "2016-01-02 00:00:00.000", 10, 4000),
+                position(8, "2016-01-02 00:01:00.000", 0, 5000),
+                position(9, "2016-01-02 00:02:00.000", 0, 5000),
+                position(10, "2016-01-02 00:03:00.000", 0, 5000),
+                position(11, "2016-01-02 00:04:00.000", 0, 5000),
+                position(12, "2016-01-02 00:05:00.000", 0, 5000));
+
+        MotionSegmentDetector detector = new MotionSegmentDetector(
+                new TestIdentityManager(), null, new TripsConfig(500, 300000, 180000, 900000, false, false, 0.01));
+
+        Rollup rollup = RollupManager.calculateRollup(
+                detector, 1, date("2016-01-01 00:00:00.000").getTime(), null, firstDay.iterator());
+
+        assertEquals(6, rollup.getPositionCount());
+        assertEquals(date("2016-01-01 23:56:00.000"), rollup.getOpenTime());
+        assertEquals(1, rollup.getSegments().length);
+        RollupSegment stop = rollup.getSegments()[0];
+        assertFalse(stop.getMotion());
+        assertEquals(1, stop.getStartPositionId());
+        assertEquals(3, stop.getEndPositionId());
+
+        rollup = RollupManager.calculateRollup(
+                detector, 1, date("2016-01-02 00:00:00.000").getTime(), rollup.getOpenTime(), secondDay.iterator());
+
+        assertEquals(6, rollup.getPositionCount());
+        assertEquals(7, rollup.getFirstPositionId());
+        assertEquals(date("2016-01-02 00:01:00.000"), rollup.getOpenTime());
+        assertEquals(1, rollup.getSegments().length);
+        RollupSegment trip = rollup.getSegments()[0];
+        assertTrue(trip.getMotion());
+        assertEquals(3, trip.getStartPositionId());
+        assertEquals(8, trip.getEndPositionId());
+        assertEquals(date("2016-01-01 23:56:00.000"), trip.getStartTime());
+        assertEquals(6, trip.getPositionCount());
+        assertEquals(50, trip.getSpeedSum(), 0.01);
+        assertEquals(10, trip.getMaxSpeed(), 0.01);
+
+    }
+
+}
@@ -0,0 +1,90 @@
+package org.traccar.geofence;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GeofenceIndexTest {
+
+    @Test
+    public void testCandidates() throws ParseException {
+
+        GeofenceIndex index = new GeofenceIndex();
+        index.put(1, new GeofenceCircle(55.75, 37.62, 500));
+        index.put(2, new GeofencePolygon("POLYGON ((55.70 37.50, 55.80 37.50, 55.80 37.70, 55.70 37.70))"));
+        index.put(3, new GeofencePolygon("POLYGON ((10 10, 40 10, 40 60, 10 60))"));
+        index.put(4, new GeofencePolygon("POLYGON ((-10 170, 10 170, 10 -170, -10 -170))"));
+
+        assertTrue(index.getCandidates(55.75, 37.62).contains(1L));
+        assertTrue(index.getCandidates(55.75, 37.62).contains(2L));
+        assertFalse(index.getCandidates(50.75, 37.62).contains(1L));
+        assertTrue(index.getCandidates(-50, -50).contains(3L));
+        assertTrue(index.getCandidates(0, 179.5).contains(4L));
+
+        index.remove(1);
+        assertFalse(index.getCandidates(55.75, 37.62).contains(1L));
+        index.put(2, new GeofenceCircle(0, 0, 100));
+        assertFalse(index.getCandidates(55.75, 37.62).contains(2L));
+        assertTrue(index.getCandidates(0, 0).contains(2L));
+        index.remove(3);
+        assertFalse(index.getCandidates(-50, -50).contains(3L));
+
+    }
+
+    @Test
+    public void testNoMissedGeofences() throws ParseException {
+
+        Random random = new Random(1);
+        List<GeofenceGeometry> geometries = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            double latitude = random.nextDouble() * 170 - 85;
+            double longitude = random.nextDouble() * 360 - 180;
+            double size = random.nextDouble() * 0.5;
+            switch (i % 3) {
+                case 0:
+                    geometries.add(new GeofenceCircle(latitude, longitude, size * 100000));
+                    break;
+                case 1:
+                    geometries.add(new GeofencePolygon(String.format(Locale.US, "POLYGON ((%f %f, %f %f, %f %f))",
+                            latitude, longitude, latitude + size, longitude,
+                            latitude, Math.min(longitude + size, 180))));
+                    break;
+                default:
+                    geometries.add(new GeofencePolyline(String.format(Locale.US, "LINESTRING (%f %f, %f %f)",
+                            latitude, longitude, latitude + size, Math.min(longitude + size, 180)), 1000));
+                    break;
+            }
+        }
+
+        GeofenceIndex index = new GeofenceIndex();
+        for (int i = 0; i < geometries.size(); i++) {
+            index.put(i, geometries.get(i));
+        }
+
+        int contained = 0;
+        for (int i = 0; i < geometries.size(); i++) {
+            GeofenceGeometry geometry = geometries.get(i);
+            for (int j = 0; j < 100; j++) {
+                double latitude = geometry.getMinLatitude() - 0.1
+                        + random.nextDouble() * (geometry.getMaxLatitude() - geometry.getMinLatitude() + 0.2);
+                double longitude = geometry.getMinLongitude() - 0.1
+                        + random.nextDouble() * (geometry.getMaxLongitude() - geometry.getMinLongitude() + 0.2);
+                if (geometry.containsPoint(latitude, longitude)) {
+                    contained += 1;
+                    assertTrue(geometry.boundsContain(latitude, longitude));
+                    assertTrue(index.getCandidates(latitude, longitude).contains((long) i));
+                }
+            }
+        }
+        assertTrue(contained > 0);
+
+    }
+
+}
@@ -1,10 +1,13 @@
 package org.traccar.geofence;
 
 import java.text.ParseException;
+import java.util.Locale;
+import java.util.Random;
 
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class GeofencePolygonTest {
@@ -49,4 +52,55 @@ public class GeofencePolygonTest {
 
     }
 
+    private static boolean containsPointFullScan(double[] lats, double[] lons, double latitude, double longitude) {
+        boolean oddNodes = false;
+        for (int i = 0, j = lats.length - 1; i < lats.length; j = i++) {
+            if (lons[i] < longitude && lons[j] >= longitude || lons[j] < longitude && lons[i] >= longitude) {
+                double constant;
+                double multiple;
+                if (lons[j] == lons[i]) {
+                    constant = lats[i];
+                    multiple = 0;
+                } else {
+                    constant = lats[i] - (lons[i] * lats[j]) / (lons[j] - lons[i])
+                            + (lons[i] * lats[i]) / (lons[j] - lons[i]);
+                    multiple = (lats[j] - lats[i]) / (lons[j] - lons[i]);
+                }
+                oddNodes ^= longitude * multiple + constant < latitude;
+            }
+        }
+        return oddNodes;
+    }
+
+    @Test
+    public void testContainsLargePolygon() throws ParseException {
+        Random random = new Random(1);
+        int count = 20000;
+        double[] lats = new double[count];
+        double[] lons = new double[count];
+        StringBuilder wkt = new StringBuilder("POLYGON ((");
+        for (int i = 0; i < count; i++) {
+            double angle = 2 * Math.PI * i / count;
+            double radius = 1 + random.nextDouble();
+            lats[i] = 50 + radius * Math.sin(angle);
+            lons[i] = 10 + radius * Math.cos(angle);
+            wkt.append(String.format(Locale.US, "%.6f %.6f, ", lats[i], lons[i]));
+            lats[i] = Double.parseDouble(String.format(Locale.US, "%.6f", lats[i]));
+            lons[i] = Double.parseDouble(String.format(Locale.US, "%.6f", lons[i]));
+        }
+        wkt.setLength(wkt.length() - 2);
+        wkt.append("))");
+
+        GeofenceGeometry geofenceGeometry = new GeofencePolygon(wkt.toString());
+        assertTrue(geofenceGeometry.containsPoint(50, 10));
+        assertFalse(geofenceGeometry.containsPoint(53, 10));
+        assertFalse(geofenceGeometry.containsPoint(50, 13));
+        for (int i = 0; i < 2000; i++) {
+            double latitude = 47.5 + random.nextDouble() * 5;
+            double longitude = 7.5 + random.nextDouble() * 5;
+            assertEquals(containsPointFullScan(lats, lons, latitude, longitude),
+                    geofenceGeometry.containsPoint(latitude, longitude));
+        }
+    }
+
 }
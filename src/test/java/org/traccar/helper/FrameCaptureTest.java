@@ -0,0 +1,44 @@
+package org.traccar.helper;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrameCaptureTest {
+
+    @Test
+    public void testReadWrite() throws Exception {
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        FrameCapture.write(output, Arrays.asList(
+                new FrameCapture.Frame(1000, false, "gt06", "a1b2c3d4", "10.0.0.1:5000", new byte[] {0x78, 0x78}),
+                new FrameCapture.Frame(2000, true, "gt06", "a1b2c3d4", "10.0.0.1:5000", new byte[0])));
+
+        List<FrameCapture.Frame> frames = new ArrayList<>();
+        FrameCapture.read(new ByteArrayInputStream(output.toByteArray()), frames::add);
+
+        assertEquals(2, frames.size());
+
+        FrameCapture.Frame frame = frames.get(0);
+        assertEquals(1000, frame.getTime());
+        assertFalse(frame.getDownstream());
+        assertEquals("gt06", frame.getProtocol());
+        assertEquals("a1b2c3d4", frame.getChannel());
+        assertEquals("10.0.0.1:5000", frame.getRemoteAddress());
+        assertArrayEquals(new byte[] {0x78, 0x78}, frame.getData());
+
+        assertTrue(frames.get(1).getDownstream());
+        assertEquals(0, frames.get(1).getData().length);
+
+    }
+
+}
@@ -0,0 +1,53 @@
+package org.traccar.helper;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LongSetTest {
+
+    @Test
+    public void testOf() {
+        LongSet set = LongSet.of(Arrays.asList(5L, 1L, 3L, 1L));
+        assertEquals(3, set.size());
+        assertTrue(set.contains(1L));
+        assertTrue(set.contains(5));
+        assertFalse(set.contains(2L));
+        assertEquals(new HashSet<>(Arrays.asList(1L, 3L, 5L)), set);
+        assertEquals(set, new HashSet<>(Arrays.asList(1L, 3L, 5L)));
+        assertEquals(new HashSet<>(Arrays.asList(1L, 3L, 5L)).hashCode(), set.hashCode());
+        assertSame(LongSet.EMPTY, LongSet.of(new HashSet<>()));
+    }
+
+    @Test
+    public void testModify() {
+        LongSet set = LongSet.of(Arrays.asList(2L, 4L));
+        assertEquals(LongSet.of(Arrays.asList(1L, 2L, 4L)), set.with(1));
+        assertEquals(LongSet.of(Arrays.asList(2L, 3L, 4L)), set.with(3));
+        assertEquals(LongSet.of(Arrays.asList(2L, 4L, 5L)), set.with(5));
+        assertSame(set, set.with(2));
+        assertEquals(LongSet.of(Arrays.asList(4L)), set.without(2));
+        assertSame(set, set.without(3));
+        assertSame(LongSet.EMPTY, set.without(2).without(4));
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    public void testUnionAndDifference() {
+        LongSet first = LongSet.of(Arrays.asList(1L, 3L, 5L, 7L));
+        LongSet second = LongSet.of(Arrays.asList(2L, 3L, 7L, 9L));
+        assertEquals(LongSet.of(Arrays.asList(1L, 2L, 3L, 5L, 7L, 9L)), first.union(second));
+        assertEquals(LongSet.of(Arrays.asList(1L, 5L)), first.difference(second));
+        assertEquals(LongSet.of(Arrays.asList(2L, 9L)), second.difference(first));
+        assertSame(first, first.union(LongSet.EMPTY));
+        assertSame(first, first.difference(LongSet.EMPTY));
+        assertSame(LongSet.EMPTY, first.difference(first));
+    }
+
+}
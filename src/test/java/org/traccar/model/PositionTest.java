@@ -0,0 +1,46 @@
+package org.traccar.model;
+
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PositionTest {
+
+    @Test
+    public void testCopy() {
+
+        Position position = new Position("test");
+        position.setId(1);
+        position.setDeviceId(2);
+        position.setTime(new Date(1000));
+        position.setValid(true);
+        position.setLatitude(10.5);
+        position.setLongitude(20.5);
+        position.setSpeed(30);
+        position.set(Position.KEY_ODOMETER, 100L);
+        position.set(Position.KEY_IGNITION, true);
+
+        Position copy = new Position(position);
+        copy.setAddress("Street");
+        copy.set(Position.KEY_IGNITION, false);
+
+        assertEquals(1, copy.getId());
+        assertEquals(2, copy.getDeviceId());
+        assertEquals("test", copy.getProtocol());
+        assertEquals(position.getFixTime(), copy.getFixTime());
+        assertEquals(10.5, copy.getLatitude(), 0.00001);
+        assertEquals(30, copy.getSpeed(), 0.00001);
+        assertEquals(Long.class, copy.getAttributes().get(Position.KEY_ODOMETER).getClass());
+        assertFalse(copy.getBoolean(Position.KEY_IGNITION));
+
+        assertNull(position.getAddress());
+        assertTrue(position.getBoolean(Position.KEY_IGNITION));
+
+    }
+
+}
@@ -0,0 +1,165 @@
+package org.traccar.notification;
+
+import org.junit.Test;
+import org.traccar.config.Config;
+import org.traccar.config.Keys;
+import org.traccar.database.MetricsManager;
+import org.traccar.model.Event;
+import org.traccar.model.Position;
+import org.traccar.notificators.Notificator;
+
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NotificationDeliveryTest {
+
+    @Test
+    public void testConcurrencyLimit() throws Exception {
+
+        Config config = new Config();
+        config.setString(Keys.NOTIFICATOR_CONCURRENCY.withPrefix("notificator.test"), "2");
+
+        final CountDownLatch latch = new CountDownLatch(20);
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+
+        Notificator notificator = new Notificator() {
+            @Override
+            public void sendSync(long userId, Event event, Position position) throws InterruptedException {
+                int current = active.incrementAndGet();
+                maxActive.accumulateAndGet(current, Math::max);
+                Thread.sleep(5);
+                active.decrementAndGet();
+                latch.countDown();
+            }
+        };
+
+        NotificationDelivery delivery = new NotificationDelivery(config, null);
+        delivery.register("test", notificator);
+        delivery.start();
+
+        for (int i = 0; i < 20; i++) {
+            delivery.submit(notificator, 1, new Event(), null);
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(maxActive.get() <= 2);
+
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+
+        Config config = new Config();
+        config.setString(Keys.NOTIFICATOR_RETRY_ATTEMPTS, "3");
+        config.setString(Keys.NOTIFICATOR_RETRY_DELAY, "0");
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicInteger attempts = new AtomicInteger();
+
+        Notificator notificator = new Notificator() {
+            @Override
+            public void sendSync(long userId, Event event, Position position) throws MessageException {
+                if (attempts.incrementAndGet() < 3) {
+                    throw new MessageException("error");
+                }
+                latch.countDown();
+            }
+        };
+
+        NotificationDelivery delivery = new NotificationDelivery(config, null);
+        delivery.register("test", notificator);
+        delivery.start();
+
+        delivery.submit(notificator, 1, new Event(), null);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(3, attempts.get());
+
+    }
+
+    @Test
+    public void testDigest() throws Exception {
+
+        Config config = new Config();
+        config.setString(Keys.NOTIFICATOR_DIGEST_PERIOD.withPrefix("notificator.test"), "1");
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicInteger count = new AtomicInteger();
+
+        Notificator notificator = new Notificator() {
+            @Override
+            public void sendSync(long userId, Event event, Position position) {
+                count.incrementAndGet();
+            }
+
+            @Override
+            public void sendDigest(long userId, List<Event> events, List<Position> positions) {
+                count.addAndGet(events.size());
+                latch.countDown();
+            }
+        };
+
+        NotificationDelivery delivery = new NotificationDelivery(config, null);
+        delivery.register("test", notificator);
+        delivery.start();
+
+        for (int i = 0; i < 3; i++) {
+            delivery.submit(notificator, 1, new Event(), null);
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(3, count.get());
+
+    }
+
+    @Test
+    public void testPendingLimit() throws Exception {
+
+        Config config = new Config();
+        config.setString(Keys.NOTIFICATOR_CONCURRENCY.withPrefix("notificator.test"), "1");
+        config.setString(Keys.NOTIFICATOR_QUEUE_SIZE, "1");
+        config.setString(Keys.NOTIFICATOR_PENDING_LIMIT, "2");
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        Notificator notificator = new Notificator() {
+            @Override
+            public void sendSync(long userId, Event event, Position position) throws InterruptedException {
+                started.countDown();
+                release.await();
+            }
+        };
+
+        NotificationDelivery delivery = new NotificationDelivery(config, null);
+        delivery.register("test", notificator);
+        delivery.start();
+
+        MetricsManager metricsManager = new MetricsManager();
+        delivery.registerMetrics(metricsManager);
+
+        delivery.submit(notificator, 1, new Event(), null);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 9; i++) {
+            delivery.submit(notificator, 1, new Event(), null);
+        }
+
+        StringWriter writer = new StringWriter();
+        metricsManager.write(writer);
+        release.countDown();
+
+        assertTrue(writer.toString().contains("traccar_notification_queue_size{type=\"test\"} 1\n"));
+        assertTrue(writer.toString().contains("traccar_notification_scheduled 2\n"));
+        assertTrue(writer.toString().contains("traccar_notification_dropped{type=\"test\"} 6\n"));
+
+    }
+
+}
@@ -8,12 +8,15 @@ import static org.junit.Assert.assertTrue;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 import org.traccar.BaseTest;
@@ -387,4 +390,79 @@ public class ReportUtilsTest extends BaseTest {
         assertEquals(1200000, itemStop.getDuration());
     }
 
+    private Iterator<Position> source(AtomicInteger count, long[] deviceIds, int[] sizes) {
+        List<Position> data = new ArrayList<>();
+        for (int i = 0; i < deviceIds.length; i++) {
+            for (int j = 0; j < sizes[i]; j++) {
+                Position position = new Position();
+                position.setDeviceId(deviceIds[i]);
+                position.setTime(new Date(j * 60000L));
+                position.setValid(true);
+                position.set(Position.KEY_TOTAL_DISTANCE, 0.0);
+                data.add(position);
+            }
+        }
+        Iterator<Position> iterator = data.iterator();
+        return new Iterator<Position>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Position next() {
+                count.incrementAndGet();
+                return iterator.next();
+            }
+        };
+    }
+
+    private ReportUtils.PositionsProcessor<Collection<StopReport>> stopsProcessor(
+            AtomicInteger count, long checkedDeviceId, int maxRead) {
+        TripsConfig tripsConfig = new TripsConfig(500, 300000, 180000, 900000, false, false, 0.01);
+        return (deviceId, positions) -> {
+            if (deviceId == checkedDeviceId) {
+                assertTrue(positions.hasNext());
+                assertTrue(count.get() <= maxRead);
+            }
+            return ReportUtils.detectTripsAndStops(
+                    new TestIdentityManager(), null, positions, tripsConfig, false, StopReport.class);
+        };
+    }
+
+    @Test
+    public void testProcessPositionsSingleDevice() throws SQLException {
+
+        int size = ReportUtils.PARALLEL_BUFFER_SIZE * 3;
+        AtomicInteger count = new AtomicInteger();
+        Iterator<Position> source = source(count, new long[] {1}, new int[] {size});
+
+        List<Collection<StopReport>> result = ReportUtils.processPositions(
+                Arrays.asList(1L), true, stopsProcessor(count, 1, 1), chunk -> source);
+
+        assertEquals(1, result.size());
+        assertEquals(1, result.get(0).size());
+        assertEquals(size, count.get());
+
+    }
+
+    @Test
+    public void testProcessPositionsLargeDevice() throws SQLException {
+
+        int size = ReportUtils.PARALLEL_BUFFER_SIZE * 3;
+        AtomicInteger count = new AtomicInteger();
+        Iterator<Position> source = source(count, new long[] {1, 2, 3}, new int[] {10, size, 10});
+
+        List<Collection<StopReport>> result = ReportUtils.processPositions(
+                Arrays.asList(1L, 2L, 3L, 4L), true,
+                stopsProcessor(count, 2, 10 + ReportUtils.PARALLEL_BUFFER_SIZE + 1), chunk -> source);
+
+        assertEquals(4, result.size());
+        assertEquals(1, result.get(0).size());
+        assertEquals(1, result.get(1).size());
+        assertEquals(1, result.get(2).size());
+        assertTrue(result.get(3).isEmpty());
+
+    }
+
 }